@@ -56,7 +56,7 @@ class Clash @JvmOverloads constructor(
             optimizationResult = optimizationParameters.globalStrategy.optimize(
                 this.query!!,
                 this.dataCharacteristics,
-                this.optimizationParameters
+                this.optimizationParameters.withSkew(config)
             )
         }
         return optimizationResult!!
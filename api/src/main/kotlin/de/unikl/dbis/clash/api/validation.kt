@@ -59,7 +59,7 @@ class Validate : CommonCLI(help = "Validate certain scenarios") {
         val optimizationResult = scenario.globalStrategy.optimize(
             scenario.query,
             scenario.dataCharacteristics,
-            scenario.optimizationParameters
+            scenario.optimizationParameters.withSkew(config)
         )
         val stormTopology = buildTopology(config, optimizationResult.physicalGraph, scenario)
         val cluster = LocalCluster()
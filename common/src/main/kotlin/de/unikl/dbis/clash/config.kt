@@ -29,6 +29,68 @@ class ClashConfig : HashMap<String, Any>() {
         const val DEFAULT_PROBE_LOG_ENABLED = true
         const val CLASH_PROBE_LOG_MAX_KEYS = "clash.probe_log.max_keys"
         const val DEFAULT_PROBE_LOG_MAX_KEYS = 0
+        const val CLASH_PROBE_LOG_HORIZON = "clash.probe_log.horizon_ms"
+        const val DEFAULT_PROBE_LOG_HORIZON = 0L
+
+        // Stores
+        const val CLASH_STORE_SEGMENTS_PER_WINDOW = "clash.store.segments_per_window"
+        const val DEFAULT_STORE_SEGMENTS_PER_WINDOW = 16L
+        const val CLASH_STORE_SEGMENT_SIZE = "clash.store.segment_size"
+        const val DEFAULT_STORE_SEGMENT_SIZE = 4096
+        const val CLASH_STORE_BACKEND = "clash.store.backend"
+        const val DEFAULT_STORE_BACKEND = "heap"
+        const val CLASH_STORE_DIRECTORY = "clash.store.directory"
+        const val DEFAULT_STORE_DIRECTORY = "/tmp/clash-stores"
+        const val CLASH_STORE_ARENA_SIZE = "clash.store.arena_size"
+        const val DEFAULT_STORE_ARENA_SIZE = 1 shl 20
+        const val CLASH_STORE_PARALLEL_PROBE_ENABLED = "clash.store.parallel_probe.enabled"
+        const val DEFAULT_STORE_PARALLEL_PROBE_ENABLED = false
+        const val CLASH_STORE_PARALLEL_PROBE_THRESHOLD = "clash.store.parallel_probe.threshold"
+        const val DEFAULT_STORE_PARALLEL_PROBE_THRESHOLD = 1000000L
+        const val CLASH_STORE_PARALLEL_PROBE_THREADS = "clash.store.parallel_probe.threads"
+        const val DEFAULT_STORE_PARALLEL_PROBE_THREADS = 0
+        const val CLASH_STORE_BLOOM_FILTER_FPP = "clash.store.bloom_filter.fpp"
+        const val DEFAULT_STORE_BLOOM_FILTER_FPP = 0.01
+        const val CLASH_STORE_ADAPTIVE_ENABLED = "clash.store.adaptive.enabled"
+        const val DEFAULT_STORE_ADAPTIVE_ENABLED = false
+        const val CLASH_STORE_ADAPTIVE_WARMUP = "clash.store.adaptive.warmup"
+        const val DEFAULT_STORE_ADAPTIVE_WARMUP = 100L
+        const val CLASH_STORE_ADAPTIVE_PERIOD = "clash.store.adaptive.period"
+        const val DEFAULT_STORE_ADAPTIVE_PERIOD = 1000L
+        const val CLASH_STORE_MEMORY_BUDGET = "clash.store.memory_budget"
+        const val DEFAULT_STORE_MEMORY_BUDGET = 0L
+        const val CLASH_STORE_SPILL_DIRECTORY = "clash.store.spill.directory"
+        const val DEFAULT_STORE_SPILL_DIRECTORY = "/tmp/clash-spill"
+        const val CLASH_STORE_SPILL_PAGE_CACHE_SIZE = "clash.store.spill.page_cache_size"
+        const val DEFAULT_STORE_SPILL_PAGE_CACHE_SIZE = 64
+        const val CLASH_STORE_CHECKPOINT_DIRECTORY = "clash.store.checkpoint.directory"
+        const val DEFAULT_STORE_CHECKPOINT_DIRECTORY = "/tmp/clash-checkpoints"
+        const val CLASH_STORE_CHECKPOINT_INTERVAL = "clash.store.checkpoint.interval_ms"
+        const val DEFAULT_STORE_CHECKPOINT_INTERVAL = 0L
+        const val CLASH_STORE_HIGH_WATER_MARK = "clash.store.high_water_mark"
+        const val DEFAULT_STORE_HIGH_WATER_MARK = 0L
+        const val CLASH_STORE_MAX_THROTTLE = "clash.store.max_throttle_ms"
+        const val DEFAULT_STORE_MAX_THROTTLE = 100L
+        const val CLASH_STORE_PROBE_CACHE_SIZE = "clash.store.probe_cache.size"
+        const val DEFAULT_STORE_PROBE_CACHE_SIZE = 0
+
+        // Skew
+        const val CLASH_SKEW_ENABLED = "clash.skew.enabled"
+        const val DEFAULT_SKEW_ENABLED = false
+        const val CLASH_SKEW_THRESHOLD = "clash.skew.threshold"
+        const val DEFAULT_SKEW_THRESHOLD = 0.01
+        const val CLASH_SKEW_SKETCH_SIZE = "clash.skew.sketch_size"
+        const val DEFAULT_SKEW_SKETCH_SIZE = 100
+        const val CLASH_SKEW_SPLIT_FACTOR = "clash.skew.split_factor"
+        const val DEFAULT_SKEW_SPLIT_FACTOR = 4
+        const val CLASH_SKEW_HOT_KEYS = "clash.skew.hot_keys"
+        const val CLASH_SKEW_HOT_KEY_SHARE = "clash.skew.hot_key_share"
+
+        // the Storm setting for the number of worker processes of a topology
+        const val TOPOLOGY_WORKERS = "topology.workers"
+
+        // Dictionaries
+        const val CLASH_DICTIONARIES = "clash.dictionaries"
 
         // ClashConfig keys
         const val CLASH_INFLUX_URL = "clash.influx.url"
@@ -152,6 +214,162 @@ class ClashConfig : HashMap<String, Any>() {
      */
     val probeLogMaxKeys get() = getOrDefaultInt(CLASH_PROBE_LOG_MAX_KEYS, DEFAULT_PROBE_LOG_MAX_KEYS)
 
+    /**
+     * @return for how many milliseconds of creation time probes are kept inside the probe log,
+     * or 0 to keep them as long as the time window of their store, if it has one
+     */
+    val probeLogHorizon get() = getOrDefaultLong(CLASH_PROBE_LOG_HORIZON, DEFAULT_PROBE_LOG_HORIZON)
+
+    /**
+     * @return into how many segments the window of a store is divided, segments are evicted as a whole
+     */
+    val storeSegmentsPerWindow get() = getOrDefaultLong(CLASH_STORE_SEGMENTS_PER_WINDOW, DEFAULT_STORE_SEGMENTS_PER_WINDOW)
+
+    /**
+     * @return how many documents a single store segment may hold at most
+     */
+    val storeSegmentSize get() = getOrDefaultInt(CLASH_STORE_SEGMENT_SIZE, DEFAULT_STORE_SEGMENT_SIZE)
+
+    /**
+     * @return where stores keep their documents: "heap", "off_heap" for direct buffers or "mapped" for memory-mapped files
+     */
+    val storeBackend get() = getOrDefaultString(CLASH_STORE_BACKEND, DEFAULT_STORE_BACKEND)
+
+    /**
+     * @return the local directory in which the "mapped" store backend creates its files
+     */
+    val storeDirectory get() = getOrDefaultString(CLASH_STORE_DIRECTORY, DEFAULT_STORE_DIRECTORY)
+
+    /**
+     * @return the size in bytes of the buffers allocated by the "off_heap" and "mapped" store backends
+     */
+    val storeArenaSize get() = getOrDefaultInt(CLASH_STORE_ARENA_SIZE, DEFAULT_STORE_ARENA_SIZE)
+
+    /**
+     * @return whether stores may split large probes by segment and run them on several threads
+     */
+    val storeParallelProbeEnabled get() = getOrDefaultBoolean(CLASH_STORE_PARALLEL_PROBE_ENABLED, DEFAULT_STORE_PARALLEL_PROBE_ENABLED)
+
+    /**
+     * @return the number of probing times stored documents from which a probe is run in parallel
+     */
+    val storeParallelProbeThreshold get() = getOrDefaultLong(CLASH_STORE_PARALLEL_PROBE_THRESHOLD, DEFAULT_STORE_PARALLEL_PROBE_THRESHOLD)
+
+    /**
+     * @return the number of threads shared by all stores of a worker for parallel probes, or 0 for one per core
+     */
+    val storeParallelProbeThreads get() = getOrDefaultInt(CLASH_STORE_PARALLEL_PROBE_THREADS, DEFAULT_STORE_PARALLEL_PROBE_THREADS)
+
+    /**
+     * @return the false positive rate the Bloom filters of store segments are sized for, or 0 to disable them
+     */
+    val storeBloomFilterFpp get() = getOrDefaultDouble(CLASH_STORE_BLOOM_FILTER_FPP, DEFAULT_STORE_BLOOM_FILTER_FPP)
+
+    /**
+     * @return whether partitioned and theta stores choose and change their layout by themselves
+     */
+    val storeAdaptiveEnabled get() = getOrDefaultBoolean(CLASH_STORE_ADAPTIVE_ENABLED, DEFAULT_STORE_ADAPTIVE_ENABLED)
+
+    /**
+     * @return the number of probe messages an adaptive store observes before it first reconsiders its layout
+     */
+    val storeAdaptiveWarmup get() = getOrDefaultLong(CLASH_STORE_ADAPTIVE_WARMUP, DEFAULT_STORE_ADAPTIVE_WARMUP)
+
+    /**
+     * @return the number of probe messages after which an adaptive store reconsiders its layout again
+     */
+    val storeAdaptivePeriod get() = getOrDefaultLong(CLASH_STORE_ADAPTIVE_PERIOD, DEFAULT_STORE_ADAPTIVE_PERIOD)
+
+    /**
+     * @return the number of bytes of heap each store may occupy before it spills segments to disk, or 0 for no limit
+     */
+    val storeMemoryBudget get() = getOrDefaultLong(CLASH_STORE_MEMORY_BUDGET, DEFAULT_STORE_MEMORY_BUDGET)
+
+    /**
+     * @return the local directory spilled segments are written to
+     */
+    val storeSpillDirectory get() = getOrDefaultString(CLASH_STORE_SPILL_DIRECTORY, DEFAULT_STORE_SPILL_DIRECTORY)
+
+    /**
+     * @return the number of pages of spilled segments each store keeps cached
+     */
+    val storeSpillPageCacheSize get() = getOrDefaultInt(CLASH_STORE_SPILL_PAGE_CACHE_SIZE, DEFAULT_STORE_SPILL_PAGE_CACHE_SIZE)
+
+    /**
+     * @return the local directory store tasks write their checkpoints to
+     */
+    val storeCheckpointDirectory get() = getOrDefaultString(CLASH_STORE_CHECKPOINT_DIRECTORY, DEFAULT_STORE_CHECKPOINT_DIRECTORY)
+
+    /**
+     * @return the milliseconds between two checkpoints of a store task, or 0 to disable checkpoints
+     */
+    val storeCheckpointInterval get() = getOrDefaultLong(CLASH_STORE_CHECKPOINT_INTERVAL, DEFAULT_STORE_CHECKPOINT_INTERVAL)
+
+    /**
+     * @return the number of bytes of heap a store task may occupy before it throttles the spouts, or 0 for no limit
+     */
+    val storeHighWaterMark get() = getOrDefaultLong(CLASH_STORE_HIGH_WATER_MARK, DEFAULT_STORE_HIGH_WATER_MARK)
+
+    /**
+     * @return the longest time in milliseconds spouts wait before each emit while a store is above its high-water mark
+     */
+    val storeMaxThrottle get() = getOrDefaultLong(CLASH_STORE_MAX_THROTTLE, DEFAULT_STORE_MAX_THROTTLE)
+
+    /**
+     * @return the number of index buckets each store caches for hot join keys, or 0 to disable the cache
+     */
+    val storeProbeCacheSize get() = getOrDefaultInt(CLASH_STORE_PROBE_CACHE_SIZE, DEFAULT_STORE_PROBE_CACHE_SIZE)
+
+    /**
+     * @return whether grouped edges spread hot keys over several tasks
+     */
+    val skewEnabled get() = getOrDefaultBoolean(CLASH_SKEW_ENABLED, DEFAULT_SKEW_ENABLED)
+
+    /**
+     * @return the share of the documents on the grouped edges into a bolt from which on a key is hot
+     */
+    val skewThreshold get() = getOrDefaultDouble(CLASH_SKEW_THRESHOLD, DEFAULT_SKEW_THRESHOLD)
+
+    /**
+     * @return the number of keys the heavy hitter sketch of a bolt counts
+     */
+    val skewSketchSize get() = getOrDefaultInt(CLASH_SKEW_SKETCH_SIZE, DEFAULT_SKEW_SKETCH_SIZE)
+
+    /**
+     * @return the number of tasks the stored documents of a hot key are split across
+     */
+    val skewSplitFactor get() = getOrDefaultInt(CLASH_SKEW_SPLIT_FACTOR, DEFAULT_SKEW_SPLIT_FACTOR)
+
+    /**
+     * @return the keys that are hot from the start in every worker, regardless of how often they occur
+     */
+    val skewHotKeys: Set<String> get() {
+        val value = this[CLASH_SKEW_HOT_KEYS] as? List<*> ?: return setOf()
+        return value.map { it.toString() }.toSet()
+    }
+
+    /**
+     * @return whether hot keys are detected from the traffic. The sketches are local to a worker, so senders
+     * in different workers would disagree on which keys are hot. Detection is therefore only done if the
+     * topology runs in a single worker.
+     */
+    val skewDetectionEnabled get() = skewEnabled && getOrDefaultInt(TOPOLOGY_WORKERS, 1) <= 1
+
+    /**
+     * @return the share of the documents the optimizer expects to carry hot keys, by default the threshold
+     */
+    val skewHotKeyShare get() = getOrDefaultDouble(CLASH_SKEW_HOT_KEY_SHARE, skewThreshold)
+
+    /**
+     * @return for each attribute with a global dictionary, the values of the dictionary in the order of their codes
+     */
+    val dictionaries: Map<String, List<String>> get() {
+        val value = this[CLASH_DICTIONARIES] as? Map<*, *> ?: return mapOf()
+        return value.entries.associate { (attribute, values) ->
+            Pair(attribute.toString(), (values as? List<*> ?: listOf<Any>()).map { it.toString() })
+        }
+    }
+
     val workerPort get() = getOrDefaultInt(CLASHD_WORKER_PORT, DEFAULT_WORKER_PORT)
     val masterHost get() = getOrDefaultString(CLASHD_MASTER_HOST, DEFAULT_MASTER_HOST)
     val masterPort get() = getOrDefaultInt(CLASHD_MASTER_PORT, DEFAULT_MASTER_PORT)
@@ -201,6 +419,22 @@ class ClashConfig : HashMap<String, Any>() {
         }
     }
 
+    fun getOrDefaultDouble(key: Any, defaultValue: Double): Double {
+        return if (this.containsKey(key)) {
+            val value = this[key]
+            try {
+                value.toString().toDouble()
+            } catch (e: NumberFormatException) {
+                System.err.println("CANNOT PARSE NUMBER FORMAT $key")
+                System.err.println("RETURNING DEFAULT VALUE INSTEAD")
+                e.printStackTrace()
+                defaultValue
+            }
+        } else {
+            defaultValue
+        }
+    }
+
     fun getOrDefaultString(key: Any, defaultValue: String): String {
         return if (this.containsKey(key)) {
             val value = this[key]
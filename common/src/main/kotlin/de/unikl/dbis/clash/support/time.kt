@@ -6,3 +6,7 @@ const val SECONDS_PER_MINUTE = 60
 fun minutesToMillis(minutes: Long): Long {
     return minutes * SECONDS_PER_MINUTE * MILLIS_PER_SECOND
 }
+
+fun secondsToMillis(seconds: Long): Long {
+    return seconds * MILLIS_PER_SECOND
+}
@@ -49,6 +49,16 @@ class ClashConfigTest {
         assertThat(config.dispatcherParallelism).isEqualTo(5)
     }
 
+    @Test
+    fun `skew detection is off for topologies with several workers`() {
+        val config = ClashConfig()
+        config[ClashConfig.CLASH_SKEW_ENABLED] = true
+        assertThat(config.skewDetectionEnabled).isTrue()
+
+        config[ClashConfig.TOPOLOGY_WORKERS] = 4
+        assertThat(config.skewDetectionEnabled).isFalse()
+    }
+
     @Test
     fun `no interference`() {
         val config = ClashConfig()
@@ -15,4 +15,10 @@ internal class TimeKtTest {
         assertThat(minutesToMillis(min2)).isEqualTo(120_000)
         assertThat(minutesToMillis(min5)).isEqualTo(300_000)
     }
+
+    @Test
+    fun secondsToMillis() {
+        assertThat(secondsToMillis(1L)).isEqualTo(1_000)
+        assertThat(secondsToMillis(90L)).isEqualTo(90_000)
+    }
 }
@@ -0,0 +1,59 @@
+package de.unikl.dbis.clash.documents
+
+import de.unikl.dbis.clash.query.Attribute
+import java.io.Serializable
+
+/**
+ * Maps the values of a low-cardinality string attribute, e.g. a ship mode or a market segment,
+ * to integer codes that are the same on every worker of a topology.
+ *
+ * Each value is kept as one canonical String, which all documents created by a SchemaRegistry share
+ * instead of their own copy. Equal values are then the same instance, such that comparing them is an
+ * identity check and their hash code is computed once. Between workers, values are written as their code.
+ *
+ * @param values the values in the order of their codes
+ */
+class AttributeDictionary(values: List<String>) : Serializable {
+    private val values: Array<String> = values.distinct().toTypedArray()
+    private val codes = HashMap<String, Int>()
+
+    init {
+        this.values.forEachIndexed { code, value -> codes[value] = code }
+    }
+
+    val size: Int
+        get() = values.size
+
+    /**
+     * @return the code of value, or -1 if the dictionary does not contain it
+     */
+    fun encode(value: String): Int = codes[value] ?: -1
+
+    fun decode(code: Int): String = values[code]
+
+    /**
+     * @return the canonical instance of value, or value itself if the dictionary does not contain it
+     */
+    fun canonical(value: String): String {
+        val code = codes[value] ?: return value
+        return values[code]
+    }
+}
+
+/**
+ * The dictionaries of a topology by the name of their attribute, such that an attribute is encoded
+ * the same way in all relations that contain it.
+ */
+class AttributeDictionaries(private val dictionaries: Map<Attribute, AttributeDictionary> = mapOf()) : Serializable {
+    operator fun get(attribute: Attribute): AttributeDictionary? = dictionaries[attribute]
+
+    fun isEmpty(): Boolean = dictionaries.isEmpty()
+
+    companion object {
+        /**
+         * @param values for each attribute, the values of its dictionary in the order of their codes
+         */
+        fun of(values: Map<Attribute, List<String>>): AttributeDictionaries =
+                AttributeDictionaries(values.mapValues { AttributeDictionary(it.value) })
+    }
+}
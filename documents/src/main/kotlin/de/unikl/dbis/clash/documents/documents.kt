@@ -4,10 +4,14 @@ import de.unikl.dbis.clash.query.AttributeAccess
 import de.unikl.dbis.clash.query.ProjectionList
 import de.unikl.dbis.clash.query.RelationAlias
 import de.unikl.dbis.clash.query.Tuple
+import java.io.Serializable
 import java.util.Arrays
+import java.util.function.BiConsumer
+import java.util.function.BiFunction
+import java.util.function.Function
 import org.json.JSONObject
 
-class Document : HashMap<AttributeAccess, String>, Tuple {
+open class Document : HashMap<AttributeAccess, String>, Tuple {
 
     constructor() : super()
 
@@ -24,16 +28,154 @@ class Document : HashMap<AttributeAccess, String>, Tuple {
 
     fun project(projectionList: ProjectionList): Document {
         // TODO: incorporate aliasing
-        val result = filterKeys { documentKey -> projectionList.any { projection -> projection.attributeAccess == documentKey }}
-        return Document(result)
+        val result = Document()
+        for (projection in projectionList) {
+            val value = get(projection.attributeAccess) ?: continue
+            result[projection.attributeAccess] = value
+        }
+        return result
     }
 
+    /**
+     * @return a document containing the entries of both documents, where other takes precedence.
+     * The entries are not copied until the joint document is used as a whole.
+     */
     fun createJoint(other: Document): Document {
-        val result = Document(this)
-        for ((key, value) in other) {
-            result[key] = value
+        return JointDocument(this, other)
+    }
+
+    /**
+     * Called before the entries are used as a whole.
+     * Documents that do not hold their entries themselves fill them in here.
+     */
+    protected open fun materialize() {}
+
+    override fun get(key: AttributeAccess): String? = super.get(key)
+
+    override fun containsKey(key: AttributeAccess): Boolean = super.containsKey(key)
+
+    override val size: Int
+        get() {
+            materialize()
+            return super.size
         }
-        return result
+
+    override fun isEmpty(): Boolean {
+        materialize()
+        return super.isEmpty()
+    }
+
+    override val entries: MutableSet<MutableMap.MutableEntry<AttributeAccess, String>>
+        get() {
+            materialize()
+            return super.entries
+        }
+
+    override val keys: MutableSet<AttributeAccess>
+        get() {
+            materialize()
+            return super.keys
+        }
+
+    override val values: MutableCollection<String>
+        get() {
+            materialize()
+            return super.values
+        }
+
+    override fun containsValue(value: String): Boolean {
+        materialize()
+        return super.containsValue(value)
+    }
+
+    override fun put(key: AttributeAccess, value: String): String? {
+        materialize()
+        return super.put(key, value)
+    }
+
+    override fun putAll(from: Map<out AttributeAccess, String>) {
+        materialize()
+        super.putAll(from)
+    }
+
+    override fun remove(key: AttributeAccess): String? {
+        materialize()
+        return super.remove(key)
+    }
+
+    override fun clear() {
+        materialize()
+        super.clear()
+    }
+
+    override fun forEach(action: BiConsumer<in AttributeAccess, in String>) {
+        materialize()
+        super.forEach(action)
+    }
+
+    override fun getOrDefault(key: AttributeAccess, defaultValue: String): String {
+        materialize()
+        return super.getOrDefault(key, defaultValue)
+    }
+
+    override fun putIfAbsent(key: AttributeAccess, value: String): String? {
+        materialize()
+        return super.putIfAbsent(key, value)
+    }
+
+    override fun remove(key: AttributeAccess, value: String): Boolean {
+        materialize()
+        return super.remove(key, value)
+    }
+
+    override fun replace(key: AttributeAccess, value: String): String? {
+        materialize()
+        return super.replace(key, value)
+    }
+
+    override fun replace(key: AttributeAccess, oldValue: String, newValue: String): Boolean {
+        materialize()
+        return super.replace(key, oldValue, newValue)
+    }
+
+    override fun replaceAll(function: BiFunction<in AttributeAccess, in String, out String>) {
+        materialize()
+        super.replaceAll(function)
+    }
+
+    override fun compute(key: AttributeAccess, remappingFunction: BiFunction<in AttributeAccess, in String?, out String?>): String? {
+        materialize()
+        return super.compute(key, remappingFunction)
+    }
+
+    override fun computeIfAbsent(key: AttributeAccess, mappingFunction: Function<in AttributeAccess, out String>): String {
+        materialize()
+        return super.computeIfAbsent(key, mappingFunction)
+    }
+
+    override fun computeIfPresent(key: AttributeAccess, remappingFunction: BiFunction<in AttributeAccess, in String, out String?>): String? {
+        materialize()
+        return super.computeIfPresent(key, remappingFunction)
+    }
+
+    override fun merge(key: AttributeAccess, value: String, remappingFunction: BiFunction<in String, in String, out String?>): String? {
+        materialize()
+        return super.merge(key, value, remappingFunction)
+    }
+
+    override fun clone(): Any {
+        materialize()
+        return super.clone()
+    }
+
+    override fun equals(other: Any?): Boolean {
+        materialize()
+        return super.equals(other)
+    }
+
+    override fun hashCode(): Int {
+        materialize()
+        return super.hashCode()
     }
 
     fun toJson(): JSONObject {
@@ -63,17 +205,168 @@ class Document : HashMap<AttributeAccess, String>, Tuple {
         return getAccessPathForAttribute(s) != null
     }
 
-    fun getAccessPathForAttribute(s: String): AttributeAccess? {
+    open fun getAccessPathForAttribute(s: String): AttributeAccess? {
         return keys.find { it.attribute == s }
     }
 
+    /**
+     * Calls action for each entry with its value and typed value, see Tuple.typed, without copying
+     * the entries of documents that do not hold them themselves where this can be avoided.
+     */
+    open fun forEachValue(action: (AttributeAccess, String, Any) -> Unit) {
+        for ((attributeAccess, value) in entries) {
+            action(attributeAccess, value, value)
+        }
+    }
+
     override fun toString(): String {
+        materialize()
         return super.entries
                 .sortedBy { it.key.toString() }
                 .joinToString(", ", "<", ">") { "${it.key}: ${it.value}" }
     }
 }
 
+/**
+ * The result of joining two documents.
+ *
+ * It only references its parents and answers lookups of single attributes through them, such that
+ * intermediate results of a chain of joins are built in constant time. As soon as the document is
+ * used as a whole, e.g. for iteration, serialization or modification, the entries are copied into it.
+ */
+class JointDocument(private var left: Document?, private var right: Document?) : Document() {
+
+    override fun get(key: AttributeAccess): String? {
+        val left = left ?: return super.get(key)
+        return right!![key] ?: left[key]
+    }
+
+    override fun containsKey(key: AttributeAccess): Boolean {
+        val left = left ?: return super.containsKey(key)
+        return right!!.containsKey(key) || left.containsKey(key)
+    }
+
+    override fun typed(attr: AttributeAccess): Any? {
+        val left = left ?: return super.typed(attr)
+        return right!!.typed(attr) ?: left.typed(attr)
+    }
+
+    override fun forEachValue(action: (AttributeAccess, String, Any) -> Unit) {
+        val left = left ?: return super.forEachValue(action)
+        val right = right!!
+        right.forEachValue(action)
+        left.forEachValue { attributeAccess, value, typedValue ->
+            if (!right.containsKey(attributeAccess)) {
+                action(attributeAccess, value, typedValue)
+            }
+        }
+    }
+
+    override fun materialize() {
+        val left = left ?: return
+        val right = right!!
+        this.left = null
+        this.right = null
+        putAll(left)
+        putAll(right)
+    }
+
+    private fun writeReplace(): Any = Document(this)
+}
+
+/**
+ * A document that keeps its values in an array in the order of its schema, see DocumentSchema.
+ *
+ * Single attributes are looked up by their ordinal. Like a JointDocument, the entries are copied
+ * into the document as soon as it is used as a whole. The typed values the source assigned, see
+ * ValueType, are kept in a second array until then; afterwards typed returns the text of the values.
+ */
+class SchemaDocument(
+    schema: DocumentSchema,
+    values: Array<String?>,
+    typedValues: Array<Any?>? = null
+) : Document() {
+    @Volatile private var compact: CompactValues? = CompactValues(schema, values, typedValues)
+
+    /**
+     * The schema of the values, or null once the entries were copied into the document
+     */
+    val schema: DocumentSchema?
+        get() = compact?.schema
+
+    /**
+     * @return the value at ordinal of the schema, which has to be the ordinal of attributeAccess
+     */
+    fun valueAt(ordinal: Int, attributeAccess: AttributeAccess): String? {
+        val compact = compact ?: return super.get(attributeAccess)
+        return if (ordinal < 0) null else compact.values[ordinal]
+    }
+
+    /**
+     * @return the typed value at ordinal of the schema, which has to be the ordinal of attributeAccess
+     */
+    fun typedValueAt(ordinal: Int, attributeAccess: AttributeAccess): Any? {
+        val compact = compact ?: return super.typed(attributeAccess)
+        if (ordinal < 0) {
+            return null
+        }
+        return compact.typedValues?.get(ordinal) ?: compact.values[ordinal]
+    }
+
+    override fun typed(attr: AttributeAccess): Any? {
+        val compact = compact ?: return super.typed(attr)
+        return typedValueAt(compact.schema.ordinal(attr), attr)
+    }
+
+    override fun get(key: AttributeAccess): String? {
+        val compact = compact ?: return super.get(key)
+        val ordinal = compact.schema.ordinal(key)
+        return if (ordinal < 0) null else compact.values[ordinal]
+    }
+
+    override fun containsKey(key: AttributeAccess): Boolean {
+        if (compact == null) {
+            return super.containsKey(key)
+        }
+        return get(key) != null
+    }
+
+    override fun getAccessPathForAttribute(s: String): AttributeAccess? {
+        val compact = compact ?: return super.getAccessPathForAttribute(s)
+        for (ordinal in compact.schema.ordinals(s)) {
+            if (compact.values[ordinal] != null) {
+                return compact.schema.attributeAccesses[ordinal]
+            }
+        }
+        return null
+    }
+
+    override fun forEachValue(action: (AttributeAccess, String, Any) -> Unit) {
+        val compact = compact ?: return super.forEachValue(action)
+        for (ordinal in compact.values.indices) {
+            val value = compact.values[ordinal] ?: continue
+            action(compact.schema.attributeAccesses[ordinal], value, compact.typedValues?.get(ordinal) ?: value)
+        }
+    }
+
+    override fun materialize() {
+        val compact = compact ?: return
+        this.compact = null
+        for (ordinal in compact.values.indices) {
+            val value = compact.values[ordinal] ?: continue
+            put(compact.schema.attributeAccesses[ordinal], value)
+        }
+    }
+
+    private fun writeReplace(): Any = Document(this)
+
+    private class CompactValues(
+        val schema: DocumentSchema,
+        val values: Array<String?>,
+        val typedValues: Array<Any?>?
+    ) : Serializable
+}
+
 fun fromKVList(vararg list: String): Document {
     val iterator = Arrays.stream(list).iterator()
     val document = Document()
@@ -0,0 +1,246 @@
+package de.unikl.dbis.clash.documents
+
+import de.unikl.dbis.clash.query.Attribute
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.AttributeGreaterThanConstant
+import de.unikl.dbis.clash.query.AttributeGreaterThanOrEqualConstant
+import de.unikl.dbis.clash.query.AttributeLessThanConstant
+import de.unikl.dbis.clash.query.AttributeLessThanOrEqualConstant
+import de.unikl.dbis.clash.query.BinaryAttributePredicate
+import de.unikl.dbis.clash.query.BinaryBand
+import de.unikl.dbis.clash.query.Relation
+import de.unikl.dbis.clash.query.RelationAlias
+import de.unikl.dbis.clash.query.UnaryAttributePredicate
+import de.unikl.dbis.clash.query.ValueType
+import de.unikl.dbis.clash.query.extractAttributeAccesses
+import java.io.Serializable
+import java.math.BigDecimal
+import java.math.BigInteger
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The attributes of documents in a fixed order. Documents of a schema keep their values in an array,
+ * see SchemaDocument, such that the value of an attribute is found by its ordinal.
+ */
+class DocumentSchema(val attributeAccesses: List<AttributeAccess>) : Serializable {
+    private val ordinals = HashMap<AttributeAccess, Int>()
+    private val ordinalsByAttribute = HashMap<Attribute, MutableList<Int>>()
+
+    init {
+        attributeAccesses.forEachIndexed { ordinal, attributeAccess ->
+            ordinals[attributeAccess] = ordinal
+            ordinalsByAttribute.getOrPut(attributeAccess.attribute) { mutableListOf() }.add(ordinal)
+        }
+    }
+
+    val size: Int
+        get() = attributeAccesses.size
+
+    /**
+     * @return the ordinal of attributeAccess, or -1 if the schema does not contain it
+     */
+    fun ordinal(attributeAccess: AttributeAccess): Int = ordinals[attributeAccess] ?: -1
+
+    /**
+     * @return the ordinals of all attributes named attribute, regardless of their relation
+     */
+    fun ordinals(attribute: Attribute): List<Int> = ordinalsByAttribute[attribute] ?: listOf()
+}
+
+/**
+ * Hands out the schemas of the documents a topology reads from its sources.
+ *
+ * The attributes the query accesses of a relation, see fromRelation, lead every schema of that relation
+ * in the same order, such that their ordinals are known when the topology is built, see ordinal.
+ * The other attributes of a document follow in the order the source lists them.
+ * Documents with the same attributes share their schema, up to MAX_SCHEMAS distinct schemas.
+ *
+ * Each value is typed once when its document is created, see typedValue.
+ * Values of attributes with a dictionary are replaced by their canonical instance, see AttributeDictionary.
+ */
+class SchemaRegistry(
+    private val accessedAttributes: Map<RelationAlias, List<AttributeAccess>> = mapOf(),
+    private val types: Map<AttributeAccess, ValueType> = mapOf(),
+    private val dictionaries: AttributeDictionaries = AttributeDictionaries(),
+    private val readsWholeDocuments: Boolean = true
+) : Serializable {
+    private val schemas = ConcurrentHashMap<List<AttributeAccess>, DocumentSchema>()
+
+    /**
+     * @return the attributes of relationAlias the query reads, such that sources may drop all others,
+     * or null if the query reads the documents as a whole
+     */
+    fun requiredAttributes(relationAlias: RelationAlias): Set<Attribute>? {
+        if (readsWholeDocuments) {
+            return null
+        }
+        return accessedAttributes[relationAlias]?.map { it.attribute }?.toSet() ?: setOf()
+    }
+
+    /**
+     * @return the ordinal of attributeAccess in every schema of its relation, or -1 if the query does not access it
+     */
+    fun ordinal(attributeAccess: AttributeAccess): Int =
+            accessedAttributes[attributeAccess.relationAlias]?.indexOf(attributeAccess) ?: -1
+
+    /**
+     * @return the schema of the documents of relationAlias with the given attributes
+     */
+    fun schemaFor(relationAlias: RelationAlias, attributes: Collection<Attribute>): DocumentSchema {
+        val attributeAccesses = attributes.map { AttributeAccess(relationAlias, it) }
+        val schema = schemas[attributeAccesses]
+        if (schema != null) {
+            return schema
+        }
+        val leading = accessedAttributes[relationAlias] ?: listOf()
+        val newSchema = DocumentSchema(leading + attributeAccesses.filter { it !in leading })
+        if (schemas.size < MAX_SCHEMAS) {
+            schemas[attributeAccesses] = newSchema
+        }
+        return newSchema
+    }
+
+    /**
+     * Creates a document of relationAlias with the given attributes, value provides the value of each of them
+     * as the source read it, e.g. a String or a Number.
+     */
+    fun document(relationAlias: RelationAlias, attributes: Collection<Attribute>, value: (Attribute) -> Any): Document {
+        val attributeList = attributes.toList()
+        return document(relationAlias, attributeList, attributeList.map(value))
+    }
+
+    /**
+     * Creates a document of relationAlias with the given attributes, where sourceValues holds the value
+     * of the attribute at the same position.
+     */
+    fun document(relationAlias: RelationAlias, attributes: List<Attribute>, sourceValues: List<Any>): Document {
+        val schema = schemaFor(relationAlias, attributes)
+        val values = arrayOfNulls<String>(schema.size)
+        var typedValues: Array<Any?>? = null
+        for (i in attributes.indices) {
+            val attribute = attributes[i]
+            val attributeAccess = AttributeAccess(relationAlias, attribute)
+            val ordinal = schema.ordinal(attributeAccess)
+            val sourceValue = sourceValues[i]
+            val text = sourceValue.toString().let { dictionaries[attribute]?.canonical(it) ?: it }
+            values[ordinal] = text
+            val typed = typedValue(attributeAccess, if (sourceValue is String) text else sourceValue)
+            if (typed !== text) {
+                typedValues = typedValues ?: arrayOfNulls(schema.size)
+                typedValues[ordinal] = typed
+            }
+        }
+        return SchemaDocument(schema, values, typedValues)
+    }
+
+    /**
+     * @return the typed value of sourceValue: numbers the source typed are kept as Long, Double or BigDecimal,
+     * text is parsed by the type of attributeAccess if there is one, everything else is text.
+     * Text of a LONG attribute that is not integral is read as a Double.
+     */
+    fun typedValue(attributeAccess: AttributeAccess, sourceValue: Any): Any = when (sourceValue) {
+        is String -> parse(types[attributeAccess], sourceValue) ?: sourceValue
+        is Long, is Double, is BigDecimal -> sourceValue
+        is Int, is Short, is Byte -> (sourceValue as Number).toLong()
+        is Float -> sourceValue.toDouble()
+        is BigInteger -> BigDecimal(sourceValue)
+        else -> sourceValue.toString()
+    }
+
+    private fun parse(type: ValueType?, text: String): Any? = when (type) {
+        null -> null
+        ValueType.LONG -> type.parse(text) ?: ValueType.DOUBLE.parse(text)
+        else -> type.parse(text)
+    }
+
+    companion object {
+        private const val MAX_SCHEMAS = 1024
+
+        /**
+         * Creates a registry that leads the schemas of each input of relation with the attributes
+         * its filters, join predicates, aggregations and projections access.
+         * Unless relation projects all attributes or has predicates on whole documents, these are
+         * the only attributes it reads, see requiredAttributes.
+         * Attributes that the filters compare to numbers or that bound a band join are typed as numbers,
+         * the given types take precedence.
+         */
+        fun fromRelation(
+            relation: Relation,
+            types: Map<AttributeAccess, ValueType> = mapOf(),
+            dictionaries: AttributeDictionaries = AttributeDictionaries()
+        ): SchemaRegistry {
+            val attributeAccesses = extractAttributeAccesses(relation.joinPredicates.toList()) +
+                    relation.filters.filterIsInstance<UnaryAttributePredicate>().map { it.attributeAccess } +
+                    relation.projections.map { it.attributeAccess } +
+                    relation.aggregations.flatMap { it.attributeAccesses }
+            val accessedAttributes = attributeAccesses
+                    .distinct()
+                    .filter { it.relationAlias in relation.inputAliases }
+                    .groupBy { it.relationAlias }
+            val readsWholeDocuments = relation.projections.isEmpty() ||
+                    relation.filters.any { it !is UnaryAttributePredicate } ||
+                    relation.joinPredicates.any { it !is BinaryAttributePredicate }
+            return SchemaRegistry(accessedAttributes, numericTypes(relation) + types, dictionaries, readsWholeDocuments)
+        }
+
+        private fun numericTypes(relation: Relation): Map<AttributeAccess, ValueType> {
+            val result = HashMap<AttributeAccess, ValueType>()
+            for (filter in relation.filters.filterIsInstance<UnaryAttributePredicate>()) {
+                val constant = when (filter) {
+                    is AttributeLessThanConstant<*> -> filter.constant
+                    is AttributeLessThanOrEqualConstant<*> -> filter.constant
+                    is AttributeGreaterThanConstant<*> -> filter.constant
+                    is AttributeGreaterThanOrEqualConstant<*> -> filter.constant
+                    else -> null
+                }
+                when (constant) {
+                    is Int, is Long -> result.putIfAbsent(filter.attributeAccess, ValueType.LONG)
+                    is Double -> result[filter.attributeAccess] = ValueType.DOUBLE
+                }
+            }
+            for (predicate in relation.joinPredicates.filterIsInstance<BinaryBand>()) {
+                result[predicate.leftAttributeAccess] = ValueType.DOUBLE
+                result[predicate.rightAttributeAccess] = ValueType.DOUBLE
+            }
+            return result
+        }
+    }
+}
+
+/**
+ * Reads the value of attributeAccess from documents. For documents with a schema, the ordinal of
+ * attributeAccess is resolved once per schema and the value is then read from the array of the document.
+ */
+class AttributeSlot(val attributeAccess: AttributeAccess) : Serializable {
+    @Transient @Volatile private var resolved: ResolvedOrdinal? = null
+
+    operator fun get(document: Document): String? {
+        if (document !is SchemaDocument) {
+            return document[attributeAccess]
+        }
+        val schema = document.schema ?: return document[attributeAccess]
+        return document.valueAt(ordinal(schema), attributeAccess)
+    }
+
+    /**
+     * @return the typed value of attributeAccess in document, see Tuple.typed
+     */
+    fun typed(document: Document): Any? {
+        if (document !is SchemaDocument) {
+            return document.typed(attributeAccess)
+        }
+        val schema = document.schema ?: return document.typed(attributeAccess)
+        return document.typedValueAt(ordinal(schema), attributeAccess)
+    }
+
+    private fun ordinal(schema: DocumentSchema): Int {
+        var resolved = this.resolved
+        if (resolved == null || resolved.schema !== schema) {
+            resolved = ResolvedOrdinal(schema, schema.ordinal(attributeAccess))
+            this.resolved = resolved
+        }
+        return resolved.ordinal
+    }
+
+    private class ResolvedOrdinal(val schema: DocumentSchema, val ordinal: Int)
+}
@@ -0,0 +1,87 @@
+package de.unikl.dbis.clash.documents
+
+import de.unikl.dbis.clash.query.AttributeAccess
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class JointDocumentTest {
+    private val a = AttributeAccess("x.a")
+    private val b = AttributeAccess("x.b")
+    private val expected = fromKVList("x.a", "1", "x.b", "4", "y.a", "3", "z.a", "5")
+
+    @Test
+    fun `lookups go through the whole chain`() {
+        val joint = joint()
+
+        assertThat(joint).isInstanceOf(JointDocument::class.java)
+        assertThat(joint[a]).isEqualTo("1")
+        assertThat(joint[b]).isEqualTo("4")
+        assertThat(joint["z.a"]).isEqualTo("5")
+        assertThat(joint[AttributeAccess("w.a")]).isNull()
+        assertThat(joint.containsKey(AttributeAccess("y.a"))).isTrue()
+        assertThat(joint.containsKey(AttributeAccess("w.a"))).isFalse()
+        assertThat(joint.typed(b)).isEqualTo("4")
+    }
+
+    @Test
+    fun `reading the whole map sees every entry`() {
+        assertThat(joint()).isEqualTo(expected)
+        assertThat(expected).isEqualTo(joint())
+        assertThat(joint().hashCode()).isEqualTo(expected.hashCode())
+        assertThat(joint().size).isEqualTo(4)
+        assertThat(joint().keys).isEqualTo(expected.keys)
+        assertThat(joint().values).containsExactlyInAnyOrderElementsOf(expected.values)
+        assertThat(joint().entries).isEqualTo(expected.entries)
+        assertThat(joint().isEmpty()).isFalse()
+        assertThat(joint().containsValue("3")).isTrue()
+        assertThat(joint().clone()).isEqualTo(expected)
+        assertThat(joint().toString()).isEqualTo(expected.toString())
+
+        val visited = HashMap<AttributeAccess, String>()
+        joint().forEach { key, value -> visited[key] = value }
+        assertThat(visited).isEqualTo(expected)
+    }
+
+    @Test
+    fun `writing into the map keeps every entry`() {
+        assertThat(joint().getOrDefault(b, "none")).isEqualTo("4")
+        assertThat(joint().also { it.putIfAbsent(b, "9") }).isEqualTo(expected)
+        assertThat(joint().also { it.put(AttributeAccess("w.a"), "9") }.size).isEqualTo(5)
+        assertThat(joint().also { it.putAll(fromKVList("w.a", "9")) }.size).isEqualTo(5)
+        assertThat(joint().also { it.remove(a) }.size).isEqualTo(3)
+        assertThat(joint().also { it.remove(a, "1") }.size).isEqualTo(3)
+        assertThat(joint().also { it.replace(a, "9") }).isEqualTo(with(a, "9"))
+        assertThat(joint().also { it.replace(a, "1", "9") }).isEqualTo(with(a, "9"))
+        assertThat(joint().also { it.compute(a) { _, v -> v + "9" } }).isEqualTo(with(a, "19"))
+        assertThat(joint().also { it.computeIfAbsent(a) { "9" } }).isEqualTo(expected)
+        assertThat(joint().also { it.computeIfPresent(a) { _, v -> v + "9" } }).isEqualTo(with(a, "19"))
+        assertThat(joint().also { it.merge(a, "9") { old, new -> old + new } }).isEqualTo(with(a, "19"))
+        assertThat(joint().also { it.replaceAll { _, v -> v + "9" } })
+                .isEqualTo(fromKVList("x.a", "19", "x.b", "49", "y.a", "39", "z.a", "59"))
+        assertThat(joint().also { it.clear() }).isEmpty()
+    }
+
+    @Test
+    fun `joint documents are serialized as plain documents`() {
+        val out = ByteArrayOutputStream()
+        ObjectOutputStream(out).writeObject(joint())
+        val copy = ObjectInputStream(ByteArrayInputStream(out.toByteArray())).readObject()
+
+        assertThat(copy).isExactlyInstanceOf(Document::class.java)
+        assertThat(copy).isEqualTo(expected)
+    }
+
+    private fun joint() = fromKVList("x.a", "1", "x.b", "2")
+            .createJoint(fromKVList("y.a", "3", "x.b", "4"))
+            .createJoint(fromKVList("z.a", "5"))
+
+    private fun with(key: AttributeAccess, value: String): Document {
+        val document = Document(expected)
+        document[key] = value
+        return document
+    }
+}
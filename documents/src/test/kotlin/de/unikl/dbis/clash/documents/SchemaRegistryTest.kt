@@ -0,0 +1,102 @@
+package de.unikl.dbis.clash.documents
+
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.RelationAlias
+import de.unikl.dbis.clash.query.parser.parseQuery
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class SchemaRegistryTest {
+    private val x = RelationAlias("x")
+    private val registry = SchemaRegistry.fromRelation(parseQuery("SELECT * FROM x, y WHERE x.b = y.b AND x.c < 5").result)
+
+    @Test
+    fun `accessed attributes lead every schema of their relation`() {
+        val ordinal = registry.ordinal(AttributeAccess("x.b"))
+        assertThat(ordinal).isGreaterThanOrEqualTo(0)
+        assertThat(registry.ordinal(AttributeAccess("x.z"))).isEqualTo(-1)
+
+        val first = document(mapOf("a" to "1", "b" to "2"))
+        val second = document(mapOf("z" to "9", "b" to "3"))
+        assertThat(first.schema!!.ordinal(AttributeAccess("x.b"))).isEqualTo(ordinal)
+        assertThat(second.schema!!.ordinal(AttributeAccess("x.b"))).isEqualTo(ordinal)
+        assertThat(AttributeSlot(AttributeAccess("x.b"))[first]).isEqualTo("2")
+        assertThat(AttributeSlot(AttributeAccess("x.b"))[second]).isEqualTo("3")
+    }
+
+    @Test
+    fun `documents with the same attributes share their schema`() {
+        val first = document(mapOf("a" to "1", "b" to "2"))
+        val second = document(mapOf("a" to "3", "b" to "4"))
+
+        assertThat(second.schema).isSameAs(first.schema)
+        assertThat(document(mapOf("b" to "4")).schema).isNotSameAs(first.schema)
+    }
+
+    @Test
+    fun `schema documents read like plain documents`() {
+        val document = document(mapOf("a" to "1", "b" to "2", "z" to "9"))
+
+        assertThat(document).isEqualTo(fromKVList("x.a", "1", "x.b", "2", "x.z", "9"))
+        assertThat(document.size).isEqualTo(3)
+        assertThat(document[AttributeAccess("x.b")]).isEqualTo("2")
+        assertThat(document["z"]).isEqualTo("9")
+        assertThat(document[AttributeAccess("x.c")]).isNull()
+        assertThat(document.containsKey(AttributeAccess("x.c"))).isFalse()
+        assertThat(document.getAccessPathForAttribute("c")).isNull()
+    }
+
+    @Test
+    fun `writing to a schema document copies its entries`() {
+        val document = document(mapOf("a" to "1", "b" to "2"))
+        document[AttributeAccess("x.d")] = "4"
+
+        assertThat(document.schema).isNull()
+        assertThat(document).isEqualTo(fromKVList("x.a", "1", "x.b", "2", "x.d", "4"))
+        assertThat(AttributeSlot(AttributeAccess("x.a"))[document]).isEqualTo("1")
+    }
+
+    @Test
+    fun `values are typed once by the attributes the query compares to numbers`() {
+        val values = mapOf<String, Any>("a" to "12", "b" to 7, "c" to "12")
+        val document = registry.document(x, values.keys) { values.getValue(it) }
+
+        assertThat(document.typed(AttributeAccess("x.a"))).isEqualTo("12")
+        assertThat(document.typed(AttributeAccess("x.b"))).isEqualTo(7L)
+        assertThat(document.typed(AttributeAccess("x.c"))).isEqualTo(12L)
+        assertThat(AttributeSlot(AttributeAccess("x.c")).typed(document)).isEqualTo(12L)
+        assertThat(document[AttributeAccess("x.b")]).isEqualTo("7")
+    }
+
+    @Test
+    fun `dictionary values are replaced by their canonical instance`() {
+        val dictionaries = AttributeDictionaries.of(mapOf("m" to listOf("AIR", "MAIL")))
+        val registry = SchemaRegistry(dictionaries = dictionaries)
+        val plain = StringBuilder("MAIL").toString()
+        val first = registry.document(x, listOf("m", "n"), listOf(StringBuilder("MAIL").toString(), plain))
+        val second = registry.document(x, listOf("m"), listOf(StringBuilder("MAIL").toString()))
+        val unknown = StringBuilder("SHIP").toString()
+
+        assertThat(first[AttributeAccess("x.m")]).isSameAs(dictionaries["m"]!!.decode(1))
+        assertThat(second[AttributeAccess("x.m")]).isSameAs(first[AttributeAccess("x.m")])
+        assertThat(first[AttributeAccess("x.n")]).isSameAs(plain)
+        assertThat(registry.document(x, listOf("m"), listOf(unknown))[AttributeAccess("x.m")]).isSameAs(unknown)
+    }
+
+    @Test
+    fun `schema documents are serialized as plain documents`() {
+        val document = document(mapOf("a" to "1", "b" to "2"))
+        val out = ByteArrayOutputStream()
+        ObjectOutputStream(out).writeObject(document)
+
+        assertThat(ObjectInputStream(ByteArrayInputStream(out.toByteArray())).readObject())
+                .isEqualTo(fromKVList("x.a", "1", "x.b", "2"))
+    }
+
+    private fun document(values: Map<String, String>): SchemaDocument =
+            registry.document(x, values.keys) { values.getValue(it) } as SchemaDocument
+}
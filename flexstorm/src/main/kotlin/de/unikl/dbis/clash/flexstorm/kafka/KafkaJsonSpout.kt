@@ -1,8 +1,11 @@
 package de.unikl.dbis.clash.flexstorm.kafka
 
+import com.google.gson.JsonObject
 import com.google.gson.JsonParser
+import com.google.gson.stream.JsonReader
 import de.unikl.dbis.clash.flexstorm.SPOUT_OUTPUT_SCHEMA
 import de.unikl.dbis.clash.flexstorm.createSpoutOutput
+import java.io.StringReader
 import java.time.Duration
 import java.time.Instant
 import java.util.Arrays
@@ -12,17 +15,21 @@ import org.apache.storm.task.TopologyContext
 import org.apache.storm.topology.OutputFieldsDeclarer
 import org.apache.storm.topology.base.BaseRichSpout
 
+/**
+ * Emits the JSON records of a Kafka topic as payloads of relation.
+ */
 class KafkaJsonSpout(val topicName: String, val relation: String) : BaseRichSpout() {
     lateinit var collector: SpoutOutputCollector
     lateinit var consumer: KafkaConsumer<String, String>
 
     val pollTimeout = Duration.ofMillis(10)
+    private val parser = JsonParser()
 
     override fun nextTuple() {
         val records = this.consumer.poll(pollTimeout)
         for (record in records) {
             val rawTuple = record.value()
-            val jsonTuple = JsonParser().parse(rawTuple).asJsonObject
+            val jsonTuple = readJsonObject(rawTuple)
             val now = Instant.now()
             collector.emit(
                 createSpoutOutput(
@@ -34,6 +41,20 @@ class KafkaJsonSpout(val topicName: String, val relation: String) : BaseRichSpou
         }
     }
 
+    /**
+     * Reads rawTuple field by field into a JsonObject, without building a parser per record.
+     */
+    private fun readJsonObject(rawTuple: String): JsonObject {
+        val reader = JsonReader(StringReader(rawTuple))
+        val result = JsonObject()
+        reader.beginObject()
+        while (reader.hasNext()) {
+            result.add(reader.nextName(), parser.parse(reader))
+        }
+        reader.endObject()
+        return result
+    }
+
     override fun open(conf: MutableMap<String, Any>?, context: TopologyContext?, collector: SpoutOutputCollector?) {
         this.collector = collector!!
         val props = kafkaConsumerProperties()
@@ -5,6 +5,7 @@ import de.unikl.dbis.clash.optimizer.GlobalStrategy
 import de.unikl.dbis.clash.optimizer.OptimizationParameters
 import de.unikl.dbis.clash.optimizer.OptimizationResult
 import de.unikl.dbis.clash.optimizer.emptyCost
+import de.unikl.dbis.clash.physical.BandStore
 import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
 import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
 import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
@@ -14,9 +15,11 @@ import de.unikl.dbis.clash.physical.OutputStub
 import de.unikl.dbis.clash.physical.PhysicalGraph
 import de.unikl.dbis.clash.physical.RelationReceiveRule
 import de.unikl.dbis.clash.physical.RelationSendRule
+import de.unikl.dbis.clash.physical.Store
 import de.unikl.dbis.clash.physical.ThetaStore
 import de.unikl.dbis.clash.physical.addEdge
 import de.unikl.dbis.clash.physical.label
+import de.unikl.dbis.clash.query.BinaryBand
 import de.unikl.dbis.clash.query.BinaryPredicate
 import de.unikl.dbis.clash.query.Query
 import java.lang.RuntimeException
@@ -24,6 +27,7 @@ import java.lang.RuntimeException
 /**
  * This is an example strategy that illustrates the construction of a physical graph.
  * It can only produce binary joins.
+ * Joins with a band predicate are planned into BandStores, all others into ThetaStores.
  */
 class BinaryTheta : GlobalStrategy {
     override fun optimize(query: Query, dataCharacteristics: DataCharacteristics, params: OptimizationParameters): OptimizationResult {
@@ -42,9 +46,10 @@ class BinaryTheta : GlobalStrategy {
         val inputB = physicalGraph.addInputStubFor(relB)
 
         // Add the stores for both relations
-        val storeA = ThetaStore(label(relA), relA, 1)
+        val isBandJoin = query.result.joinPredicates.any { it is BinaryBand }
+        val storeA = if (isBandJoin) BandStore(label(relA), relA, 1) else ThetaStore(label(relA), relA, 1)
         physicalGraph.relationStores[relA] = storeA
-        val storeB = ThetaStore(label(relB), relB, 1)
+        val storeB = if (isBandJoin) BandStore(label(relB), relB, 1) else ThetaStore(label(relB), relB, 1)
         physicalGraph.relationStores[relB] = storeB
 
         // Wire the stores
@@ -86,7 +91,7 @@ class BinaryTheta : GlobalStrategy {
      * At the a-store, the arriving tuple is b and of the arriving tuple we access y and compare it to the stored x value.
      * At the b-store, we compare the x attribute of the arriving tuple with the y value of stored tuples.
      */
-    private fun predicatesForStore(store: ThetaStore, binaryPredicates: Collection<BinaryPredicate>): Set<BinaryPredicateEvaluation> {
+    private fun predicatesForStore(store: Store, binaryPredicates: Collection<BinaryPredicate>): Set<BinaryPredicateEvaluation> {
         return binaryPredicates.map { predicate ->
             if (store.relation.inputAliases.contains(predicate.leftRelationAlias))
                 BinaryPredicateEvaluationLeftStored(predicate)
@@ -1,5 +1,6 @@
 package de.unikl.dbis.clash.optimizer
 
+import de.unikl.dbis.clash.ClashConfig
 import de.unikl.dbis.clash.datacharacteristics.DataCharacteristics
 import de.unikl.dbis.clash.optimizer.materializationtree.MtNode
 import de.unikl.dbis.clash.optimizer.materializationtree.MultiStream
@@ -15,16 +16,44 @@ fun globalTuplesMaterialized(dataCharacteristics: DataCharacteristics, node: MtN
             node.children.sumByDouble { globalTuplesMaterialized(dataCharacteristics, it) }
 }
 
-fun globalProbeTuplesSent(dataCharacteristics: DataCharacteristics, node: MtNode): Double {
+/**
+ * The expected skew of the join keys: hotKeyShare of the tuples carry keys that are hot
+ * and each hot key is split across splitFactor tasks, see SkewAwareGrouping.
+ */
+data class SkewEstimate(
+    val hotKeyShare: Double = 0.0,
+    val splitFactor: Long = 1
+) {
+    /**
+     * @return how many copies of a probe tuple a store partitioned over parallelism tasks receives on average
+     */
+    fun probeReplication(parallelism: Long): Double =
+            1.0 + hotKeyShare * (Math.max(1L, Math.min(splitFactor, parallelism)) - 1)
+
+    companion object {
+        /**
+         * @return the skew the grouped edges of a topology built with config handle, or no skew if they
+         * do not spread hot keys, see ClashConfig.skewDetectionEnabled
+         */
+        fun fromConfig(config: ClashConfig): SkewEstimate {
+            if (!config.skewEnabled || (!config.skewDetectionEnabled && config.skewHotKeys.isEmpty())) {
+                return SkewEstimate()
+            }
+            return SkewEstimate(config.skewHotKeyShare, config.skewSplitFactor.toLong())
+        }
+    }
+}
+
+fun globalProbeTuplesSent(dataCharacteristics: DataCharacteristics, node: MtNode, skew: SkewEstimate = SkewEstimate()): Double {
     if (node is MultiStream) {
-        return node.probeOrders.inner.values.sumByDouble { globalProbeTuplesSentForProbeOrder(dataCharacteristics, it.first) } +
-                node.children.sumByDouble { globalProbeTuplesSent(dataCharacteristics, it) }
+        return node.probeOrders.inner.values.sumByDouble { globalProbeTuplesSentForProbeOrder(dataCharacteristics, it.first, skew) } +
+                node.children.sumByDouble { globalProbeTuplesSent(dataCharacteristics, it, skew) }
     }
     return 0.0
 }
 
-fun globalProbeTuplesSentForProbeOrder(dataCharacteristics: DataCharacteristics, probeOrder: ProbeOrder): Double {
-    return probeTuplesSentForProbeOrder(dataCharacteristics, probeOrder).values.sum()
+fun globalProbeTuplesSentForProbeOrder(dataCharacteristics: DataCharacteristics, probeOrder: ProbeOrder, skew: SkewEstimate = SkewEstimate()): Double {
+    return probeTuplesSentForProbeOrder(dataCharacteristics, probeOrder, skew).values.sum()
 }
 
 fun globalIntermediateTuplesGeneratedForProbeOrder(dataCharacteristics: DataCharacteristics, probeOrder: ProbeOrder): Double {
@@ -48,8 +77,10 @@ fun globalNumTasks(node: MtNode): Long {
  *   S => |R \Join S|
  * }
  *
+ * Probes into a partitioned store go to a single task, unless their key is hot.
+ * Probes for hot keys are replicated to all tasks the key is split across, as given by skew.
  */
-fun probeTuplesSentForProbeOrder(dataCharacteristics: DataCharacteristics, probeOrder: ProbeOrder): Map<MtNode, Double> {
+fun probeTuplesSentForProbeOrder(dataCharacteristics: DataCharacteristics, probeOrder: ProbeOrder, skew: SkewEstimate = SkewEstimate()): Map<MtNode, Double> {
     // TODO search the bug
     val result = mutableMapOf<MtNode, Double>()
     val probeOrderWithJoinSize = relationSizeForProbeOrder(dataCharacteristics, probeOrder)
@@ -63,7 +94,7 @@ fun probeTuplesSentForProbeOrder(dataCharacteristics: DataCharacteristics, probe
 
         val targetsPartitioning = probeOrderWithJoinSize.steps[index + 1].first.partitioning
         if (seenAttributeAccesses.any { targetsPartitioning.map { it.attribute }.contains(it.attribute) }) {
-            result[step.first] = step.third
+            result[step.first] = step.third * skew.probeReplication(probeOrderWithJoinSize.steps[index + 1].first.parallelism)
         } else {
             result[step.first] = step.third * probeOrderWithJoinSize.steps[index + 1].first.parallelism
         }
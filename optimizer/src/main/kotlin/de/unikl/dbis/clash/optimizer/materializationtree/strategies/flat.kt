@@ -39,7 +39,7 @@ class FlatTheta : TreeStrategy() {
         val tree = createFlatTree(query.result, dataCharacteristics, optimizationParameters, noPartitioning())
 
         val sCost = globalTuplesMaterialized(dataCharacteristics, tree.root)
-        val pCost = globalProbeTuplesSent(dataCharacteristics, tree.root)
+        val pCost = globalProbeTuplesSent(dataCharacteristics, tree.root, optimizationParameters.skew)
         val numTasks = globalNumTasks(tree.root)
         val costEstimation = CostEstimation(sCost, pCost, numTasks)
         return TreeOptimizationResult(tree, costEstimation)
@@ -35,7 +35,7 @@ open class LeftDeepGreedyTheta : TreeStrategy() {
     override fun optimizeTree(query: Query, dataCharacteristics: DataCharacteristics, params: OptimizationParameters): TreeOptimizationResult {
         val tree = leastMaterializationGeneralizedLeftDeep(query, dataCharacteristics, params, 5) // TODO why 5?
         val numTasks = globalNumTasks(tree.root)
-        return TreeOptimizationResult(tree, CostEstimation(globalTuplesMaterialized(dataCharacteristics, tree.root), globalProbeTuplesSent(dataCharacteristics, tree.root), numTasks))
+        return TreeOptimizationResult(tree, CostEstimation(globalTuplesMaterialized(dataCharacteristics, tree.root), globalProbeTuplesSent(dataCharacteristics, tree.root, params.skew), numTasks))
     }
 }
 
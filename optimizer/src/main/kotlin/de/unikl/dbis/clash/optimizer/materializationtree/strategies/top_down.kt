@@ -85,7 +85,7 @@ class TopDownTheta : TreeStrategy() {
         val matTree = buildRoot(currentT, query, dataCharacteristics, params)
 
         val sCost = globalTuplesMaterialized(dataCharacteristics, matTree)
-        val pCost = globalProbeTuplesSent(dataCharacteristics, matTree)
+        val pCost = globalProbeTuplesSent(dataCharacteristics, matTree, params.skew)
         val numTasks = globalNumTasks(matTree)
         val costEstimation = CostEstimation(sCost, pCost, numTasks)
         return TreeOptimizationResult(MaterializationTree(matTree), costEstimation)
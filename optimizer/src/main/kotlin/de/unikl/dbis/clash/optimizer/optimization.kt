@@ -1,5 +1,6 @@
 package de.unikl.dbis.clash.optimizer
 
+import de.unikl.dbis.clash.ClashConfig
 import de.unikl.dbis.clash.datacharacteristics.DataCharacteristics
 import de.unikl.dbis.clash.optimizer.probeorder.ProbeOrderOptimizationStrategy
 import de.unikl.dbis.clash.physical.PhysicalGraph
@@ -16,9 +17,16 @@ data class OptimizationParameters(
     val globalStrategy: GlobalStrategy = GlobalStrategyRegistry.initialize(),
     val probeOrderOptimizationStrategy: ProbeOrderOptimizationStrategy = ProbeOrderStrategyRegistry.initialize(),
 
-    val crossProductsAllowed: Boolean = false
+    val crossProductsAllowed: Boolean = false,
+
+    val skew: SkewEstimate = SkewEstimate()
 ) {
     val totalCapacity: Long get() = taskCapacity * availableTasks
+
+    /**
+     * @return these parameters with the skew that a topology built with config handles
+     */
+    fun withSkew(config: ClashConfig): OptimizationParameters = copy(skew = SkewEstimate.fromConfig(config))
 }
 
 /**
@@ -1,5 +1,6 @@
 package de.unikl.dbis.clash.optimizer
 
+import de.unikl.dbis.clash.ClashConfig
 import de.unikl.dbis.clash.datacharacteristics.ManualCharacteristics
 import de.unikl.dbis.clash.optimizer.materializationtree.MatSource
 import de.unikl.dbis.clash.optimizer.probeorder.ProbeOrder
@@ -52,6 +53,26 @@ internal class CostKtTest {
         )
     }
 
+    @Test
+    fun `probe replication grows with the share of hot keys`() {
+        assertThat(SkewEstimate().probeReplication(8)).isEqualTo(1.0)
+        assertThat(SkewEstimate(0.5, 4).probeReplication(8)).isEqualTo(2.5)
+        assertThat(SkewEstimate(0.5, 4).probeReplication(2)).isEqualTo(1.5)
+    }
+
+    @Test
+    fun `skew estimate follows the skew configuration`() {
+        val config = ClashConfig()
+        assertThat(OptimizationParameters().withSkew(config).skew).isEqualTo(SkewEstimate())
+
+        config[ClashConfig.CLASH_SKEW_ENABLED] = true
+        config[ClashConfig.CLASH_SKEW_HOT_KEY_SHARE] = 0.2
+        assertThat(OptimizationParameters().withSkew(config).skew).isEqualTo(SkewEstimate(0.2, 4))
+
+        config[ClashConfig.TOPOLOGY_WORKERS] = 2
+        assertThat(SkewEstimate.fromConfig(config)).isEqualTo(SkewEstimate())
+    }
+
     @Test
     fun `relationSizeForProbeOrder works correctly for R,S,T`() {
         val probeOrderForR = ProbeOrder(listOf(
@@ -64,6 +64,14 @@ data class ThetaStore(
     override val relation: Relation,
     override val parallelism: Long
 ) : Store, Node by CommonNode(label, parallelism)
+/**
+ * A store for band joins, e.g. "x.t BETWEEN y.t - 5 AND y.t + 5", that answers probes by a range lookup.
+ */
+data class BandStore(
+    override val label: String,
+    override val relation: Relation,
+    override val parallelism: Long
+) : Store, Node by CommonNode(label, parallelism)
 data class SimilarityStore(
     override val label: String,
     override val relation: Relation,
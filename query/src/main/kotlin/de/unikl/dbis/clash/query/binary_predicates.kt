@@ -16,14 +16,17 @@ data class BinaryEquality(
     }
 }
 
+/**
+ * Holds if the value of leftAttributeAccess comes before the value of rightAttributeAccess in ValueOrder.
+ */
 data class BinaryLessThan(
     override val leftAttributeAccess: AttributeAccess,
     override val rightAttributeAccess: AttributeAccess
 ) : BinaryAttributePredicate {
     override fun joinable(left: Tuple, right: Tuple): Boolean {
-        return left[leftAttributeAccess] != null &&
-                right[rightAttributeAccess] != null &&
-                left[leftAttributeAccess]!! < right[rightAttributeAccess].toString()
+        val leftValue = left.typed(leftAttributeAccess) ?: return false
+        val rightValue = right.typed(rightAttributeAccess) ?: return false
+        return compareValues(leftValue, rightValue) < 0
     }
 
     override fun toString(): String {
@@ -31,14 +34,17 @@ data class BinaryLessThan(
     }
 }
 
+/**
+ * Holds if the value of leftAttributeAccess does not come after the value of rightAttributeAccess in ValueOrder.
+ */
 data class BinaryLessThanOrEqual(
     override val leftAttributeAccess: AttributeAccess,
     override val rightAttributeAccess: AttributeAccess
 ) : BinaryAttributePredicate {
     override fun joinable(left: Tuple, right: Tuple): Boolean {
-        return left[leftAttributeAccess] != null &&
-                right[rightAttributeAccess] != null &&
-                left[leftAttributeAccess]!! <= right[rightAttributeAccess].toString()
+        val leftValue = left.typed(leftAttributeAccess) ?: return false
+        val rightValue = right.typed(rightAttributeAccess) ?: return false
+        return compareValues(leftValue, rightValue) <= 0
     }
 
     override fun toString(): String {
@@ -46,6 +52,29 @@ data class BinaryLessThanOrEqual(
     }
 }
 
+/**
+ * Holds if the value of leftAttributeAccess lies within [right + lowerBound, right + upperBound],
+ * e.g. "r.t BETWEEN s.t - 5 AND s.t + 5" joins events that are at most five time units apart.
+ * Values are compared as numbers, documents with a non-numeric value never match.
+ */
+data class BinaryBand(
+    override val leftAttributeAccess: AttributeAccess,
+    override val rightAttributeAccess: AttributeAccess,
+    val lowerBound: Double,
+    val upperBound: Double
+) : BinaryAttributePredicate {
+    override fun joinable(left: Tuple, right: Tuple): Boolean {
+        val leftValue = left.typed(leftAttributeAccess)?.let { numberOf(it) }?.toDouble() ?: return false
+        val rightValue = right.typed(rightAttributeAccess)?.let { numberOf(it) }?.toDouble() ?: return false
+        val distance = leftValue - rightValue
+        return distance >= lowerBound && distance <= upperBound
+    }
+
+    override fun toString(): String {
+        return "$leftAttributeAccess BETWEEN $rightAttributeAccess + $lowerBound AND $rightAttributeAccess + $upperBound"
+    }
+}
+
 data class AttributePairEquality
 /**
  * Performs equality test on values of leftAttr of left and rightAttr right.
@@ -1,9 +1,16 @@
 package de.unikl.dbis.clash.query.parser
 
+import de.unikl.dbis.clash.query.BinaryBand
 import de.unikl.dbis.clash.query.BinaryEquality
 import de.unikl.dbis.clash.query.BinaryLessThan
 import de.unikl.dbis.clash.query.BinaryLessThanOrEqual
 import de.unikl.dbis.clash.query.Predicate
+import net.sf.jsqlparser.expression.DoubleValue
+import net.sf.jsqlparser.expression.Expression
+import net.sf.jsqlparser.expression.LongValue
+import net.sf.jsqlparser.expression.operators.arithmetic.Addition
+import net.sf.jsqlparser.expression.operators.arithmetic.Subtraction
+import net.sf.jsqlparser.expression.operators.relational.Between
 import net.sf.jsqlparser.expression.operators.relational.EqualsTo
 import net.sf.jsqlparser.expression.operators.relational.GreaterThan
 import net.sf.jsqlparser.expression.operators.relational.GreaterThanEquals
@@ -62,3 +69,51 @@ fun interpretBinaryLessThanOrEqual(expr: MinorThanEquals): Predicate {
 
     return BinaryLessThanOrEqual(leftAccess, rightAccess)
 }
+
+/**
+ * Interprets "r.t BETWEEN s.t - 5 AND s.t + 5" as a band of r.t around s.t.
+ *
+ * @return null if the bounds are not constant offsets of the same column
+ */
+fun interpretBinaryBetween(expr: Between): Predicate? {
+    if (expr.isNot) {
+        return null
+    }
+    val left = expr.leftExpression as? Column ?: return null
+    val (lowerColumn, lowerBound) = columnOffset(expr.betweenExpressionStart) ?: return null
+    val (upperColumn, upperBound) = columnOffset(expr.betweenExpressionEnd) ?: return null
+
+    val leftAccess = toAttributeAccess(left)
+    val rightAccess = toAttributeAccess(lowerColumn)
+    if (rightAccess != toAttributeAccess(upperColumn) || rightAccess.relationAlias == leftAccess.relationAlias) {
+        return null
+    }
+
+    return BinaryBand(leftAccess, rightAccess, lowerBound, upperBound)
+}
+
+/**
+ * Splits "s.t", "s.t + 5" and "s.t - 5" into the column and the constant offset.
+ */
+private fun columnOffset(expr: Expression): Pair<Column, Double>? {
+    return when (expr) {
+        is Column -> Pair(expr, 0.0)
+        is Addition -> {
+            val column = expr.leftExpression as? Column ?: return null
+            numericValue(expr.rightExpression)?.let { Pair(column, it) }
+        }
+        is Subtraction -> {
+            val column = expr.leftExpression as? Column ?: return null
+            numericValue(expr.rightExpression)?.let { Pair(column, -it) }
+        }
+        else -> null
+    }
+}
+
+private fun numericValue(expr: Expression): Double? {
+    return when (expr) {
+        is LongValue -> expr.value.toDouble()
+        is DoubleValue -> expr.value
+        else -> null
+    }
+}
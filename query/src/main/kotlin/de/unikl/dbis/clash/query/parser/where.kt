@@ -48,7 +48,12 @@ fun extractPredicates(where: Expression?): List<Predicate> {
         }
 
         override fun visit(expr: Between) {
-            betweenPredicates.add(expr)
+            val band = interpretBinaryBetween(expr)
+            if (band != null) {
+                result += band
+            } else {
+                betweenPredicates.add(expr)
+            }
         }
 
         override fun visit(expr: GreaterThan) {
@@ -6,6 +6,11 @@ interface Predicate
 
 interface Tuple {
     operator fun get(attr: AttributeAccess): String?
+
+    /**
+     * @return the typed value of attr, see ValueType, or its text if the source did not type it
+     */
+    fun typed(attr: AttributeAccess): Any? = get(attr)
 }
 
 interface UnaryPredicate : Predicate, Serializable {
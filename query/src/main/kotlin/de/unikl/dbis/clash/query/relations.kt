@@ -13,6 +13,27 @@ data class Relation(
 ) : Serializable {
     val inputAliases: Collection<RelationAlias> get() = inputs.keys
 
+    /**
+     * The window after which a tuple of this relation expires.
+     * A tuple of a joined relation expires as soon as one of its parts does, so this is the narrowest
+     * window of all inputs. If the inputs mix time and count windows, this is the narrowest time window
+     * and countWindow bounds the number of tuples in addition, since both cannot be compared.
+     */
+    val window: WindowDefinition get() {
+        val bounded = inputs.values.filter { it.variant != WindowDefinition.Variant.None }
+        val timeWindows = bounded.filter { it.variant == WindowDefinition.Variant.TimeInS }
+        val candidates = if (timeWindows.isEmpty()) bounded else timeWindows
+        return candidates.sortedBy { it.amount }.firstOrNull() ?: WindowDefinition.infinite()
+    }
+
+    /**
+     * The narrowest count window of all inputs, or an infinite window if no input has one.
+     * Tuples expire as soon as they leave either this or the time window of this relation.
+     */
+    val countWindow: WindowDefinition get() =
+        inputs.values.filter { it.variant == WindowDefinition.Variant.Count }.sortedBy { it.amount }.firstOrNull()
+                ?: WindowDefinition.infinite()
+
     /**
      * Creates a new relation as restriction of this one to the given aliases.
      * The output will have all according windows and predicates.
@@ -85,9 +85,7 @@ data class AttributeLessThanConstant<T>(
 ) : UnaryAttributePredicate {
     override fun evaluate(tuple: Tuple): Boolean {
         return when (constant) {
-            is Int -> tuple[attributeAccess]!!.toInt() < constant
-            is Long -> tuple[attributeAccess]!!.toLong() < constant
-            is Double -> tuple[attributeAccess]!!.toDouble() < constant
+            is Number -> compareNumbers(typedNumber(tuple, attributeAccess), constant) < 0
             else -> tuple[attributeAccess]!! < constant.toString()
         }
     }
@@ -103,9 +101,7 @@ data class AttributeGreaterThanConstant<T>(
 ) : UnaryAttributePredicate {
     override fun evaluate(tuple: Tuple): Boolean {
         return when (constant) {
-            is Int -> tuple[attributeAccess]!!.toInt() > constant
-            is Long -> tuple[attributeAccess]!!.toLong() > constant
-            is Double -> tuple[attributeAccess]!!.toDouble() > constant
+            is Number -> compareNumbers(typedNumber(tuple, attributeAccess), constant) > 0
             else -> tuple[attributeAccess]!! > constant.toString()
         }
     }
@@ -121,9 +117,7 @@ data class AttributeLessThanOrEqualConstant<T>(
 ) : UnaryAttributePredicate {
     override fun evaluate(tuple: Tuple): Boolean {
         return when (constant) {
-            is Int -> tuple[attributeAccess]!!.toInt() <= constant
-            is Long -> tuple[attributeAccess]!!.toLong() <= constant
-            is Double -> tuple[attributeAccess]!!.toDouble() <= constant
+            is Number -> compareNumbers(typedNumber(tuple, attributeAccess), constant) <= 0
             else -> tuple[attributeAccess]!! <= constant.toString()
         }
     }
@@ -139,9 +133,7 @@ data class AttributeGreaterThanOrEqualConstant<T>(
 ) : UnaryAttributePredicate {
     override fun evaluate(tuple: Tuple): Boolean {
         return when (constant) {
-            is Int -> tuple[attributeAccess]!!.toInt() >= constant
-            is Long -> tuple[attributeAccess]!!.toLong() >= constant
-            is Double -> tuple[attributeAccess]!!.toDouble() >= constant
+            is Number -> compareNumbers(typedNumber(tuple, attributeAccess), constant) >= 0
             else -> tuple[attributeAccess]!! >= constant.toString()
         }
     }
@@ -150,3 +142,11 @@ data class AttributeGreaterThanOrEqualConstant<T>(
         return "$attributeAccess >= $constant"
     }
 }
+
+/**
+ * @return the typed value of attributeAccess as a number, parsing its text only if the source did not type it
+ */
+private fun typedNumber(tuple: Tuple, attributeAccess: AttributeAccess): Number {
+    val value = tuple.typed(attributeAccess)!!
+    return numberOf(value) ?: value.toString().toDouble()
+}
@@ -0,0 +1,127 @@
+package de.unikl.dbis.clash.query
+
+import java.io.Serializable
+import java.math.BigDecimal
+import java.time.LocalDate
+import java.time.format.DateTimeParseException
+
+/**
+ * The type a source assigns to the values of an attribute.
+ *
+ * Values keep their text as the value of the attribute, the typed value is parsed from it once
+ * when the source reads the value, see Tuple.typed. Typed values are Long, Double, BigDecimal,
+ * LocalDate or, for STRING, the text itself.
+ */
+enum class ValueType {
+    LONG,
+    DOUBLE,
+    DECIMAL,
+    DATE,
+    STRING;
+
+    /**
+     * @return text parsed as a value of this type, or null if text is not a value of this type
+     */
+    fun parse(text: String): Any? = when (this) {
+        LONG -> text.toLongOrNull()
+        DOUBLE -> text.toDoubleOrNull()
+        DECIMAL -> try { BigDecimal(text) } catch (e: NumberFormatException) { null }
+        DATE -> try { LocalDate.parse(text) } catch (e: DateTimeParseException) { null }
+        STRING -> text
+    }
+
+    companion object {
+        /**
+         * @return the type of the typed value, where values of other types are STRING
+         */
+        fun of(value: Any): ValueType = when (value) {
+            is Long, is Int -> LONG
+            is Double, is Float -> DOUBLE
+            is BigDecimal -> DECIMAL
+            is LocalDate -> DATE
+            else -> STRING
+        }
+    }
+}
+
+/**
+ * The order of attribute values used by all comparisons between attributes.
+ *
+ * Two numbers are compared by their value, regardless of whether they were typed by the source or are
+ * text that reads as a number, such that "9" < "10" and "1" equals "1.0". Numbers come before all other
+ * values, which are compared by their text; for ISO dates this is their chronological order.
+ */
+object ValueOrder : Comparator<Any>, Serializable {
+    override fun compare(left: Any, right: Any): Int {
+        val leftNumber = numberOf(left)
+        val rightNumber = numberOf(right)
+        if (leftNumber != null && rightNumber != null) {
+            return compareNumbers(leftNumber, rightNumber)
+        } else if (leftNumber != null) {
+            return -1
+        } else if (rightNumber != null) {
+            return 1
+        }
+        return left.toString().compareTo(right.toString())
+    }
+
+    private fun readResolve(): Any = ValueOrder
+}
+
+/**
+ * ValueOrder with numbers of equal value but different text, e.g. "1" and "1.0", ordered by their text.
+ * It is only 0 for equal texts, as the sorted indexes of the stores require to keep a bucket per text.
+ * Values that are equal in ValueOrder are next to each other in this order.
+ */
+object IndexOrder : Comparator<Any>, Serializable {
+    override fun compare(left: Any, right: Any): Int {
+        val comparison = ValueOrder.compare(left, right)
+        return if (comparison != 0) comparison else left.toString().compareTo(right.toString())
+    }
+
+    private fun readResolve(): Any = IndexOrder
+}
+
+fun compareValues(left: Any, right: Any): Int = ValueOrder.compare(left, right)
+
+/**
+ * @return value as a number if it is a typed number or text that reads as a number, null otherwise
+ */
+fun numberOf(value: Any): Number? = when (value) {
+    is Long, is Double, is BigDecimal -> value as Number
+    is Int -> value.toLong()
+    is Float -> value.toDouble()
+    is String -> parseNumber(value)
+    else -> null
+}
+
+/**
+ * Compares two numbers by their value: longs exactly, decimals as decimals and everything else as doubles.
+ */
+fun compareNumbers(left: Number, right: Number): Int = when {
+    left is Long && right is Long -> left.compareTo(right)
+    left is BigDecimal || right is BigDecimal -> toBigDecimal(left).compareTo(toBigDecimal(right))
+    else -> left.toDouble().compareTo(right.toDouble())
+}
+
+private fun toBigDecimal(number: Number): BigDecimal = when (number) {
+    is BigDecimal -> number
+    is Long, is Int -> BigDecimal.valueOf(number.toLong())
+    else -> BigDecimal.valueOf(number.toDouble())
+}
+
+/**
+ * Parses text as a Long or Double. Text that cannot be a number is rejected by its characters before
+ * parsing, since most text values that are compared are either all numbers or none.
+ */
+private fun parseNumber(text: String): Number? {
+    if (text.isEmpty()) {
+        return null
+    }
+    for (c in text) {
+        if (c !in '0'..'9' && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+            return null
+        }
+    }
+    return text.toLongOrNull() ?: text.toDoubleOrNull()
+}
@@ -0,0 +1,35 @@
+package de.unikl.dbis.clash.query
+
+import org.assertj.core.api.Assertions
+import org.junit.jupiter.api.Test
+
+internal class BinaryBandTest {
+    private val left = AttributeAccess("x", "t")
+    private val right = AttributeAccess("y", "t")
+
+    @Test
+    fun `predicate holds within the band`() {
+        val predicate = BinaryBand(left, right, -5.0, 5.0)
+
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "100"), TestTuple(right, "95"))).isTrue()
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "100"), TestTuple(right, "105"))).isTrue()
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "100"), TestTuple(right, "94"))).isFalse()
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "100"), TestTuple(right, "106"))).isFalse()
+    }
+
+    @Test
+    fun `predicate compares numbers, not strings`() {
+        val predicate = BinaryBand(left, right, 0.0, 10.0)
+
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "100"), TestTuple(right, "95"))).isTrue()
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "100"), TestTuple(right, "8"))).isFalse()
+    }
+
+    @Test
+    fun `predicate does not hold for missing or non-numeric values`() {
+        val predicate = BinaryBand(left, right, -5.0, 5.0)
+
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "abc"), TestTuple(right, "1"))).isFalse()
+        Assertions.assertThat(predicate.joinable(TestTuple(AttributeAccess("x", "u"), "1"), TestTuple(right, "1"))).isFalse()
+    }
+}
@@ -0,0 +1,43 @@
+package de.unikl.dbis.clash.query
+
+import org.assertj.core.api.Assertions
+import org.junit.jupiter.api.Test
+
+internal class BinaryLessThanTest {
+    private val left = AttributeAccess("x", "a")
+    private val right = AttributeAccess("y", "a")
+
+    @Test
+    fun `predicate compares numbers by their value`() {
+        val predicate = BinaryLessThan(left, right)
+
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "9"), TestTuple(right, "10"))).isTrue()
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "10"), TestTuple(right, "9"))).isFalse()
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "-2.5"), TestTuple(right, "1"))).isTrue()
+    }
+
+    @Test
+    fun `predicate compares other values as strings`() {
+        val predicate = BinaryLessThan(left, right)
+
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "abc"), TestTuple(right, "abd"))).isTrue()
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "2020-01-10"), TestTuple(right, "2020-02-01"))).isTrue()
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "10"), TestTuple(right, "abc"))).isTrue()
+    }
+
+    @Test
+    fun `or equal predicate holds for equal values`() {
+        val predicate = BinaryLessThanOrEqual(left, right)
+
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "10"), TestTuple(right, "10"))).isTrue()
+        Assertions.assertThat(predicate.joinable(TestTuple(left, "11"), TestTuple(right, "9"))).isFalse()
+    }
+
+    @Test
+    fun `numbers of equal value but different text are equal`() {
+        Assertions.assertThat(BinaryLessThan(left, right).joinable(TestTuple(left, "1"), TestTuple(right, "1.0"))).isFalse()
+        Assertions.assertThat(BinaryLessThan(left, right).joinable(TestTuple(left, "1.0"), TestTuple(right, "1"))).isFalse()
+        Assertions.assertThat(BinaryLessThanOrEqual(left, right).joinable(TestTuple(left, "1.0"), TestTuple(right, "1"))).isTrue()
+        Assertions.assertThat(BinaryLessThanOrEqual(left, right).joinable(TestTuple(left, "1"), TestTuple(right, "1.0"))).isTrue()
+    }
+}
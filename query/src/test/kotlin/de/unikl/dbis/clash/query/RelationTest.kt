@@ -1,5 +1,6 @@
 package de.unikl.dbis.clash.query
 
+import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Test
 
 internal class RelationTest {
@@ -58,4 +59,46 @@ internal class RelationTest {
 //                )
 //        )
     }
+
+    @Test
+    fun `window is the narrowest window of all inputs`() {
+        val relation = Relation(
+                mapOf(
+                        RelationAlias("x") to WindowDefinition.infinite(),
+                        RelationAlias("y") to WindowDefinition.minutes(6),
+                        RelationAlias("z") to WindowDefinition.seconds(10)
+                ),
+                listOf(), listOf(), listOf(), listOf(), RelationAlias("xyz"))
+        assertThat(relation.window).isEqualTo(WindowDefinition.seconds(10))
+    }
+
+    @Test
+    fun `window prefers time windows over count windows`() {
+        val relation = Relation(
+                mapOf(
+                        RelationAlias("x") to WindowDefinition.count(10),
+                        RelationAlias("y") to WindowDefinition.hours(1)
+                ),
+                listOf(), listOf(), listOf(), listOf(), RelationAlias("xy"))
+        assertThat(relation.window).isEqualTo(WindowDefinition.hours(1))
+        assertThat(relation.countWindow).isEqualTo(WindowDefinition.count(10))
+    }
+
+    @Test
+    fun `count window is the narrowest count window of all inputs`() {
+        val relation = Relation(
+                mapOf(
+                        RelationAlias("x") to WindowDefinition.count(10),
+                        RelationAlias("y") to WindowDefinition.count(4),
+                        RelationAlias("z") to WindowDefinition.seconds(10)
+                ),
+                listOf(), listOf(), listOf(), listOf(), RelationAlias("xyz"))
+        assertThat(relation.countWindow).isEqualTo(WindowDefinition.count(4))
+        assertThat(relationOf("x").countWindow).isEqualTo(WindowDefinition.infinite())
+    }
+
+    @Test
+    fun `window of unbounded inputs is infinite`() {
+        assertThat(relationOf("x").window).isEqualTo(WindowDefinition.infinite())
+    }
 }
@@ -0,0 +1,54 @@
+package de.unikl.dbis.clash.query
+
+import java.math.BigDecimal
+import java.time.LocalDate
+import org.assertj.core.api.Assertions
+import org.junit.jupiter.api.Test
+
+internal class ValueOrderTest {
+    @Test
+    fun `typed and untyped numbers are compared by their value`() {
+        Assertions.assertThat(compareValues(9L, 10L)).isNegative()
+        Assertions.assertThat(compareValues("9", 10L)).isNegative()
+        Assertions.assertThat(compareValues(2.5, 2L)).isPositive()
+        Assertions.assertThat(compareValues(BigDecimal("0.10"), 0.2)).isNegative()
+        Assertions.assertThat(compareValues(Long.MAX_VALUE - 1, Long.MAX_VALUE)).isNegative()
+    }
+
+    @Test
+    fun `numbers of equal value are equal`() {
+        Assertions.assertThat(compareValues("1", "1")).isZero()
+        Assertions.assertThat(compareValues(1L, "1")).isZero()
+        Assertions.assertThat(compareValues("1", "1.0")).isZero()
+        Assertions.assertThat(compareValues("1.0", "1")).isZero()
+        Assertions.assertThat(compareValues(BigDecimal("2.50"), 2.5)).isZero()
+    }
+
+    @Test
+    fun `index order is zero only for equal text`() {
+        Assertions.assertThat(IndexOrder.compare("1", "1")).isZero()
+        Assertions.assertThat(IndexOrder.compare("1", "1.0")).isNegative()
+        Assertions.assertThat(IndexOrder.compare("1.0", "1")).isPositive()
+        Assertions.assertThat(IndexOrder.compare("1.0", "2")).isNegative()
+        Assertions.assertThat(IndexOrder.compare("9", "10")).isNegative()
+    }
+
+    @Test
+    fun `numbers come before other values`() {
+        Assertions.assertThat(compareValues("100", "a")).isNegative()
+        Assertions.assertThat(compareValues("a", 5L)).isPositive()
+        Assertions.assertThat(compareValues(LocalDate.of(2020, 1, 10), "2020-02-01")).isNegative()
+    }
+
+    @Test
+    fun `types parse their values`() {
+        Assertions.assertThat(ValueType.LONG.parse("42")).isEqualTo(42L)
+        Assertions.assertThat(ValueType.LONG.parse("4.2")).isNull()
+        Assertions.assertThat(ValueType.DOUBLE.parse("4.2")).isEqualTo(4.2)
+        Assertions.assertThat(ValueType.DECIMAL.parse("4.20")).isEqualTo(BigDecimal("4.20"))
+        Assertions.assertThat(ValueType.DATE.parse("2020-01-10")).isEqualTo(LocalDate.of(2020, 1, 10))
+        Assertions.assertThat(ValueType.DATE.parse("yesterday")).isNull()
+        Assertions.assertThat(ValueType.of(42L)).isEqualTo(ValueType.LONG)
+        Assertions.assertThat(ValueType.of("42")).isEqualTo(ValueType.STRING)
+    }
+}
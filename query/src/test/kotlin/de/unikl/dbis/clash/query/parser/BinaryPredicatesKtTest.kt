@@ -1,6 +1,7 @@
 package de.unikl.dbis.clash.query.parser
 
 import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.BinaryBand
 import de.unikl.dbis.clash.query.BinaryLessThan
 import de.unikl.dbis.clash.query.BinaryLessThanOrEqual
 import org.assertj.core.api.Assertions.assertThat
@@ -42,4 +43,13 @@ internal class BinaryPredicatesKtTest {
                 BinaryLessThanOrEqual(AttributeAccess("s", "y"), AttributeAccess("r", "x"))
         )
     }
+
+    @Test
+    fun `between offsets of another column parsed as band`() {
+        val qs = "SELECT * FROM r, s WHERE r.t BETWEEN s.t - 5 AND s.t + 2.5"
+        val q = parseQuery(qs)
+        assertThat(q.result.joinPredicates).containsExactly(
+                BinaryBand(AttributeAccess("r", "t"), AttributeAccess("s", "t"), -5.0, 2.5)
+        )
+    }
 }
@@ -0,0 +1,57 @@
+package de.unikl.dbis.clash.storm
+
+import de.unikl.dbis.clash.ClashConfig
+import java.io.Serializable
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Decides how strongly a store throttles the spouts once its documents, indexes and buffered probes
+ * occupy more than highWaterMark bytes. The throttle grows with the excess and reaches maxThrottleMillis
+ * per message when the store holds twice the high-water mark. A highWaterMark of 0 disables backpressure.
+ */
+data class BackpressurePolicy(
+    val highWaterMark: Long = 0,
+    val maxThrottleMillis: Long = ClashConfig.DEFAULT_STORE_MAX_THROTTLE
+) : Serializable {
+    val enabled: Boolean
+        get() = highWaterMark > 0
+
+    /**
+     * @return the milliseconds to wait per message while a store holds heapBytes
+     */
+    fun throttleMillis(heapBytes: Long): Long {
+        if (!enabled || heapBytes <= highWaterMark) {
+            return 0
+        }
+        val excess = Math.min(1.0, (heapBytes - highWaterMark).toDouble() / highWaterMark)
+        return Math.max(1L, Math.round(excess * maxThrottleMillis))
+    }
+
+    companion object {
+        fun fromConfig(config: ClashConfig): BackpressurePolicy = BackpressurePolicy(
+                config.storeHighWaterMark,
+                config.storeMaxThrottle)
+    }
+}
+
+/**
+ * The throttle signals of all store tasks running in this worker.
+ * Spouts wait for the strongest signal before they emit documents.
+ */
+object Backpressure {
+    private val signals = ConcurrentHashMap<String, Long>()
+
+    /**
+     * The milliseconds spouts currently wait before they emit documents
+     */
+    val throttleMillis: Long
+        get() = signals.values.fold(0L) { result, millis -> Math.max(result, millis) }
+
+    fun signal(task: String, throttleMillis: Long) {
+        if (throttleMillis > 0) {
+            signals[task] = throttleMillis
+        } else {
+            signals.remove(task)
+        }
+    }
+}
@@ -15,6 +15,8 @@ import de.unikl.dbis.clash.storm.StormInRule
 import de.unikl.dbis.clash.storm.StormRelationReceiveRule
 import de.unikl.dbis.clash.storm.StormRelationSendRule
 import de.unikl.dbis.clash.storm.TickMessage
+import de.unikl.dbis.clash.workers.stores.CheckpointPolicy
+import de.unikl.dbis.clash.workers.stores.Checkpoints
 import java.io.Serializable
 import java.util.HashMap
 import java.util.HashSet
@@ -122,14 +124,33 @@ abstract class AbstractBolt(open val name: String) : BaseRichBolt(), CommonSinkI
 /**
  * The DispatchBolt collects tuples from the spouts. The incoming tuples are assumed to have exactly
  * one field.
+ *
+ * If checkpoints are enabled, sequence numbers are reserved in blocks whose end is written to a checkpoint
+ * before the block is used. After a restart, the dispatcher continues after the last reserved block,
+ * so its sequence numbers stay larger than those of all documents the restored stores hold.
  */
-class DispatchBolt(name: String) : AbstractBolt(name), IDispatcherStats by DispatcherStats() {
+class DispatchBolt(
+    name: String,
+    val checkpointPolicy: CheckpointPolicy = CheckpointPolicy()
+) : AbstractBolt(name), IDispatcherStats by DispatcherStats() {
     private var punctuationCounter = 0
-    private var seq = 0
+    private var seq = 0L
+    @Transient private var checkpoints: Checkpoints? = null
+    private var reservedSeq = 0L
 
     override fun prepare(conf: MutableMap<String, Any>?, topologyContext: TopologyContext?, outputCollector: OutputCollector?) {
         super.prepare(conf, topologyContext, outputCollector)
         registerMetrics(topologyContext!!)
+        if (checkpointPolicy.enabled) {
+            val checkpoints = checkpointPolicy.checkpointsFor(stormComponentName)
+            val restored = checkpoints.readValue(RESERVED_SEQ) as Long?
+            if (restored != null) {
+                LOG.info("Continuing sequence numbers of {} at {}", this.name, restored)
+                seq = restored
+                reservedSeq = restored
+            }
+            this.checkpoints = checkpoints
+        }
     }
 
     override fun executeDocuments(
@@ -143,13 +164,14 @@ class DispatchBolt(name: String) : AbstractBolt(name), IDispatcherStats by Dispa
         if (stormInRule !is StormRelationReceiveRule) {
             return
         }
+        reserveSeq()
 
         this.ruleSet.outRules()
                 .forEach { outRule ->
                     val sendRule = outRule as StormRelationSendRule
                     if (sendRule.relation == stormInRule.relation) {
                         this.outputCollector.emit(sendRule.outgoingEdgeLabel,
-                                DocumentsMessage(seq.toLong(), System.currentTimeMillis(), documents))
+                                DocumentsMessage(seq, System.currentTimeMillis(), documents))
                         LOG.debug(
                                 "Sending message of relation '{}' to {}", sendRule.relation, sendRule.outgoingEdgeLabel)
                     }
@@ -168,10 +190,24 @@ class DispatchBolt(name: String) : AbstractBolt(name), IDispatcherStats by Dispa
         tuplesDispatchedCounter.inc()
     }
 
+    /**
+     * Makes sure that seq lies inside a block of sequence numbers that was written to the checkpoint.
+     */
+    private fun reserveSeq() {
+        val checkpoints = this.checkpoints ?: return
+        if (seq < reservedSeq) {
+            return
+        }
+        reservedSeq = seq + SEQ_BLOCK_SIZE
+        checkpoints.writeValue(RESERVED_SEQ, reservedSeq)
+    }
+
     override fun resetState() {
         LOG.info("Reset counters of " + this.name)
         this.punctuationCounter = 0
         this.seq = 0
+        this.reservedSeq = 0
+        checkpoints?.clear()
     }
 
     companion object {
@@ -182,6 +218,13 @@ class DispatchBolt(name: String) : AbstractBolt(name), IDispatcherStats by Dispa
          * Send every PUNCTUATION_EVERY tuples a punctuation message through the network
          */
         private val PUNCTUATION_EVERY = 1000
+
+        /**
+         * The number of sequence numbers reserved with one checkpoint
+         */
+        private const val SEQ_BLOCK_SIZE = 100000L
+
+        private const val RESERVED_SEQ = "reserved_seq"
     }
 }
 
@@ -1,8 +1,11 @@
 package de.unikl.dbis.clash.storm.bolts
 
 import com.codahale.metrics.Counter
+import com.codahale.metrics.Gauge
 import com.codahale.metrics.Timer
 import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
+import de.unikl.dbis.clash.storm.Backpressure
+import de.unikl.dbis.clash.storm.BackpressurePolicy
 import de.unikl.dbis.clash.storm.DocumentsMessage
 import de.unikl.dbis.clash.storm.StormEdgeLabel
 import de.unikl.dbis.clash.storm.StormInRule
@@ -10,19 +13,42 @@ import de.unikl.dbis.clash.storm.StormIntermediateJoinRule
 import de.unikl.dbis.clash.storm.StormJoinResultRule
 import de.unikl.dbis.clash.storm.StormRelationReceiveRule
 import de.unikl.dbis.clash.workers.stores.ActualStore
+import de.unikl.dbis.clash.workers.stores.CheckpointPolicy
+import de.unikl.dbis.clash.workers.stores.Checkpoints
+import de.unikl.dbis.clash.workers.stores.ProbeStatistics
+import java.io.IOException
 import java.io.Serializable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 import org.apache.storm.task.OutputCollector
 import org.apache.storm.task.TopologyContext
 import org.slf4j.LoggerFactory
 
 class GeneralStore(
     name: String,
-    val innerStore: ActualStore<StormEdgeLabel>
+    val innerStore: ActualStore<StormEdgeLabel>,
+    val checkpointPolicy: CheckpointPolicy = CheckpointPolicy(),
+    val backpressurePolicy: BackpressurePolicy = BackpressurePolicy()
 ) : AbstractBolt(name), IStoreStats by StoreStats() {
+    @Transient private var checkpoints: Checkpoints? = null
+    @Transient private var checkpointWriter: ExecutorService? = null
+    @Transient private var pendingCheckpoint: Future<*>? = null
+    private var lastCheckpoint = 0L
 
     override fun prepare(conf: MutableMap<String, Any>?, topologyContext: TopologyContext?, outputCollector: OutputCollector?) {
         super.prepare(conf, topologyContext, outputCollector)
         registerMetrics(topologyContext!!)
+        innerStore.probeStatistics?.let { registerProbeStatistics(topologyContext, it) }
+        if (checkpointPolicy.enabled) {
+            val checkpoints = checkpointPolicy.checkpointsFor(stormComponentName)
+            if (innerStore.restore(checkpoints)) {
+                LOG.info("Restored join state of {} from {}", this.name, checkpoints.directory)
+            }
+            this.checkpoints = checkpoints
+            checkpointWriter = Executors.newSingleThreadExecutor { Thread(it, "checkpoints-$stormComponentName").apply { isDaemon = true } }
+            lastCheckpoint = System.currentTimeMillis()
+        }
     }
 
     override fun executeDocuments(
@@ -46,6 +72,56 @@ class GeneralStore(
                 this.probe(message, predicates, targets)
             }
         }
+        checkpointIfDue()
+        applyBackpressure()
+    }
+
+    /**
+     * Publishes the heap usage of the inner store and the throttle it asks the spouts of this worker for,
+     * see Backpressure. The bolt itself never waits, such that probes and control messages are still handled
+     * while the spouts slow down. Spouts in other workers are slowed down by the backpressure of Storm
+     * once the input queue of this bolt fills up.
+     */
+    private fun applyBackpressure() {
+        heapBytes = innerStore.heapBytes
+        val throttleMillis = backpressurePolicy.throttleMillis(heapBytes)
+        if (throttleMillis != this.throttleMillis) {
+            Backpressure.signal(stormComponentName, throttleMillis)
+            this.throttleMillis = throttleMillis
+        }
+    }
+
+    /**
+     * Takes a checkpoint of the inner store if the checkpoint interval passed since the last one.
+     * The task only pauses for the snapshot, see CheckpointSnapshot, which checkpointTimer measures.
+     * The snapshot is written by the checkpoint writer of this task, measured by checkpointWriteTimer.
+     * While it is still being written, no new snapshot is taken.
+     */
+    private fun checkpointIfDue() {
+        val checkpoints = this.checkpoints ?: return
+        val now = System.currentTimeMillis()
+        if (now - lastCheckpoint < checkpointPolicy.intervalMillis || pendingCheckpoint?.isDone == false) {
+            return
+        }
+        val timerContext = checkpointTimer.time()
+        val snapshot = innerStore.snapshot()
+        timerContext.stop()
+        lastCheckpoint = now
+        if (snapshot == null) {
+            return
+        }
+        pendingCheckpoint = checkpointWriter!!.submit {
+            val writeContext = checkpointWriteTimer.time()
+            try {
+                snapshot.writeTo(checkpoints)
+            } catch (e: IOException) {
+                LOG.warn("Could not write a checkpoint of {}, the previous one is kept", name, e)
+            } catch (e: IllegalStateException) {
+                LOG.warn("Could not write a checkpoint of {}, the previous one is kept", name, e)
+            } finally {
+                writeContext.stop()
+            }
+        }
     }
 
     fun store(message: DocumentsMessage) {
@@ -54,7 +130,7 @@ class GeneralStore(
         storeMessagesReadCounter.inc()
         val timerContext = storeTimer.time()
 
-        val delayed = innerStore.store(message.ats, message.documents)
+        val delayed = innerStore.store(message.ats, message.its, message.documents)
 
         delayed.forEach {
             val res = DocumentsMessage(delayed.seq, it.creationTime, it.joinResult)
@@ -109,7 +185,10 @@ class GeneralStore(
 
     override fun resetState() {
         LOG.info("Reset join state of " + this.name)
-//        innerStore.reset() TODO
+        innerStore.reset()
+        pendingCheckpoint?.get()
+        checkpoints?.clear()
+        applyBackpressure()
         super.resetState()
     }
 
@@ -125,6 +204,8 @@ class GeneralStore(
 interface IStoreStats : Serializable {
     fun registerMetrics(topologyContext: TopologyContext)
 
+    fun registerProbeStatistics(topologyContext: TopologyContext, probeStatistics: ProbeStatistics)
+
     val probeTuplesReadCounter: Counter
     val probeMessagesReadCounter: Counter
     val storeTuplesReadCounter: Counter
@@ -136,6 +217,11 @@ interface IStoreStats : Serializable {
 
     var probeTimer: Timer
     var storeTimer: Timer
+    var checkpointTimer: Timer
+    var checkpointWriteTimer: Timer
+
+    var heapBytes: Long
+    var throttleMillis: Long
 }
 
 class StoreStats : IStoreStats {
@@ -150,6 +236,11 @@ class StoreStats : IStoreStats {
 
     override lateinit var probeTimer: Timer
     override lateinit var storeTimer: Timer
+    override lateinit var checkpointTimer: Timer
+    override lateinit var checkpointWriteTimer: Timer
+
+    @Volatile override var heapBytes = 0L
+    @Volatile override var throttleMillis = 0L
 
     override fun registerMetrics(topologyContext: TopologyContext) {
         probeTuplesReadCounter = topologyContext.registerCounter("clash_metric.probeTuplesReadCounter")
@@ -162,5 +253,16 @@ class StoreStats : IStoreStats {
         emittedDelayedResultMessagesCounter = topologyContext.registerCounter("clash_metric.emittedDelayedResultMessagesCounter")
         probeTimer = topologyContext.registerTimer("clash_metric.probeTimer")
         storeTimer = topologyContext.registerTimer("clash_metric.storeTimer")
+        checkpointTimer = topologyContext.registerTimer("clash_metric.checkpointTimer")
+        checkpointWriteTimer = topologyContext.registerTimer("clash_metric.checkpointWriteTimer")
+        topologyContext.registerGauge("clash_metric.storeHeapBytes", Gauge { heapBytes })
+        topologyContext.registerGauge("clash_metric.throttleMillis", Gauge { throttleMillis })
+    }
+
+    override fun registerProbeStatistics(topologyContext: TopologyContext, probeStatistics: ProbeStatistics) {
+        topologyContext.registerGauge("clash_metric.skippedProbeMessages", Gauge { probeStatistics.skippedProbes.get() })
+        topologyContext.registerGauge("clash_metric.skippedSegmentLookups", Gauge { probeStatistics.skippedSegmentLookups.get() })
+        topologyContext.registerGauge("clash_metric.bloomFilterFalsePositiveRate", Gauge { probeStatistics.falsePositiveRate })
+        topologyContext.registerGauge("clash_metric.probeCacheHitRatio", Gauge { probeStatistics.cacheHitRatio })
     }
 }
@@ -1,17 +1,25 @@
 package de.unikl.dbis.clash.storm.builder
 
 import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.AttributeDictionaries
+import de.unikl.dbis.clash.documents.SchemaRegistry
 import de.unikl.dbis.clash.physical.AggregationStore
+import de.unikl.dbis.clash.physical.BandStore
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
 import de.unikl.dbis.clash.physical.ControlOutRule
 import de.unikl.dbis.clash.physical.Controller
 import de.unikl.dbis.clash.physical.ControllerInput
 import de.unikl.dbis.clash.physical.Dispatcher
+import de.unikl.dbis.clash.physical.EdgeLabel
 import de.unikl.dbis.clash.physical.EdgeType
 import de.unikl.dbis.clash.physical.InputStub
+import de.unikl.dbis.clash.physical.IntermediateJoinRule
+import de.unikl.dbis.clash.physical.JoinResultRule
 import de.unikl.dbis.clash.physical.Node
 import de.unikl.dbis.clash.physical.OutRule
 import de.unikl.dbis.clash.physical.PartitionedStore
 import de.unikl.dbis.clash.physical.PhysicalGraph
+import de.unikl.dbis.clash.physical.RelationReceiveRule
 import de.unikl.dbis.clash.physical.SelectProjectNode
 import de.unikl.dbis.clash.physical.SimilarityStore
 import de.unikl.dbis.clash.physical.Sink
@@ -23,7 +31,11 @@ import de.unikl.dbis.clash.physical.TickSpout
 import de.unikl.dbis.clash.query.InputName
 import de.unikl.dbis.clash.query.RelationAlias
 import de.unikl.dbis.clash.query.inputForRelation
+import de.unikl.dbis.clash.storm.BackpressurePolicy
 import de.unikl.dbis.clash.storm.DataPathMessage
+import de.unikl.dbis.clash.storm.Serialization
+import de.unikl.dbis.clash.storm.SkewAwareGrouping
+import de.unikl.dbis.clash.storm.SkewPolicy
 import de.unikl.dbis.clash.storm.StormEdgeLabel
 import de.unikl.dbis.clash.storm.bolts.AggregateStore
 import de.unikl.dbis.clash.storm.bolts.CommonSinkI
@@ -36,9 +48,13 @@ import de.unikl.dbis.clash.storm.spouts.CommonSpoutI
 import de.unikl.dbis.clash.storm.spouts.ControlSpout
 import de.unikl.dbis.clash.support.KafkaConfig
 import de.unikl.dbis.clash.workers.stores.ActualSimilarityStore
+import de.unikl.dbis.clash.workers.stores.AdaptiveStore
+import de.unikl.dbis.clash.workers.stores.BandJoinStore
+import de.unikl.dbis.clash.workers.stores.CheckpointPolicy
 import de.unikl.dbis.clash.workers.stores.ActualStore
 import de.unikl.dbis.clash.workers.stores.NaiveHashStore
 import de.unikl.dbis.clash.workers.stores.NaiveNestedLoopStore
+import de.unikl.dbis.clash.workers.stores.RangeIndexedStore
 import org.apache.storm.generated.StormTopology
 import org.apache.storm.topology.BoltDeclarer
 import org.apache.storm.topology.TopologyBuilder
@@ -57,13 +73,26 @@ class StormTopologyBuilder(
     }
 
     private lateinit var enhancedGraph: StormPhysicalGraph
+    private val schemaRegistry = createSchemaRegistry()
+    private val skewPolicy = SkewPolicy.fromConfig(config)
+
+    private fun createSchemaRegistry(): SchemaRegistry {
+        val dictionaries = AttributeDictionaries.of(config.dictionaries)
+        val relation = inputGraph.outputStub?.relation ?: return SchemaRegistry(dictionaries = dictionaries)
+        return SchemaRegistry.fromRelation(relation, dictionaries = dictionaries)
+    }
 
     fun build(): StormTopology {
         val builder = TopologyBuilder()
         return build(builder)
     }
 
+    /**
+     * Builds the topology and registers the serializers of its messages in config,
+     * which therefore has to be the configuration the topology is submitted with.
+     */
     fun build(builder: TopologyBuilder): StormTopology {
+        Serialization.register(config)
         val pge = PhysicalGraphEnhancer(
                 this.inputGraph,
                 this.config
@@ -99,15 +128,25 @@ class StormTopologyBuilder(
             when (label.edgeType) {
                 EdgeType.ALL -> declarer.allGrouping(sourceNode, sourceStream)
                 EdgeType.SHUFFLE -> declarer.shuffleGrouping(sourceNode, sourceStream)
-                EdgeType.GROUP_BY -> declarer.fieldsGrouping(
-                        sourceNode,
-                        sourceStream,
-                        Fields(DataPathMessage.GROUPING_FIELD)
-                )
+                EdgeType.GROUP_BY -> if (skewPolicy.enabled) {
+                    declarer.customGrouping(sourceNode, sourceStream, SkewAwareGrouping(skewPolicy, !isStoreEdge(node, label)))
+                } else {
+                    declarer.fieldsGrouping(
+                            sourceNode,
+                            sourceStream,
+                            Fields(DataPathMessage.GROUPING_FIELD)
+                    )
+                }
             }
         }
     }
 
+    /**
+     * @return whether node receives documents to store over label, otherwise it receives probes
+     */
+    private fun isStoreEdge(node: Node, label: EdgeLabel): Boolean =
+            node.rules.any { it is RelationReceiveRule && it.incomingEdgeLabel == label }
+
     internal fun buildSpouts(builder: TopologyBuilder) {
         for (spoutNode in this.enhancedGraph.spouts) {
             this.buildSpout(spoutNode, builder)
@@ -121,6 +160,7 @@ class StormTopologyBuilder(
         spoutNode.rules.forEach {
             when (it) { is OutRule -> (spout as CommonSpout).addRule(it) }
         }
+        (spout as? CommonSpout)?.schemaRegistry = schemaRegistry
         builder.setSpout(spoutNode.label, spout)
         LOG.debug("Spout {} built.", spoutNode.label)
     }
@@ -136,13 +176,18 @@ class StormTopologyBuilder(
         val nodeLabel = storeNode.label
         LOG.debug("Building store {}...", nodeLabel)
 
+        val window = storeNode.relation.window
+        val countWindow = storeNode.relation.countWindow
         val store: ActualStore<StormEdgeLabel> = when (storeNode) {
-            is PartitionedStore -> NaiveHashStore(config)
-            is ThetaStore -> NaiveNestedLoopStore(config)
+            is PartitionedStore -> if (config.storeAdaptiveEnabled) AdaptiveStore(config, window, countWindow, joinPredicates(storeNode))
+                else NaiveHashStore(config, window, countWindow)
+            is ThetaStore -> if (config.storeAdaptiveEnabled) AdaptiveStore(config, window, countWindow, joinPredicates(storeNode))
+                else RangeIndexedStore(config, window, countWindow)
+            is BandStore -> BandJoinStore(config, window, countWindow)
             is SimilarityStore -> ActualSimilarityStore(config)
-            else -> NaiveNestedLoopStore(config)
+            else -> NaiveNestedLoopStore(config, window, countWindow)
         }
-        val storeBolt = GeneralStore(nodeLabel, store)
+        val storeBolt = GeneralStore(nodeLabel, store, CheckpointPolicy.fromConfig(config), BackpressurePolicy.fromConfig(config))
         val declarer = builder
                 .setBolt(nodeLabel, storeBolt, storeNode.parallelism)
         declareGroupings(storeNode, declarer)
@@ -153,6 +198,17 @@ class StormTopologyBuilder(
         LOG.debug("Store {} built.", nodeLabel)
     }
 
+    /**
+     * @return the predicates of all rules that probe the store
+     */
+    internal fun joinPredicates(storeNode: Store): List<BinaryPredicateEvaluation> = storeNode.rules.flatMap {
+        when (it) {
+            is IntermediateJoinRule -> it.predicates
+            is JoinResultRule -> it.predicates
+            else -> setOf<BinaryPredicateEvaluation>()
+        }
+    }
+
     internal fun buildSelectProjectBolts(builder: TopologyBuilder) {
         this.enhancedGraph
             .selectProjectNodes
@@ -198,7 +254,7 @@ class StormTopologyBuilder(
         builder: TopologyBuilder
     ) {
         LOG.debug("Building dispatcher {}...", dispatcherNode.label)
-        val dispatcher = DispatchBolt(dispatcherNode.label)
+        val dispatcher = DispatchBolt(dispatcherNode.label, CheckpointPolicy.fromConfig(config))
         val declarer = builder
                 .setBolt(dispatcherNode.label, dispatcher, this.config.dispatcherParallelism)
         for ((label, node) in dispatcherNode.incomingEdges) {
@@ -82,12 +82,12 @@ abstract class DataPathMessage internal constructor(val ats: ATS, val its: ITS)
         private val MESSAGE_TYPE_FIELD = "_type"
         private val MESSAGE_TYPE_INDEX = 0
         private val ATS_FIELD = "_ats"
-        private val ATS_INDEX = 1
+        internal val ATS_INDEX = 1
         private val ITS_FIELD = "_its"
         private val ITS_INDEX = 2
         private val PAYLOAD_FIELD = "_payload"
         private val PAYLOAD_INDEX = 3
-        private val GROUPING_INDEX = 4
+        internal val GROUPING_INDEX = 4
 
         val schema: Fields
             get() = Fields(
@@ -105,9 +105,8 @@ abstract class DataPathMessage internal constructor(val ats: ATS, val its: ITS)
             val type = tuple.getInteger(MESSAGE_TYPE_INDEX)!!
             return when (type) {
                 DOCUMENT_LIST_TYPE -> {
-                    @Suppress("UNCHECKED_CAST")
-                    val documents = tuple.getValue(PAYLOAD_INDEX) as List<Document>
-                    DocumentsMessage(ats, its, documents)
+                    val batch = tuple.getValue(PAYLOAD_INDEX) as DocumentBatch
+                    DocumentsMessage(ats, its, batch.documents)
                 }
                 SINGLE_DOCUMENT_TYPE -> {
                     val document = tuple.getValue(PAYLOAD_INDEX) as Document
@@ -214,7 +213,7 @@ class DocumentsMessage(
                     DOCUMENT_LIST_TYPE,
                     ats,
                     its,
-                    documents,
+                    DocumentBatch(documents),
                     groupingValue
             )
         }
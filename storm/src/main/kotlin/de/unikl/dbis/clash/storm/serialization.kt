@@ -0,0 +1,239 @@
+package de.unikl.dbis.clash.storm
+
+import com.esotericsoftware.kryo.Kryo
+import com.esotericsoftware.kryo.Serializer
+import com.esotericsoftware.kryo.io.Input
+import com.esotericsoftware.kryo.io.Output
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.AttributeDictionaries
+import de.unikl.dbis.clash.documents.AttributeDictionary
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.DocumentSchema
+import de.unikl.dbis.clash.documents.JointDocument
+import de.unikl.dbis.clash.documents.SchemaDocument
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.RelationAlias
+import de.unikl.dbis.clash.query.ValueType
+import java.io.Serializable
+import org.apache.storm.Config
+
+/**
+ * The documents of a DocumentsMessage as the payload of a tuple, such that they are written by the
+ * DocumentBatchSerializer instead of the generic serializer for lists.
+ */
+class DocumentBatch(val documents: List<Document>) : Serializable
+
+/**
+ * Registers the serializers of the payloads of DataPathMessages with the Kryo instances of a topology.
+ */
+object Serialization {
+    private val serializers = listOf(
+            Pair(Document::class.java, DocumentSerializer::class.java),
+            Pair(JointDocument::class.java, DocumentSerializer::class.java),
+            Pair(SchemaDocument::class.java, DocumentSerializer::class.java),
+            Pair(DocumentBatch::class.java, DocumentBatchSerializer::class.java),
+            Pair(AttributeAccess::class.java, AttributeAccessSerializer::class.java),
+            Pair(RelationAlias::class.java, RelationAliasSerializer::class.java)
+    )
+
+    /**
+     * Adds the serializers to the topology configuration conf, unless they are registered already.
+     */
+    fun register(conf: MutableMap<String, Any>) {
+        val registered = (conf[Config.TOPOLOGY_KRYO_REGISTER] as? List<*> ?: listOf<Any>())
+                .mapNotNull { (it as? Map<*, *>)?.keys }
+                .flatten()
+                .toSet()
+        for ((klass, serializer) in serializers) {
+            if (klass.name !in registered) {
+                Config.registerSerialization(conf, klass, serializer)
+            }
+        }
+    }
+}
+
+/**
+ * Writes a single document without the schema header of a batch, see DocumentBatchSerializer:
+ * the number of attributes, then for each attribute its relation alias, unless it is the same as the one before,
+ * its name, its ValueType and its value. Values are encoded as in a batch.
+ * Documents are read back as SchemaDocuments.
+ */
+class DocumentSerializer(private val dictionaries: AttributeDictionaries = AttributeDictionaries()) : Serializer<Document>() {
+    /**
+     * Called by Storm with the configuration of the topology, which holds its dictionaries.
+     */
+    constructor(kryo: Kryo, conf: Map<String, Any>) : this(dictionariesOf(conf))
+
+    override fun write(kryo: Kryo, output: Output, document: Document) = writeDocument(output, document, dictionaries)
+
+    override fun read(kryo: Kryo, input: Input, type: Class<Document>): Document = readDocument(input, dictionaries)
+}
+
+/**
+ * Writes the attributes of each distinct schema of a batch only once.
+ * Each document is written as the id of its schema followed by its values in the order of the schema.
+ * The first document of a schema introduces it by the next free id and the attributes of the schema
+ * together with the ValueType of each of them.
+ * The documents are read back as SchemaDocuments sharing the DocumentSchema of their batch,
+ * with their values typed again by the written types.
+ * Values of attributes with a dictionary, see ClashConfig.dictionaries, are written as their code
+ * and read back as the canonical instance of the value.
+ */
+class DocumentBatchSerializer(private val dictionaries: AttributeDictionaries = AttributeDictionaries()) : Serializer<DocumentBatch>() {
+    /**
+     * Called by Storm with the configuration of the topology, which holds its dictionaries.
+     */
+    constructor(kryo: Kryo, conf: Map<String, Any>) : this(dictionariesOf(conf))
+
+    override fun write(kryo: Kryo, output: Output, batch: DocumentBatch) = writeDocuments(output, batch.documents, dictionaries)
+
+    override fun read(kryo: Kryo, input: Input, type: Class<DocumentBatch>): DocumentBatch =
+            DocumentBatch(readDocuments(input, dictionaries))
+}
+
+class AttributeAccessSerializer : Serializer<AttributeAccess>() {
+    override fun write(kryo: Kryo, output: Output, attributeAccess: AttributeAccess) = writeAttributeAccess(output, attributeAccess)
+
+    override fun read(kryo: Kryo, input: Input, type: Class<AttributeAccess>): AttributeAccess = readAttributeAccess(input)
+}
+
+class RelationAliasSerializer : Serializer<RelationAlias>() {
+    override fun write(kryo: Kryo, output: Output, relationAlias: RelationAlias) = output.writeString(relationAlias.inner)
+
+    override fun read(kryo: Kryo, input: Input, type: Class<RelationAlias>): RelationAlias = RelationAlias(input.readString())
+}
+
+private fun dictionariesOf(conf: Map<String, Any>): AttributeDictionaries =
+        AttributeDictionaries.of(ClashConfig().also { it.putAll(conf) }.dictionaries)
+
+private fun writeDocument(output: Output, document: Document, dictionaries: AttributeDictionaries) {
+    val attributeAccesses = ArrayList<AttributeAccess>()
+    val types = ArrayList<ValueType>()
+    val values = ArrayList<String>()
+    document.forEachValue { attributeAccess, value, typedValue ->
+        attributeAccesses.add(attributeAccess)
+        types.add(ValueType.of(typedValue))
+        values.add(value)
+    }
+    output.writeVarInt(attributeAccesses.size, true)
+    var relationAlias: RelationAlias? = null
+    for (i in values.indices) {
+        val attributeAccess = attributeAccesses[i]
+        // a null alias repeats the one before
+        output.writeString(if (attributeAccess.relationAlias == relationAlias) null else attributeAccess.relationAlias.inner)
+        relationAlias = attributeAccess.relationAlias
+        output.writeString(attributeAccess.attribute)
+        output.writeByte(types[i].ordinal)
+        writeValue(output, values[i], dictionaries[attributeAccess.attribute])
+    }
+}
+
+private fun readDocument(input: Input, dictionaries: AttributeDictionaries): Document {
+    val size = input.readVarInt(true)
+    val attributeAccesses = ArrayList<AttributeAccess>(size)
+    val values = arrayOfNulls<String>(size)
+    var typedValues: Array<Any?>? = null
+    var relationAlias: String? = null
+    for (ordinal in 0 until size) {
+        relationAlias = input.readString() ?: relationAlias
+        val attributeAccess = AttributeAccess(relationAlias!!, input.readString())
+        val type = ValueType.values()[input.readByte().toInt()]
+        val value = readValue(input, dictionaries[attributeAccess.attribute])
+        attributeAccesses.add(attributeAccess)
+        values[ordinal] = value
+        if (type != ValueType.STRING) {
+            typedValues = typedValues ?: arrayOfNulls(size)
+            typedValues[ordinal] = type.parse(value)
+        }
+    }
+    return SchemaDocument(DocumentSchema(attributeAccesses), values, typedValues)
+}
+
+private fun writeDocuments(output: Output, documents: List<Document>, dictionaries: AttributeDictionaries) {
+    output.writeVarInt(documents.size, true)
+    val schemas = HashMap<Pair<List<AttributeAccess>, List<ValueType>>, Int>()
+    for (document in documents) {
+        val attributeAccesses = ArrayList<AttributeAccess>()
+        val types = ArrayList<ValueType>()
+        val values = ArrayList<String>()
+        document.forEachValue { attributeAccess, value, typedValue ->
+            attributeAccesses.add(attributeAccess)
+            types.add(ValueType.of(typedValue))
+            values.add(value)
+        }
+        val schemaKey = Pair(attributeAccesses, types)
+        val schemaId = schemas[schemaKey]
+        if (schemaId != null) {
+            output.writeVarInt(schemaId, true)
+        } else {
+            val newSchemaId = schemas.size
+            schemas[schemaKey] = newSchemaId
+            output.writeVarInt(newSchemaId, true)
+            output.writeVarInt(attributeAccesses.size, true)
+            attributeAccesses.forEach { writeAttributeAccess(output, it) }
+            types.forEach { output.writeByte(it.ordinal) }
+        }
+        for (i in values.indices) {
+            writeValue(output, values[i], dictionaries[attributeAccesses[i].attribute])
+        }
+    }
+}
+
+private fun readDocuments(input: Input, dictionaries: AttributeDictionaries): List<Document> {
+    val size = input.readVarInt(true)
+    val schemas = ArrayList<DocumentSchema>()
+    val schemaTypes = ArrayList<Array<ValueType>?>()
+    val documents = ArrayList<Document>(size)
+    for (i in 0 until size) {
+        val schemaId = input.readVarInt(true)
+        if (schemaId == schemas.size) {
+            val attributes = input.readVarInt(true)
+            schemas.add(DocumentSchema((0 until attributes).map { readAttributeAccess(input) }))
+            val types = Array(attributes) { ValueType.values()[input.readByte().toInt()] }
+            schemaTypes.add(if (types.all { it == ValueType.STRING }) null else types)
+        }
+        val schema = schemas[schemaId]
+        val types = schemaTypes[schemaId]
+        val values = arrayOfNulls<String>(schema.size)
+        val typedValues = if (types == null) null else arrayOfNulls<Any>(schema.size)
+        for (ordinal in values.indices) {
+            val value = readValue(input, dictionaries[schema.attributeAccesses[ordinal].attribute])
+            values[ordinal] = value
+            if (types != null && types[ordinal] != ValueType.STRING) {
+                typedValues!![ordinal] = types[ordinal].parse(value)
+            }
+        }
+        documents.add(SchemaDocument(schema, values, typedValues))
+    }
+    return documents
+}
+
+/**
+ * Writes value as its code plus one if dictionary contains it, otherwise as 0 followed by the value.
+ */
+private fun writeValue(output: Output, value: String, dictionary: AttributeDictionary?) {
+    if (dictionary == null) {
+        output.writeString(value)
+        return
+    }
+    val code = dictionary.encode(value)
+    output.writeVarInt(code + 1, true)
+    if (code < 0) {
+        output.writeString(value)
+    }
+}
+
+private fun readValue(input: Input, dictionary: AttributeDictionary?): String {
+    if (dictionary == null) {
+        return input.readString()
+    }
+    val code = input.readVarInt(true) - 1
+    return if (code < 0) input.readString() else dictionary.decode(code)
+}
+
+private fun writeAttributeAccess(output: Output, attributeAccess: AttributeAccess) {
+    output.writeString(attributeAccess.relationAlias.inner)
+    output.writeString(attributeAccess.attribute)
+}
+
+private fun readAttributeAccess(input: Input): AttributeAccess = AttributeAccess(input.readString(), input.readString())
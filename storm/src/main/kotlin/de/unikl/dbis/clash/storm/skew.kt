@@ -0,0 +1,202 @@
+package de.unikl.dbis.clash.storm
+
+import de.unikl.dbis.clash.ClashConfig
+import java.io.Serializable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import org.apache.storm.generated.GlobalStreamId
+import org.apache.storm.grouping.CustomStreamGrouping
+import org.apache.storm.task.WorkerTopologyContext
+import org.slf4j.LoggerFactory
+
+/**
+ * Decides when a key of a grouped edge counts as hot and over how many tasks it is spread.
+ *
+ * The keys in hotKeys are hot from the start. If detect is set, a key also becomes hot once it makes up
+ * at least threshold of the documents seen on the grouped edges into a bolt, counted by a sketch of
+ * sketchSize keys. Stored documents of a hot key are split across splitFactor tasks, probes for it are
+ * sent to all of them.
+ *
+ * Every sender must agree on which keys are hot, or probes miss the tasks a document was stored at.
+ * The sketches are kept per worker, so detection is only enabled for topologies in a single worker,
+ * see ClashConfig.skewDetectionEnabled. Configured hot keys are the same in every worker.
+ */
+data class SkewPolicy(
+    val enabled: Boolean = false,
+    val threshold: Double = ClashConfig.DEFAULT_SKEW_THRESHOLD,
+    val sketchSize: Int = ClashConfig.DEFAULT_SKEW_SKETCH_SIZE,
+    val splitFactor: Int = ClashConfig.DEFAULT_SKEW_SPLIT_FACTOR,
+    val detect: Boolean = enabled,
+    val hotKeys: Set<String> = setOf()
+) : Serializable {
+    companion object {
+        private val LOG = LoggerFactory.getLogger(SkewPolicy::class.java)!!
+
+        fun fromConfig(config: ClashConfig): SkewPolicy {
+            if (config.skewEnabled && !config.skewDetectionEnabled) {
+                LOG.warn("Hot keys are not detected in topologies with several workers, " +
+                        "only the ${config.skewHotKeys.size} keys in ${ClashConfig.CLASH_SKEW_HOT_KEYS} are spread.")
+            }
+            val hotKeys = if (config.skewEnabled) config.skewHotKeys else setOf()
+            return SkewPolicy(
+                    config.skewDetectionEnabled || hotKeys.isNotEmpty(),
+                    config.skewThreshold,
+                    config.skewSketchSize,
+                    config.skewSplitFactor,
+                    config.skewDetectionEnabled,
+                    hotKeys)
+        }
+    }
+}
+
+/**
+ * Counts the most frequent keys of a stream with the Space-Saving algorithm in a fixed number of counters.
+ * A key that is not counted yet replaces the key with the smallest count and inherits that count as its error,
+ * so count - error never overestimates how often a key occurred.
+ */
+class HeavyHitters(private val capacity: Int) : Serializable {
+    private val counts = HashMap<String, Long>()
+    private val errors = HashMap<String, Long>()
+
+    /**
+     * The number of keys offered so far
+     */
+    var total = 0L
+        private set
+
+    fun offer(key: String) {
+        total++
+        val count = counts[key]
+        if (count != null) {
+            counts[key] = count + 1
+            return
+        }
+        if (counts.size < capacity) {
+            counts[key] = 1
+            errors[key] = 0
+            return
+        }
+        var smallestKey = key
+        var smallestCount = java.lang.Long.MAX_VALUE
+        for ((counted, count) in counts) {
+            if (count < smallestCount) {
+                smallestKey = counted
+                smallestCount = count
+            }
+        }
+        counts.remove(smallestKey)
+        errors.remove(smallestKey)
+        counts[key] = smallestCount + 1
+        errors[key] = smallestCount
+    }
+
+    /**
+     * @return how often key occurred at least
+     */
+    fun guaranteedCount(key: String): Long {
+        val count = counts[key] ?: return 0
+        return count - errors[key]!!
+    }
+}
+
+/**
+ * Detects the hot keys of the grouped edges into one bolt. Keys stay hot once detected,
+ * such that probes keep reaching all tasks that stored documents of the key may have been sent to.
+ * If the policy does not detect hot keys, only its configured hot keys are hot.
+ *
+ * Probes that were sent before their key turned hot only reached its home task and wait in its probe log
+ * for documents that are stored late. Therefore a detected key remembers the latest ats seen up to then,
+ * and documents up to that ats are still stored at the home task only, see splitAfter.
+ */
+class HotKeyDetector(private val policy: SkewPolicy) {
+    private val heavyHitters = HeavyHitters(policy.sketchSize)
+    private val hotKeys = ConcurrentHashMap<String, Long>()
+    private val latestAts = AtomicLong(java.lang.Long.MIN_VALUE)
+
+    /**
+     * Counts key of a message with ats and tells whether it is hot.
+     */
+    fun observe(key: String, ats: ATS): Boolean {
+        // must be seen before the key is looked up, such that a detection in another sender covers this message
+        latestAts.accumulateAndGet(ats) { latest, seen -> Math.max(latest, seen) }
+        if (policy.hotKeys.contains(key) || hotKeys.containsKey(key)) {
+            return true
+        }
+        if (!policy.detect) {
+            return false
+        }
+        synchronized(heavyHitters) {
+            heavyHitters.offer(key)
+            if (heavyHitters.total >= MIN_OBSERVATIONS &&
+                    heavyHitters.guaranteedCount(key) >= policy.threshold * heavyHitters.total) {
+                if (!hotKeys.containsKey(key)) {
+                    // keep everything at home until the latest ats that may have been sent there is known
+                    hotKeys[key] = java.lang.Long.MAX_VALUE
+                    hotKeys[key] = latestAts.get()
+                }
+                return true
+            }
+        }
+        return false
+    }
+
+    /**
+     * @return the ats after which documents of the hot key may be stored at other tasks than its home task
+     */
+    fun splitAfter(key: String): ATS = if (policy.hotKeys.contains(key)) java.lang.Long.MIN_VALUE
+        else hotKeys[key] ?: java.lang.Long.MAX_VALUE
+
+    companion object {
+        // the number of documents seen before any key can be hot
+        private const val MIN_OBSERVATIONS = 1000L
+    }
+}
+
+/**
+ * The hot key detectors of all bolts with skew-aware grouped inputs, shared by all senders in this worker.
+ */
+object HotKeys {
+    private val detectors = ConcurrentHashMap<String, HotKeyDetector>()
+
+    fun detectorFor(component: String, policy: SkewPolicy): HotKeyDetector =
+            detectors.computeIfAbsent(component) { HotKeyDetector(policy) }
+}
+
+/**
+ * Groups a stream by its grouping key like a fields grouping, but spreads hot keys over several tasks.
+ * Keys that are not hot are always sent to the same task. For a hot key, an edge that delivers documents
+ * to be stored sends each of them to one of splitFactor tasks in turn, an edge that delivers probes
+ * sends each probe to all of these tasks. Documents that arrive late for probes sent before the key turned hot
+ * still go to the home task, whose probe log holds these probes.
+ */
+class SkewAwareGrouping(
+    private val policy: SkewPolicy,
+    private val probing: Boolean
+) : CustomStreamGrouping {
+    private lateinit var targetTasks: List<Int>
+    @Transient private var detector: HotKeyDetector? = null
+    private var next = 0
+
+    override fun prepare(context: WorkerTopologyContext, stream: GlobalStreamId, targetTasks: List<Int>) {
+        this.targetTasks = targetTasks.sorted()
+        this.detector = HotKeys.detectorFor(context.getComponentId(targetTasks[0]), policy)
+    }
+
+    override fun chooseTasks(taskId: Int, values: List<Any>): List<Int> {
+        val key = values[DataPathMessage.GROUPING_INDEX].toString()
+        val ats = (values[DataPathMessage.ATS_INDEX] as Number).toLong()
+        val home = Math.floorMod(key.hashCode(), targetTasks.size)
+        val splitFactor = Math.min(policy.splitFactor, targetTasks.size)
+        if (splitFactor <= 1 || !detector!!.observe(key, ats)) {
+            return listOf(targetTasks[home])
+        }
+        if (probing) {
+            return (0 until splitFactor).map { targetTasks[(home + it) % targetTasks.size] }
+        }
+        if (ats <= detector!!.splitAfter(key)) {
+            return listOf(targetTasks[home])
+        }
+        next = (next + 1) % splitFactor
+        return listOf(targetTasks[(home + next) % targetTasks.size])
+    }
+}
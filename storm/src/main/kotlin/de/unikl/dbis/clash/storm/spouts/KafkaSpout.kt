@@ -9,7 +9,6 @@ import java.util.Arrays
 import org.apache.kafka.clients.consumer.KafkaConsumer
 import org.apache.storm.spout.SpoutOutputCollector
 import org.apache.storm.task.TopologyContext
-import org.json.JSONObject
 import org.slf4j.LoggerFactory
 
 open class KafkaSpout(
@@ -19,9 +18,11 @@ open class KafkaSpout(
     val config: KafkaConfig
 ) : CommonSpout(1) {
     protected var consumer: KafkaConsumer<String, String>? = null
+    @Transient private var reader: JsonDocumentReader? = null
 
     override fun open(conf: MutableMap<String, Any>?, topologyContext: TopologyContext?, spoutOutputCollector: SpoutOutputCollector?) {
         super.open(conf, topologyContext, spoutOutputCollector)
+        reader = JsonDocumentReader(schemaRegistry, relationAlias)
         val props = kafkaConsumerProperties(this.config)
         consumer = KafkaConsumer(props)
         consumer!!.subscribe(Arrays.asList(this.topicName))
@@ -31,18 +32,14 @@ open class KafkaSpout(
         val records = this.consumer!!.poll(100)
         for (record in records) {
             val rawTuple = record.value()
-            val tupleObject: JSONObject
+            val document: Document
             try {
-                tupleObject = JSONObject(rawTuple)
+                document = reader!!.read(rawTuple)
             } catch (e: org.json.JSONException) {
                 LOG.warn("Could not parse raw tuple \"$rawTuple\"!", e)
                 return
             }
 
-            val document = Document()
-            for (key in tupleObject.keySet()) {
-                document[relationAlias, key] = tupleObject.get(key).toString()
-            }
             super.emit(document)
         }
     }
@@ -9,7 +9,6 @@ import java.nio.file.Paths
 import org.apache.storm.spout.SpoutOutputCollector
 import org.apache.storm.task.TopologyContext
 import org.apache.storm.utils.Utils
-import org.json.JSONObject
 import org.slf4j.LoggerFactory
 
 class JsonFileSpout constructor(
@@ -19,10 +18,12 @@ class JsonFileSpout constructor(
     millisDelay: Int = 0
 ) : CommonSpout(millisDelay) {
     var iterator: Iterator<String>? = null
+    @Transient private var reader: JsonDocumentReader? = null
 
     override fun open(conf: MutableMap<String, Any>?, topologyContext: TopologyContext?, spoutOutputCollector: SpoutOutputCollector?) {
         super.open(conf, topologyContext, spoutOutputCollector)
         LOG.debug("Opened spout {}", inputName.inner)
+        reader = JsonDocumentReader(schemaRegistry, relationAlias)
         try {
             val stream = Files.lines(Paths.get(this.filePath))
             this.iterator = stream.iterator()
@@ -34,20 +35,15 @@ class JsonFileSpout constructor(
     override fun nextTuple() {
         if (iterator != null && iterator!!.hasNext()) {
             val rawTuple = iterator!!.next()
-            val tupleObject: JSONObject
+            val document: Document
             try {
-                tupleObject = JSONObject(rawTuple)
+                document = reader!!.read(rawTuple)
             } catch (e: org.json.JSONException) {
                 LOG.warn(
                         "Could not parse raw tuple \"" + rawTuple + "\"! (filename: " + this.filePath + ")", e)
                 return
             }
 
-            val document = Document()
-            for (key in tupleObject.keySet()) {
-                document[relationAlias, key] = tupleObject.get(key).toString()
-            }
-
             super.emit(document)
         }
         val sleepTime = this.millisDelay.toLong()
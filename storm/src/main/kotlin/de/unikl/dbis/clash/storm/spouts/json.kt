@@ -0,0 +1,285 @@
+package de.unikl.dbis.clash.storm.spouts
+
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.SchemaRegistry
+import de.unikl.dbis.clash.query.Attribute
+import de.unikl.dbis.clash.query.RelationAlias
+import org.json.JSONException
+
+/**
+ * Reads records that are JSON objects straight into the documents of schemaRegistry.
+ *
+ * A record is scanned once, token by token, without building a JSONObject first. Fields that the query
+ * does not read, see SchemaRegistry.requiredAttributes, are skipped without copying their name or value.
+ * Values are read like JSONObject reads them: strings as String, integers as Long, decimals as Double,
+ * and numbers that do not fit these, literals, nested objects and arrays as their JSON text.
+ *
+ * A reader keeps its buffers between records and must only be used by one thread.
+ */
+class JsonDocumentReader(private val schemaRegistry: SchemaRegistry, private val relationAlias: RelationAlias) {
+    private val requiredAttributes: Array<Attribute>? = schemaRegistry.requiredAttributes(relationAlias)?.toTypedArray()
+    private val attributes = ArrayList<Attribute>()
+    private val values = ArrayList<Any>()
+    private val builder = StringBuilder()
+    private var record = ""
+    private var position = 0
+    private var escaped = false
+
+    /**
+     * @throws JSONException if record is not a JSON object
+     */
+    fun read(record: String): Document {
+        this.record = record
+        this.position = 0
+        attributes.clear()
+        values.clear()
+        readObject()
+        return schemaRegistry.document(relationAlias, attributes, values)
+    }
+
+    private fun readObject() {
+        expect('{')
+        if (peek() == '}') {
+            position++
+            return
+        }
+        while (true) {
+            val attribute = readName()
+            expect(':')
+            if (attribute == null) {
+                skipValue()
+            } else {
+                if (attribute in attributes) {
+                    throw syntaxError("Duplicate key \"$attribute\"")
+                }
+                attributes.add(attribute)
+                values.add(readValue())
+            }
+            when (next()) {
+                ',' -> continue
+                '}' -> return
+                else -> throw syntaxError("Expected a ',' or '}'")
+            }
+        }
+    }
+
+    /**
+     * @return the name of the next field, or null if the query does not read it
+     */
+    private fun readName(): Attribute? {
+        if (peek() != '"') {
+            throw syntaxError("Expected a field name")
+        }
+        val requiredAttributes = requiredAttributes ?: return readString(position)
+        val start = position
+        val length = skipString() - start - 2
+        if (escaped) {
+            val name = readString(start)
+            return requiredAttributes.firstOrNull { it == name }
+        }
+        for (attribute in requiredAttributes) {
+            if (attribute.length == length && record.regionMatches(start + 1, attribute, 0, length)) {
+                return attribute
+            }
+        }
+        return null
+    }
+
+    private fun readValue(): Any {
+        return when (peek()) {
+            '"' -> readString(position)
+            '{', '[' -> {
+                val start = position
+                skipValue()
+                record.substring(start, position)
+            }
+            else -> {
+                val start = position
+                skipLiteral()
+                if (position == start) {
+                    throw syntaxError("Expected a value")
+                }
+                for (constant in CONSTANTS) {
+                    if (position - start == constant.length && record.regionMatches(start, constant, 0, constant.length)) {
+                        return constant
+                    }
+                }
+                val literal = record.substring(start, position)
+                numberOf(literal) ?: literal
+            }
+        }
+    }
+
+    /**
+     * Reads the string whose opening quote is at start and moves behind its closing quote.
+     * Strings without escapes are copied in one piece.
+     */
+    private fun readString(start: Int): String {
+        position = start + 1
+        var i = position
+        while (i < record.length) {
+            val c = record[i]
+            if (c == '"') {
+                position = i + 1
+                return record.substring(start + 1, i)
+            }
+            if (c == '\\') {
+                break
+            }
+            i++
+        }
+        builder.setLength(0)
+        builder.append(record, start + 1, i)
+        position = i
+        while (true) {
+            if (position >= record.length) {
+                throw syntaxError("Unterminated string")
+            }
+            val c = record[position++]
+            when (c) {
+                '"' -> return builder.toString()
+                '\\' -> builder.append(readEscape())
+                else -> builder.append(c)
+            }
+        }
+    }
+
+    private fun readEscape(): Char {
+        if (position >= record.length) {
+            throw syntaxError("Unterminated string")
+        }
+        return when (val c = record[position++]) {
+            'b' -> '\b'
+            't' -> '\t'
+            'n' -> '\n'
+            'f' -> '\u000c'
+            'r' -> '\r'
+            'u' -> {
+                if (position + 4 > record.length) {
+                    throw syntaxError("Illegal escape")
+                }
+                val code = record.substring(position, position + 4).toIntOrNull(16) ?: throw syntaxError("Illegal escape")
+                position += 4
+                code.toChar()
+            }
+            '"', '\\', '/' -> c
+            else -> throw syntaxError("Illegal escape")
+        }
+    }
+
+    /**
+     * Moves behind the string that starts at the current position and remembers whether it contains escapes.
+     * @return the position behind its closing quote
+     */
+    private fun skipString(): Int {
+        escaped = false
+        var i = position + 1
+        while (i < record.length) {
+            when (record[i]) {
+                '"' -> {
+                    position = i + 1
+                    return position
+                }
+                '\\' -> {
+                    escaped = true
+                    i += 2
+                }
+                else -> i++
+            }
+        }
+        throw syntaxError("Unterminated string")
+    }
+
+    /**
+     * Moves behind the value that starts at the current position, including nested objects and arrays.
+     */
+    private fun skipValue() {
+        var depth = 0
+        do {
+            when (peek()) {
+                '"' -> skipString()
+                '{', '[' -> {
+                    depth++
+                    position++
+                }
+                '}', ']' -> {
+                    if (depth == 0) {
+                        throw syntaxError("Expected a value")
+                    }
+                    depth--
+                    position++
+                }
+                ',', ':' -> {
+                    if (depth == 0) {
+                        throw syntaxError("Expected a value")
+                    }
+                    position++
+                }
+                else -> {
+                    val start = position
+                    skipLiteral()
+                    if (position == start) {
+                        throw syntaxError("Expected a value")
+                    }
+                }
+            }
+        } while (depth > 0)
+    }
+
+    private fun skipLiteral() {
+        while (position < record.length) {
+            val c = record[position]
+            if (c == ',' || c == '}' || c == ']' || c == ':' || c == '"' || c.isWhitespace()) {
+                return
+            }
+            position++
+        }
+    }
+
+    /**
+     * @return the next character that is not whitespace, without consuming it
+     */
+    private fun peek(): Char {
+        while (position < record.length && record[position].isWhitespace()) {
+            position++
+        }
+        if (position >= record.length) {
+            throw syntaxError("Unexpected end of record")
+        }
+        return record[position]
+    }
+
+    private fun next(): Char {
+        val c = peek()
+        position++
+        return c
+    }
+
+    private fun expect(expected: Char) {
+        if (next() != expected) {
+            throw syntaxError("Expected a '$expected'")
+        }
+    }
+
+    private fun syntaxError(message: String) = JSONException("$message at $position")
+
+    companion object {
+        private val CONSTANTS = arrayOf("true", "false", "null")
+
+        /**
+         * @return literal as the number JSONObject would read it, or null if it is no number
+         */
+        private fun numberOf(literal: String): Any? {
+            val first = literal[0]
+            if (first != '-' && first !in '0'..'9') {
+                return null
+            }
+            if (literal.indexOf('.') >= 0 || literal.indexOf('e') >= 0 || literal.indexOf('E') >= 0 || literal == "-0") {
+                val value = literal.toDoubleOrNull() ?: return null
+                return if (value.isInfinite() || value.isNaN()) null else value
+            }
+            return literal.toLongOrNull()?.takeIf { it.toString() == literal }
+
+        }
+    }
+}
@@ -2,10 +2,12 @@ package de.unikl.dbis.clash.storm.spouts
 
 import de.unikl.dbis.clash.ClashConfig
 import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.SchemaRegistry
 import de.unikl.dbis.clash.physical.ControlOutRule
 import de.unikl.dbis.clash.physical.OutRule
 import de.unikl.dbis.clash.physical.RelationSendRule
 import de.unikl.dbis.clash.physical.TickOutRule
+import de.unikl.dbis.clash.storm.Backpressure
 import de.unikl.dbis.clash.storm.ControlMessage
 import de.unikl.dbis.clash.storm.DataPathMessage
 import de.unikl.dbis.clash.storm.DocumentsMessage
@@ -34,6 +36,11 @@ abstract class CommonSpout constructor(millisDelay: Int = 0) : BaseRichSpout(),
     var collector: EdgySpoutOutputCollector? = null
     var conf: Map<*, *>? = null
 
+    /**
+     * Creates the documents read from the source, see SchemaRegistry. It is set when the topology is built.
+     */
+    var schemaRegistry = SchemaRegistry()
+
     var millisDelay: Int = 0
     var delayEvery: Int = 0
     var delayCounter: Int = 0
@@ -74,6 +81,16 @@ abstract class CommonSpout constructor(millisDelay: Int = 0) : BaseRichSpout(),
         }
     }
 
+    /**
+     * Waits as long as the stores of this worker ask for, see Backpressure.
+     */
+    internal fun throttle() {
+        val throttleMillis = Backpressure.throttleMillis
+        if (throttleMillis > 0) {
+            Utils.sleep(throttleMillis)
+        }
+    }
+
     internal fun emit(message: ControlMessage) {
         LOG.debug("Emitting message.")
         for (rule in this.rules) {
@@ -97,6 +114,7 @@ abstract class CommonSpout constructor(millisDelay: Int = 0) : BaseRichSpout(),
 
     // TODO this should not be needed (pleasing the kotlin compiler)
     internal fun emit(message: DocumentsMessage) {
+        throttle()
         LOG.debug("Emitting documents message.")
         for (rule in this.rules) {
             this.collector!!.emit(rule.outgoingEdgeLabel, message)
@@ -0,0 +1,141 @@
+package de.unikl.dbis.clash.storm
+
+import com.esotericsoftware.kryo.Kryo
+import com.esotericsoftware.kryo.io.Input
+import com.esotericsoftware.kryo.io.Output
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.AttributeDictionaries
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.SchemaRegistry
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.RelationAlias
+import de.unikl.dbis.clash.query.ValueType
+import java.math.BigDecimal
+import java.time.LocalDate
+import org.apache.storm.Config
+import org.apache.storm.serialization.SerializationFactory
+import org.apache.storm.utils.Utils
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class SerializationTest {
+    private val dictionaries = AttributeDictionaries.of(mapOf("m" to listOf("AIR", "MAIL", "SHIP")))
+    private val registry = SchemaRegistry(
+            types = mapOf(AttributeAccess("x.d") to ValueType.DATE, AttributeAccess("x.p") to ValueType.DECIMAL),
+            dictionaries = dictionaries)
+
+    @Test
+    fun `batches with several schemas are read back equal`() {
+        val a = fromKVList("x.a", "1", "x.b", "2")
+        val b = fromKVList("y.a", "3")
+        val documents = listOf(a, fromKVList("x.a", "5", "x.b", "6"), b, a.createJoint(b), fromKVList("x.b", "7", "x.a", "8"), Document())
+
+        assertThat(writeAndRead(DocumentBatch(documents)).documents).isEqualTo(documents)
+    }
+
+    @Test
+    fun `single documents are read back equal`() {
+        val a = fromKVList("x.a", "1", "x.b", "2")
+        val joint = a.createJoint(fromKVList("y.a", "3", "y.b", "")).createJoint(fromKVList("x.c", "4"))
+
+        assertThat(writeAndRead(a)).isEqualTo(a)
+        assertThat(writeAndRead(joint)).isEqualTo(joint)
+        assertThat(writeAndRead(Document())).isEmpty()
+    }
+
+    @Test
+    fun `typed values are read back with their types`() {
+        val x = document("x", listOf("a", "d", "p", "s"), listOf(10, "2020-01-05", "1.50", "abc"))
+        val y = document("y", listOf("a"), listOf(9.5))
+        val joint = x.createJoint(y)
+
+        for (read in listOf(writeAndRead(joint), writeAndRead(DocumentBatch(listOf(joint, x))).documents[0])) {
+            assertThat(read.typed(AttributeAccess("x.a"))).isEqualTo(10L)
+            assertThat(read.typed(AttributeAccess("x.d"))).isEqualTo(LocalDate.of(2020, 1, 5))
+            assertThat(read.typed(AttributeAccess("x.p"))).isEqualTo(BigDecimal("1.50"))
+            assertThat(read.typed(AttributeAccess("x.s"))).isEqualTo("abc")
+            assertThat(read.typed(AttributeAccess("y.a"))).isEqualTo(9.5)
+            // comparing the whole document copies its entries, see SchemaDocument
+            assertThat(read).isEqualTo(joint)
+        }
+    }
+
+    @Test
+    fun `values with a dictionary are written as their code`() {
+        val documents = (0 until 100).map { i -> document("x", listOf("m", "k"), listOf(listOf("AIR", "MAIL", "SHIP")[i % 3], i)) }
+        val withDictionaries = bytesOf(DocumentBatch(documents))
+        val withoutDictionaries = bytesOf(DocumentBatch(documents), AttributeDictionaries())
+        assertThat(withDictionaries.size).isLessThan(withoutDictionaries.size)
+
+        val read = readBatch(withDictionaries).documents
+        assertThat(read).isEqualTo(documents)
+        assertThat(read[1]["x.m"]).isSameAs(read[4]["x.m"])
+        assertThat(read[1]["x.m"]).isSameAs(dictionaries["m"]!!.decode(1))
+    }
+
+    @Test
+    fun `values missing from the dictionary are written as text`() {
+        val documents = listOf(
+                document("x", listOf("m"), listOf("TRUCK")),
+                document("x", listOf("m"), listOf("AIR")),
+                document("x", listOf("m"), listOf("")))
+
+        assertThat(writeAndRead(DocumentBatch(documents)).documents.map { it["x.m"] }).containsExactly("TRUCK", "AIR", "")
+        assertThat(writeAndRead(documents[0])["x.m"]).isEqualTo("TRUCK")
+    }
+
+    @Test
+    fun `single documents are written without the schema header of a batch`() {
+        val document = fromKVList("x.a", "1", "x.b", "2", "x.c", "3").createJoint(fromKVList("y.a", "4"))
+        val single = bytesOf(document).size
+
+        assertThat(single).isLessThan(bytesOf(DocumentBatch(listOf(document))).size)
+        val generic = Output(4096, -1)
+        Kryo().writeClassAndObject(generic, HashMap(document))
+        assertThat(single).isLessThan(generic.position())
+    }
+
+    @Test
+    fun `serializers are registered once with the topology configuration`() {
+        val conf = ClashConfig()
+        conf.putAll(Utils.readDefaultConfig())
+        Serialization.register(conf)
+        Serialization.register(conf)
+        assertThat(conf[Config.TOPOLOGY_KRYO_REGISTER] as List<*>).hasSize(6)
+
+        val kryo = SerializationFactory.getKryo(conf)
+        val document = fromKVList("x.a", "1").createJoint(fromKVList("y.a", "2"))
+        val output = Output(4096, -1)
+        kryo.writeClassAndObject(output, DocumentBatch(listOf(document)))
+        kryo.writeClassAndObject(output, document)
+        kryo.writeClassAndObject(output, AttributeAccess("x.a"))
+        val input = Input(output.toBytes())
+        assertThat((kryo.readClassAndObject(input) as DocumentBatch).documents).containsExactly(document)
+        assertThat(kryo.readClassAndObject(input)).isEqualTo(document)
+        assertThat(kryo.readClassAndObject(input)).isEqualTo(AttributeAccess("x.a"))
+    }
+
+    private fun document(relationAlias: String, attributes: List<String>, values: List<Any>): Document =
+            registry.document(RelationAlias(relationAlias), attributes, values)
+
+    private fun bytesOf(document: Document, dictionaries: AttributeDictionaries = this.dictionaries): ByteArray {
+        val output = Output(4096, -1)
+        DocumentSerializer(dictionaries).write(Kryo(), output, document)
+        return output.toBytes()
+    }
+
+    private fun bytesOf(batch: DocumentBatch, dictionaries: AttributeDictionaries = this.dictionaries): ByteArray {
+        val output = Output(4096, -1)
+        DocumentBatchSerializer(dictionaries).write(Kryo(), output, batch)
+        return output.toBytes()
+    }
+
+    private fun readBatch(bytes: ByteArray): DocumentBatch =
+            DocumentBatchSerializer(dictionaries).read(Kryo(), Input(bytes), DocumentBatch::class.java)
+
+    private fun writeAndRead(document: Document): Document =
+            DocumentSerializer(dictionaries).read(Kryo(), Input(bytesOf(document)), Document::class.java)
+
+    private fun writeAndRead(batch: DocumentBatch): DocumentBatch = readBatch(bytesOf(batch))
+}
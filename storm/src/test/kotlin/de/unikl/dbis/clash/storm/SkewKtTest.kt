@@ -0,0 +1,152 @@
+package de.unikl.dbis.clash.storm
+
+import de.unikl.dbis.clash.ClashConfig
+import io.mockk.every
+import io.mockk.mockk
+import org.apache.storm.generated.GlobalStreamId
+import org.apache.storm.task.WorkerTopologyContext
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class SkewKtTest {
+    private val targetTasks = listOf(17, 11, 15, 13, 12, 16, 10, 14)
+
+    @Test
+    fun `heavy hitters never overestimate a count`() {
+        val heavyHitters = HeavyHitters(10)
+        for (i in 0 until 10000) {
+            heavyHitters.offer(if (i % 4 == 0) "hot" else "k$i")
+        }
+        assertThat(heavyHitters.total).isEqualTo(10000)
+        assertThat(heavyHitters.guaranteedCount("hot")).isBetween(2000L, 2500L)
+        assertThat(heavyHitters.guaranteedCount("k5")).isEqualTo(0)
+        assertThat(heavyHitters.guaranteedCount("never")).isEqualTo(0)
+    }
+
+    @Test
+    fun `heavy hitters count exactly while below capacity`() {
+        val heavyHitters = HeavyHitters(3)
+        repeat(5) { heavyHitters.offer("a") }
+        repeat(2) { heavyHitters.offer("b") }
+        assertThat(heavyHitters.guaranteedCount("a")).isEqualTo(5)
+        assertThat(heavyHitters.guaranteedCount("b")).isEqualTo(2)
+    }
+
+    @Test
+    fun `keys are hot once they reach the threshold`() {
+        val detector = HotKeyDetector(SkewPolicy(true, 0.1, 20, 4))
+        var firstHot = -1
+        for (i in 0 until 5000) {
+            val hot = detector.observe(if (i % 3 == 0) "hot" else if (i % 3 == 1) "k$i" else "warm${i % 20}", i.toLong())
+            if (i % 3 == 0 && hot && firstHot < 0) {
+                firstHot = i
+            }
+            if (i % 3 != 0) {
+                assertThat(hot).isFalse()
+            }
+        }
+        assertThat(firstHot).isGreaterThanOrEqualTo(999)
+        assertThat(detector.observe("hot", 5000)).isTrue()
+        assertThat(detector.splitAfter("hot")).isEqualTo(firstHot.toLong())
+        assertThat(detector.splitAfter("k1")).isEqualTo(java.lang.Long.MAX_VALUE)
+    }
+
+    @Test
+    fun `configured hot keys are hot without detection`() {
+        val detector = HotKeyDetector(SkewPolicy(true, 0.1, 20, 4, false, setOf("hot")))
+        assertThat(detector.observe("hot", 0)).isTrue()
+        assertThat(detector.splitAfter("hot")).isEqualTo(java.lang.Long.MIN_VALUE)
+        repeat(5000) { assertThat(detector.observe("other", it.toLong())).isFalse() }
+    }
+
+    @Test
+    fun `several workers only spread the configured hot keys`() {
+        val config = ClashConfig()
+        config[ClashConfig.CLASH_SKEW_ENABLED] = true
+        config[ClashConfig.CLASH_SKEW_THRESHOLD] = 0.05
+        assertThat(SkewPolicy.fromConfig(config)).isEqualTo(SkewPolicy(true, 0.05, detect = true))
+
+        config[ClashConfig.TOPOLOGY_WORKERS] = 4
+        assertThat(SkewPolicy.fromConfig(config).enabled).isFalse()
+
+        config[ClashConfig.CLASH_SKEW_HOT_KEYS] = listOf("DE", 42)
+        val policy = SkewPolicy.fromConfig(config)
+        assertThat(policy.enabled).isTrue()
+        assertThat(policy.detect).isFalse()
+        assertThat(policy.hotKeys).containsExactlyInAnyOrder("DE", "42")
+    }
+
+    @Test
+    fun `keys that are not hot go to one task`() {
+        val policy = SkewPolicy(true, 0.1, 20, 3, false, setOf("hot"))
+        val storing = grouping("cold-store", policy, false)
+        val probing = grouping("cold-store", policy, true)
+
+        val stored = (0 until 10).flatMap { storing.chooseTasks(1, values("cold")) }.toSet()
+        assertThat(stored).hasSize(1)
+        assertThat(probing.chooseTasks(1, values("cold"))).containsExactlyElementsOf(stored)
+    }
+
+    @Test
+    fun `probes for a hot key fan out to exactly the tasks its documents are stored at`() {
+        val policy = SkewPolicy(true, 0.1, 20, 3, false, setOf("hot"))
+        val storing = grouping("hot-store", policy, false)
+        val probing = grouping("hot-store", policy, true)
+
+        val stored = (0 until 12).flatMap { storing.chooseTasks(1, values("hot")) }
+        assertThat(stored.toSet()).hasSize(3)
+        assertThat(stored.groupingBy { it }.eachCount().values).containsOnly(4)
+        assertThat(probing.chooseTasks(1, values("hot"))).containsExactlyInAnyOrderElementsOf(stored.toSet())
+    }
+
+    @Test
+    fun `detected hot keys are split for the senders of one worker`() {
+        val policy = SkewPolicy(true, 0.2, 20, 2)
+        val storing = grouping("detecting-store", policy, false)
+        val probing = grouping("detecting-store", policy, true)
+
+        val stored = HashSet<Int>()
+        for (i in 0 until 2000) {
+            stored.addAll(storing.chooseTasks(1, values(if (i % 2 == 0) "hot" else "k$i", i.toLong())))
+        }
+        val hotTasks = (0 until 4).flatMap { storing.chooseTasks(1, values("hot", 2000L + it)) }.toSet()
+        assertThat(hotTasks).hasSize(2)
+        assertThat(probing.chooseTasks(1, values("hot", 2010))).containsExactlyInAnyOrderElementsOf(hotTasks)
+    }
+
+    @Test
+    fun `late documents reach the probes sent before their key turned hot`() {
+        val policy = SkewPolicy(true, 0.2, 20, 2)
+        val storing = grouping("turning-store", policy, false)
+        val probing = grouping("turning-store", policy, true)
+
+        val home = probing.chooseTasks(1, values("hot", 500))
+        assertThat(home).hasSize(1)
+        for (i in 1000 until 3000) {
+            storing.chooseTasks(1, values(if (i % 2 == 0) "hot" else "k$i", i.toLong()))
+        }
+        assertThat(probing.chooseTasks(1, values("hot", 3000))).hasSize(2)
+
+        // stored before the probe, but arriving after the key turned hot
+        val late = (0 until 4).flatMap { storing.chooseTasks(1, values("hot", 400L + it)) }
+        assertThat(late).containsOnlyElementsOf(home)
+        val recent = (0 until 4).flatMap { storing.chooseTasks(1, values("hot", 3001L + it)) }.toSet()
+        assertThat(recent).hasSize(2).containsAll(home)
+    }
+
+    private fun grouping(component: String, policy: SkewPolicy, probing: Boolean): SkewAwareGrouping {
+        val context = mockk<WorkerTopologyContext>()
+        every { context.getComponentId(any()) } returns component
+        val grouping = SkewAwareGrouping(policy, probing)
+        grouping.prepare(context, GlobalStreamId(component, "default"), targetTasks)
+        return grouping
+    }
+
+    private fun values(key: String, ats: ATS = 0): List<Any> = (0..DataPathMessage.GROUPING_INDEX).map {
+        when (it) {
+            DataPathMessage.GROUPING_INDEX -> key
+            DataPathMessage.ATS_INDEX -> ats
+            else -> ""
+        }
+    }
+}
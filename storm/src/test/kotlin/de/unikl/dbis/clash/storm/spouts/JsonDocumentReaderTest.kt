@@ -0,0 +1,99 @@
+package de.unikl.dbis.clash.storm.spouts
+
+import de.unikl.dbis.clash.documents.SchemaRegistry
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.RelationAlias
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.json.JSONException
+import org.json.JSONObject
+import org.junit.jupiter.api.Test
+
+internal class JsonDocumentReaderTest {
+    private val x = RelationAlias("x")
+
+    @Test
+    fun `records are read like JSONObject reads them`() {
+        val registry = SchemaRegistry()
+        val reader = JsonDocumentReader(registry, x)
+        val records = listOf(
+                """{"a": 1, "b": "foo", "c": 2.5, "d": true, "e": null, "f": -0, "g": 12345678901234, "i": 1e3}""",
+                """ { "a" : -17 , "b":"" } """,
+                """{}""",
+                """{"big": 123456789012345678901234567890, "long": 1.2345678901234567, "small": -0.5, "inf": 1e400, "hex": 0x1F}""",
+                """{"s": "q\"\\\/\b\f\n\r\t", "u": "ä€😀", "raw": "äöü €"}""")
+
+        for (record in records) {
+            val json = JSONObject(record)
+            val expected = registry.document(x, json.keySet()) { json.get(it) }
+            val actual = reader.read(record)
+            for (key in json.keySet()) {
+                assertThat(actual.typed(AttributeAccess(x, key))).`as`(key).isEqualTo(expected.typed(AttributeAccess(x, key)))
+            }
+            assertThat(actual).isEqualTo(expected)
+        }
+    }
+
+    @Test
+    fun `escapes and unicode are decoded`() {
+        val document = JsonDocumentReader(SchemaRegistry(), x).read(
+                """{"s": "q\"\\\/\b\f\n\r\t", "u": "ä€😀", "raw": "äöü €", "k\"ey": 1}""")
+
+        assertThat(document["x.s"]).isEqualTo("q\"\\/\b\u000c\n\r\t")
+        assertThat(document["x.u"]).isEqualTo("ä€😀")
+        assertThat(document["x.raw"]).isEqualTo("äöü €")
+        assertThat(document[AttributeAccess(x, "k\"ey")]).isEqualTo("1")
+    }
+
+    @Test
+    fun `numbers are typed by their text`() {
+        val document = JsonDocumentReader(SchemaRegistry(), x).read(
+                """{"l": 42, "n": -7, "d": 2.5, "e": 1e3, "z": -0, "big": 123456789012345678901234567890, "inf": 1e400, "t": true, "s": "42"}""")
+
+        assertThat(document.typed(AttributeAccess("x.l"))).isEqualTo(42L)
+        assertThat(document.typed(AttributeAccess("x.n"))).isEqualTo(-7L)
+        assertThat(document.typed(AttributeAccess("x.d"))).isEqualTo(2.5)
+        assertThat(document.typed(AttributeAccess("x.e"))).isEqualTo(1000.0)
+        assertThat(document.typed(AttributeAccess("x.z"))).isEqualTo(-0.0)
+        assertThat(document.typed(AttributeAccess("x.big"))).isEqualTo("123456789012345678901234567890")
+        assertThat(document.typed(AttributeAccess("x.inf"))).isEqualTo("1e400")
+        assertThat(document.typed(AttributeAccess("x.t"))).isEqualTo("true")
+        assertThat(document.typed(AttributeAccess("x.s"))).isEqualTo("42")
+        assertThat(document["x.l"]).isEqualTo("42")
+        assertThat(document["x.e"]).isEqualTo("1000.0")
+    }
+
+    @Test
+    fun `nested objects and arrays are kept as their text`() {
+        val document = JsonDocumentReader(SchemaRegistry(), x).read(
+                """{"n": {"b": [1, {"c": "}"}], "s": "x\"y]"}, "a": [1, [2, 3], "]"], "e": []}""")
+
+        assertThat(document["x.n"]).isEqualTo("""{"b": [1, {"c": "}"}], "s": "x\"y]"}""")
+        assertThat(document["x.a"]).isEqualTo("""[1, [2, 3], "]"]""")
+        assertThat(document["x.e"]).isEqualTo("[]")
+    }
+
+    @Test
+    fun `fields the query does not read are skipped`() {
+        val registry = SchemaRegistry(mapOf(x to listOf(AttributeAccess("x.a"), AttributeAccess("x.c"))), readsWholeDocuments = false)
+        val reader = JsonDocumentReader(registry, x)
+        val document = reader.read("""{"a": "1", "n": {"b": [1, {"c": "}"}], "s": "x\"y"}, "sc": 3, "c": [1, 2], "ab": 4, "z": null}""")
+
+        assertThat(document.keys).containsExactlyInAnyOrder(AttributeAccess("x.a"), AttributeAccess("x.c"))
+        assertThat(document["x.a"]).isEqualTo("1")
+        assertThat(document["x.c"]).isEqualTo("[1, 2]")
+        assertThat(reader.read("""{"a": 5}""")["x.a"]).isEqualTo("5")
+    }
+
+    @Test
+    fun `malformed records raise a JSONException`() {
+        val reader = JsonDocumentReader(SchemaRegistry(), x)
+        val records = listOf("", "   ", "[1]", "\"a\"", """{"a" 1}""", """{"a": 1""", """{"a": "1}""", """{"a": 1, "a": 2}""",
+                """{"a": }""", """{"a": 1,}""", """{a: 1}""", """{"a": "\x"}""", """{"a": "\u12"}""", """{"a": [1, 2}""")
+
+        for (record in records) {
+            assertThatThrownBy { reader.read(record) }.`as`(record).isInstanceOf(JSONException::class.java)
+        }
+        assertThat(reader.read("""{"a": 1}""")["x.a"]).isEqualTo("1")
+    }
+}
@@ -25,6 +25,10 @@ class ActualSimilarityStore<T>(val config: ClashConfig) : ActualStore<T>, Serial
         TODO("not implemented") // To change body of created functions use File | Settings | File Templates.
     }
 
+    override fun reset() {
+        // nothing is stored yet, so there is nothing to remove
+    }
+
     override fun probe(ats: Long, lts: Long, documents: List<Document>, attributeAccess: AttributeAccess, predicates: Collection<BinaryPredicateEvaluation>, targets: Collection<T>): List<Document> {
         TODO("not implemented") // To change body of created functions use File | Settings | File Templates.
     }
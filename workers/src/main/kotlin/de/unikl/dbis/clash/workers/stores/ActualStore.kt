@@ -8,12 +8,59 @@ interface ActualStore<T> {
 
     fun store(ats: Long, documents: List<Document>): DelayedStoreJoinResult<T>
 
+    /**
+     * Stores the documents like store(ats, documents), additionally passing the creation time lts
+     * of the message. Stores with time-based windows use it to evict expired documents.
+     */
+    fun store(ats: Long, lts: Long, documents: List<Document>): DelayedStoreJoinResult<T> = store(ats, documents)
+
     fun probe(ats: Long, lts: Long, documents: List<Document>, predicates: Collection<BinaryPredicateEvaluation>, targets: Collection<T>): List<Document>
 
     fun probe(ats: Long, lts: Long, documents: List<Document>, windowSize: Long, predicates: Collection<BinaryPredicateEvaluation>, targets: Collection<T>): List<Document>
 
     fun free(ats: Long): Int
 
+    /**
+     * @return how often the store could skip work while probing, or null if it does not keep track
+     */
+    val probeStatistics: ProbeStatistics?
+        get() = null
+
+    /**
+     * The estimated number of bytes the stored documents, their indexes and the buffered probes occupy on the heap,
+     * or 0 if the store does not keep track
+     */
+    val heapBytes: Long
+        get() = 0
+
+    /**
+     * Takes a snapshot of all stored documents, indexes and buffered probes, which another thread
+     * can write to checkpoints while the store keeps changing.
+     *
+     * @return the snapshot, or null if the store cannot be checkpointed
+     */
+    fun snapshot(): CheckpointSnapshot? = null
+
+    /**
+     * Writes a checkpoint of all stored documents, indexes and buffered probes to checkpoints.
+     * Stores that cannot be checkpointed do nothing.
+     */
+    fun checkpoint(checkpoints: Checkpoints) {
+        snapshot()?.writeTo(checkpoints)
+    }
+
+    /**
+     * Replaces the state of the store by the latest checkpoint in checkpoints.
+     *
+     * @return whether a checkpoint was restored
+     */
+    fun restore(checkpoints: Checkpoints): Boolean = false
+
+    /**
+     * Removes all stored documents and buffered probes.
+     */
+    fun reset()
+
     fun probe(ats: Long, lts: Long, documents: List<Document>, attributeAccess: AttributeAccess, predicates: Collection<BinaryPredicateEvaluation>, targets: Collection<T>): List<Document>
     fun probe(ats: Long, lts: Long, documents: List<Document>, windowSize: Long, attributeAccess: AttributeAccess, predicates: Collection<BinaryPredicateEvaluation>, targets: Collection<T>): List<Document>
 }
@@ -0,0 +1,232 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.WindowDefinition
+import java.util.concurrent.atomic.AtomicLong
+import org.slf4j.LoggerFactory
+
+/**
+ * How a store answers probes.
+ */
+enum class StoreLayout {
+    /**
+     * Equalities are looked up in (composite) hash indexes
+     */
+    HASH_INDEX,
+
+    /**
+     * Equalities and comparisons are answered by scanning a key range of a sorted index
+     */
+    SORTED_INDEX,
+
+    /**
+     * Every stored document is compared with every probing document, no index is maintained
+     */
+    NESTED_LOOP;
+
+    companion object {
+        /**
+         * @return the layout that suits the predicates best if nothing is known about the data
+         */
+        fun forPredicates(predicates: Collection<BinaryPredicateEvaluation>): StoreLayout = when {
+            equiJoinKeys(predicates).isNotEmpty() -> HASH_INDEX
+            rangeJoinKeys(predicates).isNotEmpty() -> SORTED_INDEX
+            else -> NESTED_LOOP
+        }
+    }
+}
+
+/**
+ * A store that switches between the layouts of StoreLayout while it runs.
+ *
+ * After a warm-up of config.storeAdaptiveWarmup probe messages and then after every config.storeAdaptivePeriod
+ * probe messages, the cost of the current layout is compared with the cost of the alternative.
+ * Only probes whose predicates an index could answer are taken into account, all others scan in any layout.
+ * The alternative of an index is the nested loop and vice versa. The costs are estimated from the stored and
+ * probing documents of the period and from the candidates the index key selected, which reflects its cardinality.
+ * The nested loop counts these candidates as well, so both estimates rest on observed numbers.
+ * The layout is only switched if the alternative is clearly cheaper.
+ *
+ * All layouts share the same segments; switching drops indexes or builds them from the stored rows.
+ */
+class AdaptiveStore<T>(
+    config: ClashConfig,
+    window: WindowDefinition = WindowDefinition.infinite(),
+    initialLayout: StoreLayout = StoreLayout.HASH_INDEX,
+    countWindow: WindowDefinition = WindowDefinition.infinite()
+) : SegmentedStore<T>(config, window, countWindow) {
+
+    /**
+     * Creates a store that starts with the layout suiting predicates, the predicates of the rules it serves.
+     */
+    constructor(config: ClashConfig, window: WindowDefinition, countWindow: WindowDefinition, predicates: Collection<BinaryPredicateEvaluation>) :
+            this(config, window, StoreLayout.forPredicates(predicates), countWindow)
+
+    override val probeStatistics = ProbeStatistics()
+    private val warmup = config.storeAdaptiveWarmup
+    private val period = config.storeAdaptivePeriod
+
+    var layout = initialLayout
+        private set
+
+    // the index layout used whenever indexes pay off, chosen by the predicates of the probes
+    private var indexLayout = if (initialLayout == StoreLayout.NESTED_LOOP) null else initialLayout
+
+    private var probeMessages = 0L
+    private var nextDecision = warmup
+
+    // observations of the current period
+    private var storedDocuments = 0L
+    private var probedDocuments = 0L
+    private var comparedPairs = 0L
+    private var candidates = 0L
+
+    override fun store(ats: Long, lts: Long, documents: List<Document>): DelayedStoreJoinResult<T> {
+        storedDocuments += documents.size
+        return super.store(ats, lts, documents)
+    }
+
+    override fun probe(
+        segments: List<Segment>,
+        documents: List<Document>,
+        start: Long,
+        ats: Long,
+        predicates: Collection<BinaryPredicateEvaluation>,
+        attributeAccess: AttributeAccess?
+    ): List<Document> {
+        val kernel = kernels.kernelFor(predicates)
+        val compositeJoinKey = chooseCompositeJoinKey(predicates, attributeAccess)
+        val rangeJoinKey = chooseRangeJoinKey(predicates, attributeAccess)
+        if (indexLayout == null && rangeJoinKey != null) {
+            indexLayout = if (compositeJoinKey != null) StoreLayout.HASH_INDEX else StoreLayout.SORTED_INDEX
+        }
+        // the predicates the index of indexLayout would answer
+        val keyEvaluations = if (indexLayout == StoreLayout.SORTED_INDEX || compositeJoinKey == null)
+            rangeJoinKey?.let { setOf(it.evaluation) } else compositeJoinKey.evaluations
+
+        val selected = AtomicLong()
+        val result = when {
+            layout == StoreLayout.HASH_INDEX && compositeJoinKey != null ->
+                hashProbe(segments, documents, start, ats, compositeJoinKey, predicates, probeStatistics, selected)
+            layout == StoreLayout.SORTED_INDEX && rangeJoinKey != null ->
+                sortedProbe(segments, documents, start, ats, rangeJoinKey, predicates, selected)
+            keyEvaluations != null ->
+                nestedLoopProbe(segments, documents, start, ats, kernel.only(keyEvaluations), kernels.kernelFor(predicates, keyEvaluations), selected)
+            else -> scan(segments, documents, start, ats, kernel)
+        }
+
+        if (keyEvaluations != null) {
+            probedDocuments += documents.size
+            comparedPairs += documents.size * prefix.numberOfDocuments
+            candidates += selected.get()
+        }
+        probeMessages++
+        if (probeMessages >= nextDecision) {
+            decide()
+            nextDecision = probeMessages + period
+        }
+        return result
+    }
+
+    private fun sortedProbe(
+        segments: List<Segment>,
+        documents: List<Document>,
+        start: Long,
+        ats: Long,
+        rangeJoinKey: RangeJoinKey,
+        predicates: Collection<BinaryPredicateEvaluation>,
+        selected: AtomicLong
+    ): List<Document> {
+        if (!prefix.hasSortedIndex(rangeJoinKey.storedAttributeAccess)) {
+            prefix.addSortedIndex(rangeJoinKey.storedAttributeAccess)
+        }
+        val residualKernel = kernels.kernelFor(predicates, rangeJoinKey.evaluation)
+        return parallelProbing.probe(segments, documents.size, prefix.numberOfDocuments) { segment, output ->
+            for (probedDocument in documents) {
+                val key = probedDocument[rangeJoinKey.probedAttributeAccess] ?: continue
+                val range = segment.get(rangeJoinKey.storedAttributeAccess, rangeJoinKey.comparison, key, start, ats)
+                selected.addAndGet(range.size.toLong())
+                residualKernel.join(probedDocument, range, output)
+            }
+        }
+    }
+
+    /**
+     * Compares every pair, but checks the predicates an index would answer first,
+     * such that the number of candidates an index would select is known.
+     */
+    private fun nestedLoopProbe(
+        segments: List<Segment>,
+        documents: List<Document>,
+        start: Long,
+        ats: Long,
+        keyKernel: JoinKernel,
+        residualKernel: JoinKernel,
+        selected: AtomicLong
+    ): List<Document> = parallelProbing.probe(segments, documents.size, prefix.numberOfDocuments) { segment, output ->
+        val stored = segment.documents(start, ats)
+        var matches = 0L
+        for (probedDocument in documents) {
+            for (storedDocument in stored) {
+                if (keyKernel.joinable(storedDocument, probedDocument)) {
+                    matches++
+                    if (residualKernel.joinable(storedDocument, probedDocument)) {
+                        output.add(probedDocument.createJoint(storedDocument))
+                    }
+                }
+            }
+        }
+        selected.addAndGet(matches)
+    }
+
+    /**
+     * Switches the layout if the alternative would have done the work of the last period at a fraction of the cost.
+     */
+    private fun decide() {
+        val indexLayout = this.indexLayout
+        if (indexLayout != null && comparedPairs > 0) {
+            val nestedLoopCost = comparedPairs.toDouble()
+            val indexCost = indexCost(indexLayout)
+            val alternative = if (layout == StoreLayout.NESTED_LOOP) indexLayout else StoreLayout.NESTED_LOOP
+            val (current, other) = if (layout == StoreLayout.NESTED_LOOP) Pair(nestedLoopCost, indexCost) else Pair(indexCost, nestedLoopCost)
+            if (other < current * SWITCH_FACTOR) {
+                LOG.info("Switching store layout from {} to {}, estimated cost {} instead of {}", layout, alternative, other, current)
+                if (alternative == StoreLayout.NESTED_LOOP) {
+                    prefix.dropIndexes()
+                }
+                layout = alternative
+            }
+        }
+        storedDocuments = 0
+        probedDocuments = 0
+        comparedPairs = 0
+        candidates = 0
+    }
+
+    /**
+     * Every stored document is inserted into the index, every probing document performs a lookup,
+     * and the selected candidates are compared.
+     */
+    private fun indexCost(indexLayout: StoreLayout): Double {
+        val operationCost = when (indexLayout) {
+            StoreLayout.SORTED_INDEX -> INDEX_OPERATION_COST * log2(Math.max(2L, prefix.numberOfDocuments))
+            else -> INDEX_OPERATION_COST
+        }
+        return (storedDocuments + probedDocuments) * operationCost + candidates
+    }
+
+    companion object {
+        private val LOG = LoggerFactory.getLogger(AdaptiveStore::class.java)
+
+        // the cost of inserting into or looking up in a hash index, relative to comparing two documents
+        private const val INDEX_OPERATION_COST = 4.0
+
+        // the alternative layout has to be cheaper than this fraction of the current cost
+        private const val SWITCH_FACTOR = 0.5
+
+        private fun log2(value: Long) = Math.log(value.toDouble()) / Math.log(2.0)
+    }
+}
@@ -0,0 +1,128 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.BinaryBand
+import de.unikl.dbis.clash.query.WindowDefinition
+import java.io.Serializable
+import java.util.TreeMap
+
+/**
+ * A band predicate as seen from a store.
+ *
+ * Stored documents qualify if their value of storedAttributeAccess lies within
+ * [probed + lowerOffset, probed + upperOffset], where probed is the value of probedAttributeAccess
+ * of the probing document. For "x.t BETWEEN y.t - 5 AND y.t + 2", the x-store looks up [y.t - 5, y.t + 2]
+ * and the y-store looks up [x.t - 2, x.t + 5].
+ */
+data class BandJoinKey(
+    val storedAttributeAccess: AttributeAccess,
+    val probedAttributeAccess: AttributeAccess,
+    val lowerOffset: Double,
+    val upperOffset: Double,
+    val evaluation: BinaryPredicateEvaluation
+) : Serializable
+
+/**
+ * Extracts all band predicates of which it is known which side is stored.
+ */
+fun bandJoinKeys(predicates: Collection<BinaryPredicateEvaluation>): List<BandJoinKey> {
+    return predicates.mapNotNull { evaluation ->
+        val predicate = evaluation.predicate as? BinaryBand ?: return@mapNotNull null
+        when (evaluation) {
+            is BinaryPredicateEvaluationLeftStored -> BandJoinKey(predicate.leftAttributeAccess,
+                    predicate.rightAttributeAccess, predicate.lowerBound, predicate.upperBound, evaluation)
+            is BinaryPredicateEvaluationRightStored -> BandJoinKey(predicate.rightAttributeAccess,
+                    predicate.leftAttributeAccess, -predicate.upperBound, -predicate.lowerBound, evaluation)
+            else -> null
+        }
+    }
+}
+
+/**
+ * An index of the documents by the combined values of equalityAttributeAccesses, see compositeKey,
+ * and, inside each key, sorted by the numeric value of numericAttributeAccess.
+ * Without equalityAttributeAccesses, all documents share the same key.
+ */
+data class BandIndexDefinition(
+    val equalityAttributeAccesses: List<AttributeAccess>,
+    val numericAttributeAccess: AttributeAccess
+) : Serializable
+
+/**
+ * The rows of a segment for a BandIndexDefinition.
+ */
+class BandIndex : Serializable {
+    private val buckets = HashMap<String, TreeMap<Double, IndexBucket>>()
+
+    fun add(key: String, value: Double, row: Int) {
+        buckets.getOrPut(key) { TreeMap() }.getOrPut(value) { IndexBucket() }.add(row)
+    }
+
+    /**
+     * @return the buckets of key with a value in [lower, upper]
+     */
+    fun range(key: String, lower: Double, upper: Double): Collection<IndexBucket> {
+        if (lower > upper) {
+            return listOf()
+        }
+        return buckets[key]?.subMap(lower, true, upper, true)?.values ?: listOf()
+    }
+}
+
+/**
+ * Stores documents of a relation for band joins, e.g. "x.t BETWEEN y.t - 5 AND y.t + 5", optionally combined
+ * with equalities on other attributes. The documents are indexed by the equality key and, inside each key,
+ * sorted by the banded attribute, such that a probe is answered by a bounded range lookup
+ * instead of comparing every stored document.
+ *
+ * Documents are evicted as soon as they left the window or the count window of the stored relation.
+ */
+class BandJoinStore<T>(
+    config: ClashConfig,
+    window: WindowDefinition = WindowDefinition.infinite(),
+    countWindow: WindowDefinition = WindowDefinition.infinite()
+) : SegmentedStore<T>(config, window, countWindow) {
+
+    /**
+     * If the predicates contain a band, the band index over the equality attributes and the banded attribute
+     * is scanned for the qualifying range and only these documents are joined with the remaining predicates.
+     * Otherwise, every stored document inside the range is compared with every probing document.
+     */
+    override fun probe(
+        segments: List<Segment>,
+        documents: List<Document>,
+        start: Long,
+        ats: Long,
+        predicates: Collection<BinaryPredicateEvaluation>,
+        attributeAccess: AttributeAccess?
+    ): List<Document> {
+        val bandJoinKey = bandJoinKeys(predicates).firstOrNull()
+            ?: return scan(segments, documents, start, ats, kernels.kernelFor(predicates))
+
+        val compositeJoinKey = chooseCompositeJoinKey(predicates)
+        val definition = BandIndexDefinition(
+                compositeJoinKey?.storedAttributeAccesses ?: listOf(),
+                bandJoinKey.storedAttributeAccess)
+        if (!prefix.hasBandIndex(definition)) {
+            prefix.addBandIndex(definition)
+        }
+        val residualKernel = kernels.kernelFor(predicates, (compositeJoinKey?.evaluations ?: setOf()) + bandJoinKey.evaluation)
+        return parallelProbing.probe(segments, documents.size, prefix.numberOfDocuments) { segment, output ->
+            for (probedDocument in documents) {
+                val key = if (compositeJoinKey == null) "" else compositeJoinKey.probedKey(probedDocument) ?: continue
+                val value = probedDocument[bandJoinKey.probedAttributeAccess]?.toDoubleOrNull() ?: continue
+                val candidates = segment.get(definition, key,
+                        value + bandJoinKey.lowerOffset, value + bandJoinKey.upperOffset, start, ats)
+                if (candidates.isEmpty()) {
+                    continue
+                }
+                residualKernel.join(probedDocument, candidates, output)
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package de.unikl.dbis.clash.workers.stores
+
+import java.io.Serializable
+
+/**
+ * A Bloom filter over strings, sized for expectedInsertions values at the given false positive rate.
+ *
+ * The bit positions are derived from two hashes of the value by double hashing.
+ */
+class BloomFilter(expectedInsertions: Int, falsePositiveRate: Double) : Serializable {
+    private val numberOfBits: Int
+    private val numberOfHashes: Int
+    private val bits: LongArray
+
+    init {
+        val insertions = Math.max(1, expectedInsertions).toDouble()
+        val ln2 = Math.log(2.0)
+        numberOfBits = Math.max(64.0, -insertions * Math.log(falsePositiveRate) / (ln2 * ln2)).toInt()
+        numberOfHashes = Math.max(1, Math.round(numberOfBits / insertions * ln2).toInt())
+        bits = LongArray((numberOfBits + 63) / 64)
+    }
+
+    val heapBytes: Long
+        get() = bits.size * 8L
+
+    fun put(value: String) {
+        val hash1 = value.hashCode()
+        val hash2 = mix(hash1)
+        for (i in 0 until numberOfHashes) {
+            val bit = position(hash1, hash2, i)
+            bits[bit ushr 6] = bits[bit ushr 6] or (1L shl bit)
+        }
+    }
+
+    /**
+     * @return false if value was certainly never put, true if it may have been put
+     */
+    fun mightContain(value: String): Boolean {
+        val hash1 = value.hashCode()
+        val hash2 = mix(hash1)
+        for (i in 0 until numberOfHashes) {
+            val bit = position(hash1, hash2, i)
+            if (bits[bit ushr 6] and (1L shl bit) == 0L) {
+                return false
+            }
+        }
+        return true
+    }
+
+    private fun position(hash1: Int, hash2: Int, i: Int): Int = ((hash1 + i * hash2) and Int.MAX_VALUE) % numberOfBits
+
+    private fun mix(hash: Int): Int {
+        var h = hash * -0x3361d2af
+        h = h xor (h ushr 16)
+        h *= -0x7a143595
+        return (h xor (h ushr 13)) or 1
+    }
+}
@@ -0,0 +1,186 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.query.AttributeAccess
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.io.OutputStream
+import java.io.Serializable
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+/**
+ * Where and how often tasks checkpoint their state. An intervalMillis of 0 disables checkpoints.
+ */
+data class CheckpointPolicy(
+    val directory: String = ClashConfig.DEFAULT_STORE_CHECKPOINT_DIRECTORY,
+    val intervalMillis: Long = 0
+) : Serializable {
+    val enabled: Boolean
+        get() = intervalMillis > 0
+
+    /**
+     * @return the checkpoints of the task with the given name
+     */
+    fun checkpointsFor(taskName: String): Checkpoints = Checkpoints(File(directory, taskName))
+
+    companion object {
+        fun fromConfig(config: ClashConfig): CheckpointPolicy = CheckpointPolicy(
+                config.storeCheckpointDirectory,
+                config.storeCheckpointInterval)
+    }
+}
+
+/**
+ * The checkpoints of a single task in a local directory.
+ *
+ * Each segment is written to a file of its own once and referred to by all later checkpoints.
+ * A checkpoint itself is a manifest that lists these segments and holds everything that still changes.
+ * It replaces the previous manifest atomically, so a crash while writing leaves the previous checkpoint intact.
+ * Segment files no manifest refers to any more are deleted.
+ *
+ * Checkpoints may be written by another thread than the one of the task, see CheckpointSnapshot.
+ */
+class Checkpoints(val directory: File) {
+    private val writtenSegments = HashSet<Long>()
+
+    @Synchronized
+    fun writeSegment(segment: Segment) {
+        if (writtenSegments.contains(segment.id)) {
+            return
+        }
+        write(segmentFile(segment.id), segment)
+        writtenSegments.add(segment.id)
+    }
+
+    @Synchronized
+    fun readSegment(id: Long): Segment {
+        writtenSegments.add(id)
+        return read(segmentFile(id)) as Segment
+    }
+
+    /**
+     * @param manifest a serialized CheckpointManifest
+     * @param segmentIds the segments the manifest refers to
+     */
+    @Synchronized
+    fun writeManifest(manifest: ByteArray, segmentIds: List<Long>) {
+        replace(File(directory, MANIFEST)) { it.write(manifest) }
+        val referenced = segmentIds.toSet()
+        writtenSegments.filter { it !in referenced }.forEach {
+            segmentFile(it).delete()
+            writtenSegments.remove(it)
+        }
+    }
+
+    /**
+     * @return the latest manifest, or null if no checkpoint was written yet
+     */
+    @Synchronized
+    fun readManifest(): CheckpointManifest? {
+        val file = File(directory, MANIFEST)
+        if (!file.exists()) {
+            return null
+        }
+        return read(file) as CheckpointManifest
+    }
+
+    /**
+     * Writes a small value that is not part of a store, e.g. a counter of a bolt.
+     */
+    fun writeValue(name: String, value: Serializable) = write(File(directory, name), value)
+
+    fun readValue(name: String): Serializable? {
+        val file = File(directory, name)
+        if (!file.exists()) {
+            return null
+        }
+        return read(file) as Serializable
+    }
+
+    /**
+     * Deletes all checkpoints.
+     */
+    @Synchronized
+    fun clear() {
+        directory.listFiles()?.forEach { it.delete() }
+        writtenSegments.clear()
+    }
+
+    private fun segmentFile(id: Long) = File(directory, "segment-$id")
+
+    private fun write(file: File, value: Any) = replace(file) { ObjectOutputStream(it).apply { writeObject(value) }.flush() }
+
+    private fun replace(file: File, write: (OutputStream) -> Unit) {
+        directory.mkdirs()
+        val temporary = File(directory, file.name + ".tmp")
+        BufferedOutputStream(FileOutputStream(temporary)).use(write)
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    }
+
+    private fun read(file: File): Any = ObjectInputStream(BufferedInputStream(FileInputStream(file))).use { it.readObject() }
+
+    companion object {
+        private const val MANIFEST = "manifest"
+    }
+}
+
+/**
+ * A checkpoint of a store as of the moment it was taken, which another thread writes while the store keeps changing.
+ *
+ * The manifest holds everything that still changes, i.e. the newest segment and the state of the store, and is
+ * serialized when the snapshot is taken. This is the pause a checkpoint causes in the task, it grows with the
+ * segment size and the buffered probes. The sealed segments are only written to their files by writeTo, including
+ * reading spilled rows back, see SpilledRows. They do not receive documents any more, and Segment keeps indexes
+ * from being added, rows from being spilled and the segment from being dropped while it is written.
+ */
+class CheckpointSnapshot(private val sealed: List<Segment>, manifest: CheckpointManifest) {
+    private val manifest: ByteArray = ByteArrayOutputStream().also {
+        ObjectOutputStream(it).apply { writeObject(manifest) }.flush()
+    }.toByteArray()
+
+    /**
+     * Writes the sealed segments that are not written yet and replaces the manifest.
+     *
+     * @throws IllegalStateException if a sealed segment was dropped from the store before it was written
+     */
+    fun writeTo(checkpoints: Checkpoints) {
+        sealed.forEach { checkpoints.writeSegment(it) }
+        checkpoints.writeManifest(manifest, sealed.map { it.id })
+    }
+}
+
+/**
+ * A checkpoint of a SegmentedPrefix and the store it belongs to.
+ *
+ * @param segmentIds the segments that were written on their own, oldest first
+ * @param watermarks the watermark of each of these segments at the time of the checkpoint
+ * @param firstLiveRows the first row of each of these segments that did not expire by its arrival
+ * @param newest the segment that still received documents, it is written with every checkpoint
+ * @param bandIndexes the band indexes of the prefix, see BandIndexDefinition
+ * @param state the remaining state of the store, e.g. its ProbeLog
+ */
+class CheckpointManifest(
+    val segmentIds: List<Long>,
+    val watermarks: List<Long>,
+    val firstLiveRows: List<Int>,
+    val newest: Segment?,
+    val indexedAttributes: Map<List<AttributeAccess>, Boolean>,
+    val bandIndexes: Set<BandIndexDefinition>,
+    val nextSegmentId: Long,
+    val state: Serializable?
+) : Serializable
+
+/**
+ * The state of a store besides its segments.
+ */
+class StoreState<T>(
+    val probeLog: ProbeLogI<T>,
+    val timeWindowTracker: TimeWindowTracker?
+) : Serializable
@@ -0,0 +1,257 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.query.AttributeAccess
+import java.io.Serializable
+import java.util.BitSet
+
+/**
+ * The documents of a segment, addressed by their row.
+ */
+interface Rows : Serializable {
+    val size: Int
+
+    /**
+     * Appends document as the next row.
+     */
+    fun add(document: Document)
+
+    fun value(row: Int, attributeAccess: AttributeAccess): String?
+
+    /**
+     * Rebuilds the document stored in row.
+     */
+    fun document(row: Int): Document
+
+    /**
+     * The estimated number of bytes the rows occupy on the heap. Rows kept off the heap only count
+     * what they need on the heap to find them.
+     */
+    val heapBytes: Long
+
+    /**
+     * Releases resources held outside of the heap, called once the segment is dropped.
+     */
+    fun release() {}
+}
+
+/**
+ * Keeps rows in columnar form on the heap: each attribute is a column and
+ * strings are dictionary-encoded.
+ */
+class ColumnarRows : Rows {
+    private val dictionary = Dictionary()
+    private val columns: MutableMap<AttributeAccess, Column> = LinkedHashMap()
+
+    override var size = 0
+        private set
+
+    override val heapBytes: Long
+        get() {
+            var result = dictionary.heapBytes
+            columns.values.forEach { result += it.heapBytes }
+            return result
+        }
+
+    override fun add(document: Document) {
+        document.keys.forEach { attributeAccess ->
+            if (!columns.containsKey(attributeAccess)) {
+                columns[attributeAccess] = Column(size)
+            }
+        }
+        columns.forEach { (attributeAccess, column) -> column.add(document[attributeAccess], dictionary) }
+        size++
+    }
+
+    override fun value(row: Int, attributeAccess: AttributeAccess): String? = columns[attributeAccess]?.get(row, dictionary)
+
+    override fun document(row: Int): Document {
+        val document = Document()
+        columns.forEach { (attributeAccess, column) ->
+            val value = column[row, dictionary]
+            if (value != null) {
+                document[attributeAccess] = value
+            }
+        }
+        return document
+    }
+}
+
+/**
+ * Maps each distinct string of a segment to a small integer code, such that repeated values are stored once.
+ */
+class Dictionary : Serializable {
+    private val values = ArrayList<String>()
+    private val codes = HashMap<String, Int>()
+
+    val size: Int
+        get() = values.size
+
+    /**
+     * The estimated number of bytes the values and their codes occupy on the heap
+     */
+    var heapBytes = 0L
+        private set
+
+    fun encode(value: String): Int = codes.getOrPut(value) {
+        values.add(value)
+        heapBytes += estimateBytes(value) + ENTRY_BYTES
+        values.size - 1
+    }
+
+    fun decode(code: Int): String = values[code]
+
+    companion object {
+        // a reference in the list of values and an entry in the map of codes
+        private const val ENTRY_BYTES = 40L
+    }
+}
+
+/**
+ * The values of one attribute for all rows of a segment.
+ *
+ * As long as all values are integers in their canonical notation, they are kept in a primitive long array.
+ * With the first other value, the column switches to dictionary codes.
+ *
+ * @param padding the number of rows stored before the attribute appeared for the first time
+ */
+class Column(padding: Int) : Serializable {
+    private var numbers: LongList? = LongList()
+    private var codes: IntList? = null
+    private val nulls = BitSet()
+    private var size = 0
+
+    /**
+     * The estimated number of bytes the column occupies on the heap, without the values in the dictionary
+     */
+    val heapBytes: Long
+        get() = size * (if (numbers != null) NUMBER_BYTES else CODE_BYTES) + size / Byte.SIZE_BITS
+
+    init {
+        repeat(padding) { add(null, NO_DICTIONARY) }
+    }
+
+    fun add(value: String?, dictionary: Dictionary) {
+        if (value == null) {
+            nulls.set(size)
+        }
+        val numbers = numbers
+        if (numbers != null) {
+            val number = if (value == null) 0L else asNumber(value)
+            if (number != null) {
+                numbers.add(number)
+                size++
+                return
+            }
+            switchToCodes(dictionary)
+        }
+        codes!!.add(if (value == null) NULL_CODE else dictionary.encode(value))
+        size++
+    }
+
+    operator fun get(row: Int, dictionary: Dictionary): String? {
+        if (nulls[row]) {
+            return null
+        }
+        val numbers = numbers
+        return if (numbers != null) numbers[row].toString() else dictionary.decode(codes!![row])
+    }
+
+    private fun switchToCodes(dictionary: Dictionary) {
+        val codes = IntList()
+        for (row in 0 until size) {
+            codes.add(if (nulls[row]) NULL_CODE else dictionary.encode(numbers!![row].toString()))
+        }
+        this.codes = codes
+        this.numbers = null
+    }
+
+    private fun asNumber(value: String): Long? {
+        val number = value.toLongOrNull() ?: return null
+        return if (number.toString() == value) number else null
+    }
+
+    companion object {
+        private const val NULL_CODE = -1
+        private const val NUMBER_BYTES = 8L
+        private const val CODE_BYTES = 4L
+        private val NO_DICTIONARY = Dictionary()
+    }
+}
+
+/**
+ * A growable array of primitive longs.
+ */
+class LongList : Serializable {
+    private var values = LongArray(INITIAL_CAPACITY)
+
+    var size = 0
+        private set
+
+    operator fun get(index: Int): Long = values[index]
+
+    fun add(value: Long) {
+        ensureCapacity(size + 1)
+        values[size++] = value
+    }
+
+    /**
+     * Inserts value behind all values that are smaller or equal, keeping an ascending list ascending.
+     * Values that arrive in order are appended in constant time.
+     */
+    fun insertSorted(value: Long) {
+        if (size == 0 || values[size - 1] <= value) {
+            add(value)
+            return
+        }
+        val index = firstIndexFrom(value + 1)
+        ensureCapacity(size + 1)
+        System.arraycopy(values, index, values, index + 1, size - index)
+        values[index] = value
+        size++
+    }
+
+    /**
+     * @return the position of the first value that is at least value, assuming an ascending list
+     */
+    fun firstIndexFrom(value: Long): Int {
+        var low = 0
+        var high = size
+        while (low < high) {
+            val middle = (low + high) ushr 1
+            if (values[middle] < value) {
+                low = middle + 1
+            } else {
+                high = middle
+            }
+        }
+        return low
+    }
+
+    private fun ensureCapacity(capacity: Int) {
+        if (capacity > values.size) {
+            values = values.copyOf(Math.max(capacity, values.size * 2))
+        }
+    }
+}
+
+/**
+ * A growable array of primitive ints.
+ */
+class IntList : Serializable {
+    private var values = IntArray(INITIAL_CAPACITY)
+
+    var size = 0
+        private set
+
+    operator fun get(index: Int): Int = values[index]
+
+    fun add(value: Int) {
+        if (size == values.size) {
+            values = values.copyOf(values.size * 2)
+        }
+        values[size++] = value
+    }
+}
+
+private const val INITIAL_CAPACITY = 8
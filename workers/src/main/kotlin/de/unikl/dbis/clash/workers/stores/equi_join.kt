@@ -0,0 +1,93 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.AttributePairEquality
+import de.unikl.dbis.clash.query.BinaryAttributePredicate
+import de.unikl.dbis.clash.query.BinaryEquality
+import java.io.Serializable
+
+/**
+ * An equality predicate as seen from a store.
+ *
+ * For the predicate "x.a = y.b" evaluated at the x-store, the stored documents are looked up
+ * with x.a while the arriving (probing) document provides the key via y.b.
+ */
+data class EquiJoinKey(
+    val storedAttributeAccess: AttributeAccess,
+    val probedAttributeAccess: AttributeAccess,
+    val evaluation: BinaryPredicateEvaluation
+) : Serializable
+
+/**
+ * Extracts all equality predicates of which it is known which side is stored.
+ */
+fun equiJoinKeys(predicates: Collection<BinaryPredicateEvaluation>): List<EquiJoinKey> {
+    return predicates.mapNotNull { evaluation ->
+        val predicate = evaluation.predicate
+        if (!isEquality(predicate)) {
+            return@mapNotNull null
+        }
+        predicate as BinaryAttributePredicate
+        when (evaluation) {
+            is BinaryPredicateEvaluationLeftStored ->
+                EquiJoinKey(predicate.leftAttributeAccess, predicate.rightAttributeAccess, evaluation)
+            is BinaryPredicateEvaluationRightStored ->
+                EquiJoinKey(predicate.rightAttributeAccess, predicate.leftAttributeAccess, evaluation)
+            else -> null
+        }
+    }
+}
+
+/**
+ * Chooses the equality predicate used for an index lookup.
+ * If an attributeAccess is given, the key on that stored attribute is preferred.
+ */
+fun chooseEquiJoinKey(predicates: Collection<BinaryPredicateEvaluation>, attributeAccess: AttributeAccess? = null): EquiJoinKey? {
+    val keys = equiJoinKeys(predicates)
+    return keys.firstOrNull { it.storedAttributeAccess == attributeAccess } ?: keys.firstOrNull()
+}
+
+/**
+ * All equality predicates of a probe that can be answered by one lookup into a composite index.
+ *
+ * The index is built over storedAttributeAccesses in a fixed order, its keys combine the values of these attributes.
+ * A composite key of a single attribute is just the value of that attribute.
+ */
+data class CompositeJoinKey(val parts: List<EquiJoinKey>) : Serializable {
+    val storedAttributeAccesses: List<AttributeAccess> = parts.map { it.storedAttributeAccess }
+    val evaluations: Set<BinaryPredicateEvaluation> = parts.map { it.evaluation }.toSet()
+
+    /**
+     * @return the key the probing document looks up, or null if it lacks one of the attributes
+     */
+    fun probedKey(document: Document): String? =
+            compositeKey(parts.map { document[it.probedAttributeAccess] ?: return null })
+}
+
+/**
+ * Chooses the most selective key for an index lookup, that is the combination of all equality predicates
+ * on distinct stored attributes. If only a single equality exists, the one on attributeAccess is preferred.
+ */
+fun chooseCompositeJoinKey(predicates: Collection<BinaryPredicateEvaluation>, attributeAccess: AttributeAccess? = null): CompositeJoinKey? {
+    val keys = equiJoinKeys(predicates)
+            .distinctBy { it.storedAttributeAccess }
+            .sortedBy { it.storedAttributeAccess.toString() }
+    return when {
+        keys.isEmpty() -> null
+        keys.size == 1 -> CompositeJoinKey(listOf(chooseEquiJoinKey(predicates, attributeAccess)!!))
+        else -> CompositeJoinKey(keys)
+    }
+}
+
+/**
+ * Combines the values of several attributes into the key of a composite index.
+ */
+fun compositeKey(values: List<String>): String = if (values.size == 1) values[0] else values.joinToString(KEY_SEPARATOR)
+
+private const val KEY_SEPARATOR = "\u0000"
+
+private fun isEquality(predicate: Any) = predicate is BinaryEquality || predicate is AttributePairEquality
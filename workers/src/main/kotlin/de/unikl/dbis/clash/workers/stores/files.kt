@@ -0,0 +1,80 @@
+package de.unikl.dbis.clash.workers.stores
+
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.channels.FileChannel
+import java.nio.channels.OverlappingFileLockException
+import java.nio.file.Files
+import org.slf4j.LoggerFactory
+
+/**
+ * Creates the files of mapped arenas and spilled segments.
+ *
+ * The files of a JVM are kept in a run directory of its own inside the configured directory, which the JVM
+ * locks for its lifetime. Their owners delete the files once released, so nothing is registered for deletion
+ * on exit. Claiming a directory for the first time deletes the run directories of JVMs that ended before
+ * releasing their files, which is told by their lock being free. Workers on the same host may share a directory.
+ */
+internal object StoreFiles {
+    private const val RUN_PREFIX = "clash-run-"
+    private const val LOCK_FILE = ".lock"
+    private val LOG = LoggerFactory.getLogger(StoreFiles::class.java)
+
+    // the run directories of this JVM by the directory they are in, with the channels holding their locks
+    private val runs = HashMap<File, Pair<File, FileChannel>>()
+
+    fun createFile(directory: String, prefix: String, suffix: String): File =
+            File.createTempFile(prefix, suffix, claim(directory))
+
+    /**
+     * Returns the run directory of this JVM in directory, claiming one if there is none yet.
+     */
+    @Synchronized
+    fun claim(directory: String): File {
+        val parent = File(directory).absoluteFile
+        var run = runs[parent]
+        if (run == null || !run.first.isDirectory) {
+            run?.second?.close()
+            run = lockRun(parent)
+            runs[parent] = run
+        }
+        return run.first
+    }
+
+    private fun lockRun(parent: File): Pair<File, FileChannel> {
+        parent.mkdirs()
+        sweep(parent)
+        val run = Files.createTempDirectory(parent.toPath(), RUN_PREFIX).toFile()
+        val channel = RandomAccessFile(File(run, LOCK_FILE), "rw").channel
+        channel.lock()
+        return Pair(run, channel)
+    }
+
+    /**
+     * Deletes the run directories in parent whose lock is free.
+     * Directories without a lock file are skipped, as their JVM may be about to lock them.
+     */
+    private fun sweep(parent: File) {
+        val stale = parent.listFiles { file -> file.isDirectory && file.name.startsWith(RUN_PREFIX) } ?: return
+        for (run in stale) {
+            val lockFile = File(run, LOCK_FILE)
+            if (lockFile.exists() && isFree(lockFile)) {
+                LOG.info("Deleting the files of an ended worker in {}", run)
+                run.deleteRecursively()
+            }
+        }
+    }
+
+    private fun isFree(lockFile: File): Boolean = try {
+        RandomAccessFile(lockFile, "rw").channel.use { channel ->
+            val lock = channel.tryLock()
+            lock?.release()
+            lock != null
+        }
+    } catch (e: IOException) {
+        false
+    } catch (e: OverlappingFileLockException) {
+        false
+    }
+}
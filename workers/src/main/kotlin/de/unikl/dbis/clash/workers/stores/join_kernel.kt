@@ -0,0 +1,168 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.AttributeSlot
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
+import de.unikl.dbis.clash.physical.GenericBinaryPredicateEvaluation
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.BinaryPredicate
+import de.unikl.dbis.clash.query.compareValues
+import java.io.Serializable
+import java.util.IdentityHashMap
+
+/**
+ * A set of predicates compiled for evaluation inside a store.
+ *
+ * Which document is on the left and which on the right side of each predicate is resolved once.
+ * Equalities and comparisons between two attributes are evaluated directly on the attribute values,
+ * all other predicates are handed the documents in the right order.
+ */
+class JoinKernel(val predicates: Collection<BinaryPredicateEvaluation>) : Serializable {
+    private val checks: Array<PredicateCheck> = predicates.map { compile(it) }.toTypedArray()
+    private val selections = HashMap<Set<BinaryPredicateEvaluation>, JoinKernel>()
+
+    fun joinable(stored: Document, probed: Document): Boolean {
+        for (check in checks) {
+            if (!check.test(stored, probed)) {
+                return false
+            }
+        }
+        return true
+    }
+
+    /**
+     * Joins each probed document with each stored document and adds the joint documents to output.
+     */
+    fun join(probed: List<Document>, stored: List<Document>, output: MutableList<Document>) {
+        for (i in probed.indices) {
+            join(probed[i], stored, output)
+        }
+    }
+
+    fun join(probed: Document, stored: List<Document>, output: MutableList<Document>) {
+        for (i in stored.indices) {
+            val storedDocument = stored[i]
+            if (joinable(storedDocument, probed)) {
+                output.add(probed.createJoint(storedDocument))
+            }
+        }
+    }
+
+    /**
+     * Compiles the kernel for all predicates except evaluations, e.g. because an index already ensured them.
+     * Stores take it from JoinKernelCache.kernelFor instead, such that it is compiled only once.
+     */
+    fun without(evaluations: Set<BinaryPredicateEvaluation>): JoinKernel =
+            JoinKernel(predicates.filter { it !in evaluations })
+
+    /**
+     * @return the kernel for only the predicates in evaluations
+     */
+    fun only(evaluations: Set<BinaryPredicateEvaluation>): JoinKernel =
+            selections.getOrPut(evaluations) { JoinKernel(predicates.filter { it in evaluations }) }
+
+    private fun compile(evaluation: BinaryPredicateEvaluation): PredicateCheck {
+        val rangeJoinKey = rangeJoinKeys(listOf(evaluation)).firstOrNull()
+        if (rangeJoinKey != null) {
+            return AttributeCheck(rangeJoinKey.storedAttributeAccess, rangeJoinKey.probedAttributeAccess, rangeJoinKey.comparison)
+        }
+        return when (evaluation) {
+            is BinaryPredicateEvaluationLeftStored -> GenericCheck(evaluation.predicate, true)
+            is BinaryPredicateEvaluationRightStored -> GenericCheck(evaluation.predicate, false)
+            is GenericBinaryPredicateEvaluation -> GenericCheck(evaluation.predicate, true)
+            else -> throw RuntimeException("Predicate Evaluation was not of type BinaryPredicateEvaluation!")
+        }
+    }
+}
+
+/**
+ * Remembers the kernels compiled for the predicate sets of the rules a store serves,
+ * and the residual kernels left over once an index ensured some of their predicates.
+ * Rules hand in the same collection on every call, so kernels are looked up by identity.
+ */
+class JoinKernelCache : Serializable {
+    private val kernels = IdentityHashMap<Collection<BinaryPredicateEvaluation>, JoinKernel>()
+    private val residuals = IdentityHashMap<Collection<BinaryPredicateEvaluation>, MutableMap<Set<BinaryPredicateEvaluation>, JoinKernel>>()
+
+    fun kernelFor(predicates: Collection<BinaryPredicateEvaluation>): JoinKernel {
+        val kernel = kernels[predicates]
+        if (kernel != null) {
+            return kernel
+        }
+        if (kernels.size >= MAX_KERNELS) {
+            kernels.clear()
+        }
+        return JoinKernel(predicates).also { kernels[predicates] = it }
+    }
+
+    /**
+     * @return the kernel for all predicates except evaluation, e.g. because an index already ensured it
+     */
+    fun kernelFor(predicates: Collection<BinaryPredicateEvaluation>, without: BinaryPredicateEvaluation): JoinKernel =
+            kernelFor(predicates, setOf(without))
+
+    /**
+     * @return the kernel for all predicates except the evaluations in without
+     */
+    fun kernelFor(predicates: Collection<BinaryPredicateEvaluation>, without: Set<BinaryPredicateEvaluation>): JoinKernel {
+        if (without.isEmpty()) {
+            return kernelFor(predicates)
+        }
+        var byEvaluations = residuals[predicates]
+        if (byEvaluations == null) {
+            if (residuals.size >= MAX_KERNELS) {
+                residuals.clear()
+            }
+            byEvaluations = HashMap()
+            residuals[predicates] = byEvaluations
+        }
+        return byEvaluations.getOrPut(without) { kernelFor(predicates).without(without) }
+    }
+
+    companion object {
+        private const val MAX_KERNELS = 64
+    }
+}
+
+private interface PredicateCheck : Serializable {
+    fun test(stored: Document, probed: Document): Boolean
+}
+
+/**
+ * Compares the value of storedAttributeAccess to the value of probedAttributeAccess.
+ * Documents lacking one of the attributes never match.
+ * Documents with a schema are read by the ordinals of both attributes, see AttributeSlot.
+ * Equality compares the text of the values, the other comparisons their typed values in ValueOrder.
+ */
+private class AttributeCheck(
+    storedAttributeAccess: AttributeAccess,
+    probedAttributeAccess: AttributeAccess,
+    val comparison: Comparison
+) : PredicateCheck {
+    private val storedSlot = AttributeSlot(storedAttributeAccess)
+    private val probedSlot = AttributeSlot(probedAttributeAccess)
+
+    override fun test(stored: Document, probed: Document): Boolean {
+        if (comparison == Comparison.EQUAL) {
+            val storedValue = storedSlot[stored] ?: return false
+            return storedValue == probedSlot[probed]
+        }
+        val storedValue = storedSlot.typed(stored) ?: return false
+        val probedValue = probedSlot.typed(probed) ?: return false
+        val order = compareValues(storedValue, probedValue)
+        return when (comparison) {
+            Comparison.LESS -> order < 0
+            Comparison.LESS_OR_EQUAL -> order <= 0
+            Comparison.GREATER_OR_EQUAL -> order >= 0
+            Comparison.GREATER -> order > 0
+            Comparison.EQUAL -> order == 0
+        }
+    }
+}
+
+private class GenericCheck(val predicate: BinaryPredicate, val storedIsLeft: Boolean) : PredicateCheck {
+    override fun test(stored: Document, probed: Document): Boolean =
+            if (storedIsLeft) predicate.joinable(stored, probed) else predicate.joinable(probed, stored)
+}
@@ -0,0 +1,38 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.Document
+
+// rough sizes of objects on a 64 bit JVM, used to estimate how much heap a store occupies
+private const val DOCUMENT_BYTES = 32L
+private const val VALUE_BYTES = 40L
+private const val ROW_BYTES = 8L
+
+/**
+ * @return the estimated number of bytes document occupies on the heap
+ */
+fun estimateBytes(document: Document): Long {
+    var result = DOCUMENT_BYTES
+    for (value in document.values) {
+        result += estimateBytes(value)
+    }
+    return result
+}
+
+/**
+ * @return the estimated number of bytes value occupies on the heap
+ */
+fun estimateBytes(value: String): Long = VALUE_BYTES + 2L * value.length
+
+/**
+ * @return the estimated number of bytes rows keep on the heap to find rows stored elsewhere, e.g. their offsets
+ */
+fun estimateRowReferenceBytes(rows: Int): Long = ROW_BYTES * rows
+
+/**
+ * @return the estimated number of bytes documents occupy on the heap
+ */
+fun estimateBytes(documents: List<Document>): Long {
+    var result = 0L
+    documents.forEach { result += estimateBytes(it) }
+    return result
+}
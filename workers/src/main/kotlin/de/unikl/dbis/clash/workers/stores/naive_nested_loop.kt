@@ -3,22 +3,36 @@ package de.unikl.dbis.clash.workers.stores
 import de.unikl.dbis.clash.ClashConfig
 import de.unikl.dbis.clash.documents.Document
 import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
-import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
-import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
-import de.unikl.dbis.clash.physical.GenericBinaryPredicateEvaluation
 import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.WindowDefinition
 import java.io.Serializable
+import java.util.RandomAccess
 import java.util.SortedMap
 import java.util.TreeMap
 import kotlin.collections.ArrayList
 import org.slf4j.LoggerFactory
 
-class NaiveNestedLoopStore<T>(val config: ClashConfig) : ActualStore<T>, Serializable {
+/**
+ * Stores documents of a relation and joins them by comparing every stored with every probing document.
+ *
+ * If the relation has a count window, only as many of its last documents as that window holds are kept.
+ */
+class NaiveNestedLoopStore<T>(
+    val config: ClashConfig,
+    val window: WindowDefinition = WindowDefinition.infinite(),
+    val countWindow: WindowDefinition = WindowDefinition.infinite()
+) : ActualStore<T>, Serializable {
     val randomPrefix = RandomPrefix()
-    val probeLog = ProbeLog<T>(config)
+    var probeLog = ProbeLog<T>(config, window, countWindow)
+        private set
+    private val kernels = JoinKernelCache()
+    private val countLimit = countLimitOf(window, countWindow)
 
     override fun store(ats: Long, documents: List<Document>): DelayedStoreJoinResult<T> {
         randomPrefix.put(ats, documents)
+        if (countLimit > 0) {
+            randomPrefix.evictToCount(countLimit)
+        }
         return probeLog.examine(documents, ats)
     }
 
@@ -55,35 +69,18 @@ class NaiveNestedLoopStore<T>(val config: ClashConfig) : ActualStore<T>, Seriali
         return randomPrefix.free(ats)
     }
 
+    override fun reset() {
+        randomPrefix.clear()
+        probeLog = ProbeLog(config, window, countWindow)
+    }
+
     fun join(
-        probed: Collection<Document>,
-        stored: Collection<Document>,
+        probed: List<Document>,
+        stored: List<Document>,
         predicates: Collection<BinaryPredicateEvaluation>
     ): List<Document> {
         val result = ArrayList<Document>()
-
-        for (probedDocument in probed) {
-            for (storedDocument in stored) {
-                var isJoinable = true
-                for (predicateEvaluation in predicates) {
-                    val (left, right) = when (predicateEvaluation) {
-                        is BinaryPredicateEvaluationLeftStored -> Pair(storedDocument, probedDocument)
-                        is BinaryPredicateEvaluationRightStored -> Pair(probedDocument, storedDocument)
-                        is GenericBinaryPredicateEvaluation -> Pair(storedDocument, probedDocument)
-                        else -> throw RuntimeException("Predicate Evaluation was not of type BinaryPredicateEvaluation!")
-                    }
-                    val predicate = predicateEvaluation.predicate
-                    if (!predicate.joinable(left, right)) {
-                        isJoinable = false
-                        break
-                    }
-                }
-                if (isJoinable) {
-                    result.add(probedDocument.createJoint(storedDocument))
-                }
-            }
-        }
-
+        kernels.kernelFor(predicates).join(probed, stored, result)
         LOG.debug("joinPredicateEvaluation {} probed -- {} stored <<< {} >>> {}", probed, stored, predicates, result.size)
         return result
     }
@@ -97,27 +94,95 @@ class NaiveNestedLoopStore<T>(val config: ClashConfig) : ActualStore<T>, Seriali
  * The RandomPrefix is responsible for storing the prefix of a relation.
  *
  * Each stored document (list) is stored associated with their timestamp.
- * The
+ * Documents that share a timestamp are kept together in arrival order, see DocumentQueue.
  */
 data class RandomPrefix(
         // These are the stored objects ordered by their timestamp attribute
         //  t ----------------------------------------------
         //       t1 [{k:v,k:v,...}]        t5 [{k:v,...}, {k:v,...}]
-    val inner: TreeMap<Long, List<Document>> = TreeMap()
+    val inner: TreeMap<Long, DocumentQueue> = TreeMap()
 ) : Serializable {
 
+    /**
+     * The number of documents currently stored
+     */
+    var numberOfDocuments = inner.values.sumBy { it.size }.toLong()
+        private set
+
     fun put(ats: Long, documents: List<Document>) {
-        this.inner[ats] = documents
+        this.inner.getOrPut(ats) { DocumentQueue() }.addAll(documents)
+        numberOfDocuments += documents.size
     }
 
-    fun get(fromAts: Long, toAts: Long): SortedMap<Long, List<Document>> {
-        return inner.subMap(fromAts, toAts) as SortedMap<Long, List<Document>>
+    fun get(fromAts: Long, toAts: Long): SortedMap<Long, DocumentQueue> {
+        return inner.subMap(fromAts, toAts)
     }
 
     fun free(ats: Long): Int {
         val headMap = inner.headMap(ats)
         val size = headMap.size
+        numberOfDocuments -= headMap.values.sumBy { it.size }
         headMap.clear()
         return size
     }
+
+    /**
+     * Removes the documents with the smallest timestamps until at most count documents remain.
+     *
+     * @return the number of removed documents
+     */
+    fun evictToCount(count: Long): Int {
+        var evicted = 0
+        while (numberOfDocuments > count) {
+            val oldest = inner.firstEntry()
+            val surplus = numberOfDocuments - count
+            val removed = if (oldest.value.size <= surplus) {
+                inner.pollFirstEntry()
+                oldest.value.size
+            } else {
+                oldest.value.removeFirst(surplus.toInt())
+                surplus.toInt()
+            }
+            numberOfDocuments -= removed
+            evicted += removed
+        }
+        return evicted
+    }
+
+    fun clear() {
+        inner.clear()
+        numberOfDocuments = 0
+    }
+}
+
+/**
+ * The documents of one timestamp in arrival order.
+ * Appending documents and removing the oldest ones take amortized constant time per document,
+ * and the documents are read as a list without copying them.
+ */
+class DocumentQueue : AbstractList<Document>(), RandomAccess, Serializable {
+    private val documents = ArrayList<Document>()
+
+    // the number of removed documents that still lead documents
+    private var head = 0
+
+    override val size: Int get() = documents.size - head
+
+    override fun get(index: Int): Document = documents[head + index]
+
+    fun addAll(added: List<Document>) {
+        documents.addAll(added)
+    }
+
+    /**
+     * Removes the count oldest documents. Their slots are only given back once they make up half of the queue,
+     * such that moving the remaining documents is paid for by the removed ones.
+     */
+    fun removeFirst(count: Int) {
+        head += count
+        if (head > documents.size / 2) {
+            documents.subList(0, head).clear()
+            head = 0
+        }
+    }
 }
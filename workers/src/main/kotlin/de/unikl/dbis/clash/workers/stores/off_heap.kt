@@ -0,0 +1,187 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.query.AttributeAccess
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.io.RandomAccessFile
+import java.io.Serializable
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+enum class StoreBackend {
+    /**
+     * Columnar rows on the heap
+     */
+    HEAP,
+    /**
+     * Serialized rows in direct buffers outside of the heap
+     */
+    OFF_HEAP,
+    /**
+     * Serialized rows in memory-mapped files
+     */
+    MAPPED
+}
+
+/**
+ * Describes how segments store their rows.
+ */
+data class RowStorage(
+    val backend: StoreBackend = StoreBackend.HEAP,
+    val directory: String = ClashConfig.DEFAULT_STORE_DIRECTORY,
+    val arenaSize: Int = ClashConfig.DEFAULT_STORE_ARENA_SIZE
+) : Serializable {
+
+    fun create(): Rows = when (backend) {
+        StoreBackend.HEAP -> ColumnarRows()
+        StoreBackend.OFF_HEAP -> OffHeapRows(arenaSize, null)
+        StoreBackend.MAPPED -> OffHeapRows(arenaSize, directory)
+    }
+
+    companion object {
+        fun fromConfig(config: ClashConfig): RowStorage = RowStorage(
+                StoreBackend.valueOf(config.storeBackend.toUpperCase()),
+                config.storeDirectory,
+                config.storeArenaSize)
+    }
+}
+
+/**
+ * Keeps rows serialized in buffers outside of the heap, such that large windows do not burden the garbage collector.
+ *
+ * Rows are appended to arenas of arenaSize bytes. If a directory is given, the arenas are memory-mapped files
+ * inside it, see StoreFiles, otherwise direct buffers. Only the row offsets and the attribute names stay on the heap.
+ *
+ * Each row is encoded as the number of fields followed by, per field, the id of its attribute,
+ * the length of the value and the UTF-8 bytes of the value.
+ */
+class OffHeapRows(private val arenaSize: Int, private val directory: String?) : Rows {
+    @Transient private var arenas = ArrayList<ByteBuffer>()
+    @Transient private var files = ArrayList<File>()
+
+    // the arena of a row in the upper, its position in the lower 32 bits
+    private val offsets = LongList()
+    private val attributes = ArrayList<AttributeAccess>()
+    private val attributeIds = HashMap<AttributeAccess, Int>()
+
+    override val size: Int
+        get() = offsets.size
+
+    override val heapBytes: Long
+        get() = estimateRowReferenceBytes(size)
+
+    override fun add(document: Document) {
+        val bytes = encode(document)
+        var arena = arenas.lastOrNull()
+        if (arena == null || arena.remaining() < bytes.size) {
+            arena = allocate(Math.max(arenaSize, bytes.size))
+        }
+        offsets.add((arenas.size - 1).toLong() shl 32 or arena.position().toLong())
+        arena.put(bytes)
+    }
+
+    override fun value(row: Int, attributeAccess: AttributeAccess): String? {
+        val attributeId = attributeIds[attributeAccess] ?: return null
+        var result: String? = null
+        read(row) { id, value ->
+            if (id == attributeId) {
+                result = value()
+            }
+        }
+        return result
+    }
+
+    override fun document(row: Int): Document {
+        val document = Document()
+        read(row) { id, value -> document[attributes[id]] = value() }
+        return document
+    }
+
+    override fun release() {
+        arenas.clear()
+        files.forEach { it.delete() }
+        files.clear()
+    }
+
+    private fun encode(document: Document): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        val output = DataOutputStream(bytes)
+        output.writeShort(document.size)
+        for ((attributeAccess, value) in document) {
+            val id = attributeIds.getOrPut(attributeAccess) {
+                attributes.add(attributeAccess)
+                attributes.size - 1
+            }
+            val encoded = value.toByteArray(Charsets.UTF_8)
+            output.writeShort(id)
+            output.writeInt(encoded.size)
+            output.write(encoded)
+        }
+        return bytes.toByteArray()
+    }
+
+    /**
+     * Calls visitor with the attribute id of each field of row. Values are only decoded if the visitor asks for them.
+     */
+    private inline fun read(row: Int, visitor: (Int, () -> String) -> Unit) {
+        val offset = offsets[row]
+        val arena = arenas[(offset ushr 32).toInt()]
+        var position = offset.toInt()
+        val fields = arena.getShort(position).toInt()
+        position += 2
+        repeat(fields) {
+            val id = arena.getShort(position).toInt()
+            val length = arena.getInt(position + 2)
+            val start = position + 6
+            visitor(id) {
+                val bytes = ByteArray(length)
+                val view = arena.duplicate()
+                view.position(start)
+                view.get(bytes)
+                String(bytes, Charsets.UTF_8)
+            }
+            position = start + length
+        }
+    }
+
+    private fun allocate(size: Int): ByteBuffer {
+        val arena = if (directory == null) {
+            ByteBuffer.allocateDirect(size)
+        } else {
+            val file = StoreFiles.createFile(directory, "clash-segment-", ".arena")
+            files.add(file)
+            RandomAccessFile(file, "rw").use { it.channel.map(FileChannel.MapMode.READ_WRITE, 0, size.toLong()) }
+        }
+        arenas.add(arena)
+        return arena
+    }
+
+    private fun writeObject(output: ObjectOutputStream) {
+        output.defaultWriteObject()
+        output.writeInt(arenas.size)
+        arenas.forEach { arena ->
+            val used = arena.duplicate()
+            used.flip()
+            val bytes = ByteArray(used.remaining())
+            used.get(bytes)
+            output.writeInt(bytes.size)
+            output.write(bytes)
+        }
+    }
+
+    private fun readObject(input: ObjectInputStream) {
+        input.defaultReadObject()
+        arenas = ArrayList()
+        files = ArrayList()
+        repeat(input.readInt()) {
+            val bytes = ByteArray(input.readInt())
+            input.readFully(bytes)
+            allocate(Math.max(arenaSize, bytes.size)).put(bytes)
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.Document
+import java.io.Serializable
+import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * Decides whether a probe is split into one task per segment and runs these tasks
+ * on a thread pool that is shared by all stores of the worker.
+ *
+ * A probe is split if the number of probing documents times the number of stored documents
+ * reaches the threshold, as this bounds the comparisons a probe may need.
+ */
+class ParallelProbing(
+    val enabled: Boolean,
+    val threshold: Long,
+    val threads: Int
+) : Serializable {
+
+    constructor(config: ClashConfig) : this(
+            config.storeParallelProbeEnabled,
+            config.storeParallelProbeThreshold,
+            config.storeParallelProbeThreads)
+
+    /**
+     * Runs task for each segment and returns all documents the tasks added to their output, in the order of the segments.
+     */
+    fun probe(
+        segments: List<Segment>,
+        probing: Int,
+        stored: Long,
+        task: (Segment, MutableList<Document>) -> Unit
+    ): List<Document> {
+        if (!enabled || segments.size < 2 || probing * stored < threshold) {
+            val result = ArrayList<Document>()
+            segments.forEach { task(it, result) }
+            return result
+        }
+        val futures = pool(threads).invokeAll(segments.map { segment ->
+            Callable<List<Document>> { ArrayList<Document>().also { task(segment, it) } }
+        })
+        val result = ArrayList<Document>()
+        futures.forEach { result.addAll(it.get()) }
+        return result
+    }
+
+    companion object {
+        @Volatile private var sharedPool: ForkJoinPool? = null
+
+        private fun pool(threads: Int): ForkJoinPool {
+            sharedPool?.let { return it }
+            synchronized(this) {
+                val pool = sharedPool ?: ForkJoinPool(if (threads > 0) threads else Runtime.getRuntime().availableProcessors())
+                sharedPool = pool
+                return pool
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.query.AttributeAccess
+import java.io.Serializable
+
+/**
+ * Caches the documents that segments hold for recently probed keys of their hash indexes.
+ *
+ * A hit neither consults the Bloom filter nor the index and does not rebuild documents from their rows,
+ * only the timestamps of the cached documents are compared with the probed range.
+ * Storing a document drops the cached bucket of its key in the segment and dropping a segment drops all of its buckets,
+ * so the cache never answers with an outdated bucket. Documents that expire within a segment are hidden
+ * by their timestamp or their row.
+ *
+ * The cache holds at most capacity buckets and may be read and updated by parallel probes.
+ */
+class ProbeCache(private val capacity: Int) : Serializable {
+    private val buckets = LeastRecentlyUsed<ProbeCacheKey, CachedBucket>(capacity) { heapBytes -= it.heapBytes }
+
+    /**
+     * The estimated number of bytes the cached documents occupy on the heap
+     */
+    @Volatile var heapBytes = 0L
+        private set
+
+    operator fun get(segmentId: Long, attributeAccesses: List<AttributeAccess>, key: String): CachedBucket? =
+            synchronized(buckets) { buckets[ProbeCacheKey(segmentId, attributeAccesses, key)] }
+
+    fun put(segmentId: Long, attributeAccesses: List<AttributeAccess>, key: String, bucket: CachedBucket) = synchronized(buckets) {
+        buckets.put(ProbeCacheKey(segmentId, attributeAccesses, key), bucket)?.let { heapBytes -= it.heapBytes }
+        heapBytes += bucket.heapBytes
+    }
+
+    /**
+     * Drops the cached bucket of key in the segment with segmentId.
+     */
+    fun invalidate(segmentId: Long, attributeAccesses: List<AttributeAccess>, key: String) = synchronized(buckets) {
+        buckets.remove(ProbeCacheKey(segmentId, attributeAccesses, key))?.let { heapBytes -= it.heapBytes }
+    }
+
+    /**
+     * Drops all cached buckets of the segment with segmentId.
+     */
+    fun invalidate(segmentId: Long) = synchronized(buckets) {
+        val iterator = buckets.entries.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            if (entry.key.segmentId == segmentId) {
+                heapBytes -= entry.value.heapBytes
+                iterator.remove()
+            }
+        }
+    }
+
+    fun clear() = synchronized(buckets) {
+        buckets.clear()
+        heapBytes = 0
+    }
+}
+
+/**
+ * The documents of an index bucket together with their timestamps and rows.
+ */
+class CachedBucket(
+    private val seqs: LongArray,
+    private val rows: IntArray,
+    private val documents: List<Document>
+) : Serializable {
+    val heapBytes = estimateBytes(documents) + seqs.size * 12L
+
+    /**
+     * @return the documents with a timestamp in [fromSeq, toSeq) that are not in a row before firstLiveRow
+     */
+    fun documents(fromSeq: Long, toSeq: Long, firstLiveRow: Int): List<Document> {
+        val result = ArrayList<Document>()
+        for (i in seqs.indices) {
+            if (rows[i] >= firstLiveRow && seqs[i] in fromSeq until toSeq) {
+                result.add(documents[i])
+            }
+        }
+        return result
+    }
+}
+
+private data class ProbeCacheKey(val segmentId: Long, val attributeAccesses: List<AttributeAccess>, val key: String) : Serializable
@@ -3,10 +3,11 @@ package de.unikl.dbis.clash.workers.stores
 import de.unikl.dbis.clash.ClashConfig
 import de.unikl.dbis.clash.documents.Document
 import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
-import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
-import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.WindowDefinition
+import de.unikl.dbis.clash.support.secondsToMillis
 import java.io.Serializable
-import java.util.SortedMap
+import java.util.ArrayDeque
 import java.util.TreeMap
 import org.slf4j.LoggerFactory
 
@@ -17,9 +18,9 @@ data class LaterProbe<T>(
     val documents: List<Document>,
     val predicates: Collection<BinaryPredicateEvaluation>,
     val resultTargets: Collection<T>
-)
+) : Serializable
 
-interface ProbeLogI<T> {
+interface ProbeLogI<T> : Serializable {
     fun restrict()
 
     fun put(
@@ -33,29 +34,115 @@ interface ProbeLogI<T> {
     fun size(): Int
 
     fun examine(documents: List<Document>, seq: Long): DelayedStoreJoinResult<T>
+
+    /**
+     * The estimated number of bytes the buffered probes occupy on the heap
+     */
+    val heapBytes: Long
 }
 
 // TODO T was edeg label
-class ProbeLog<T>(config: ClashConfig) : ProbeLogI<T>, Serializable {
+/**
+ * Buffers probes such that documents that are stored later but belong before the probe are still joined.
+ *
+ * Probes with an equality predicate are indexed by their key, so an arriving document is only joined with
+ * the probes it can match. Probes are dropped once they are older than the horizon or exceed the maximum size.
+ * Unless config.probeLogHorizon is set, the horizon is the time window of the store, as older probes
+ * cannot be joined with documents inside it anyway.
+ * If the store has a count window, only the probes of as many last probing documents as it holds are kept.
+ */
+class ProbeLog<T>(
+    config: ClashConfig,
+    window: WindowDefinition = WindowDefinition.infinite(),
+    countWindow: WindowDefinition = WindowDefinition.infinite()
+) : ProbeLogI<T>, Serializable {
     val probeLogMaxKeys = config.probeLogMaxKeys
-    private val buffer = TreeMap<Long, LaterProbe<T>>()
+    val probeLogHorizon = when {
+        config.probeLogHorizon > 0 -> config.probeLogHorizon
+        window.variant == WindowDefinition.Variant.TimeInS -> secondsToMillis(window.amount)
+        else -> 0L
+    }
+    val probeLogMaxDocuments = countLimitOf(window, countWindow)
+    private val buffer = TreeMap<Long, MutableList<BufferedProbe<T>>>()
+
+    // buffered probes in the order of their arrival, for trimming by creation time or count,
+    // only kept if one of these trims is active
+    private val arrivals = ArrayDeque<BufferedProbe<T>>()
+    private val tracksArrivals = probeLogHorizon > 0 || probeLogMaxDocuments > 0
+
+    // the probed documents by the attribute of the stored documents they have to equal
+    private val indexes: MutableMap<AttributeAccess, MutableMap<String, MutableList<IndexedProbeDocument<T>>>> = mutableMapOf()
+
+    // probes without an equality predicate, they are compared with each arriving document
+    private val unindexed = LinkedHashSet<BufferedProbe<T>>()
+    private val kernels = JoinKernelCache()
+    private var size = 0
+    private var numberOfDocuments = 0L
+    override var heapBytes = 0L
+        private set
+    private var latestCreationTime = java.lang.Long.MIN_VALUE
 
     fun clearUpto(seq: Long): Int {
-        val headMap = this.buffer.headMap(seq, true)
-        val result = headMap.size
-        headMap.clear()
+        var result = 0
+        while (buffer.isNotEmpty() && buffer.firstKey() <= seq) {
+            buffer.pollFirstEntry().value.forEach {
+                unregister(it)
+                result++
+            }
+        }
+        dropRemovedArrivals()
         return result
     }
 
     override fun restrict() {
-        val size = this.buffer.size
-        for (i in 1..(size - probeLogMaxKeys)) {
-            this.buffer.pollFirstEntry()
+        while (size > probeLogMaxKeys && buffer.isNotEmpty()) {
+            val oldest = buffer.firstEntry().value
+            remove(oldest.first())
+        }
+        dropRemovedArrivals()
+    }
+
+    /**
+     * Forgets the arrivals of probes that were already removed otherwise, as far as they lead the arrivals.
+     */
+    private fun dropRemovedArrivals() {
+        while (arrivals.isNotEmpty() && arrivals.peekFirst().removed) {
+            arrivals.pollFirst()
         }
     }
 
-    private fun subBuffer(fromSeq: Long, toSeq: Long): SortedMap<Long, LaterProbe<T>> {
-        return this.buffer.subMap(fromSeq, toSeq)
+    /**
+     * The number of probes remembered for trimming, including removed ones that were not forgotten yet
+     */
+    internal val numberOfArrivals: Int get() = arrivals.size
+
+    /**
+     * Removes the probes that arrived first as long as the remaining ones still hold the maximum number of documents.
+     */
+    private fun trimToCount() {
+        while (arrivals.isNotEmpty()) {
+            val oldest = arrivals.peekFirst()
+            if (!oldest.removed && numberOfDocuments - oldest.laterProbe.documents.size < probeLogMaxDocuments) {
+                return
+            }
+            arrivals.pollFirst()
+            if (!oldest.removed) {
+                remove(oldest)
+            }
+        }
+    }
+
+    /**
+     * Removes all probes whose creation time lies more than the horizon before the latest one.
+     */
+    private fun trim() {
+        while (arrivals.isNotEmpty() &&
+                (arrivals.peekFirst().removed || arrivals.peekFirst().laterProbe.creationTime < latestCreationTime - probeLogHorizon)) {
+            val bufferedProbe = arrivals.pollFirst()
+            if (!bufferedProbe.removed) {
+                remove(bufferedProbe)
+            }
+        }
     }
 
     override fun put(
@@ -66,14 +153,31 @@ class ProbeLog<T>(config: ClashConfig) : ProbeLogI<T>, Serializable {
         resultTargets: Collection<T>
     ) {
         val laterProbe = LaterProbe(seq, creationTime, documents, predicates, resultTargets)
-        this.buffer[seq] = laterProbe
+        val equiJoinKey = chooseEquiJoinKey(predicates)
+        val residualKernel = if (equiJoinKey == null) kernels.kernelFor(predicates) else kernels.kernelFor(predicates, equiJoinKey.evaluation)
+        val bufferedProbe = BufferedProbe(seq, laterProbe, equiJoinKey, kernels.kernelFor(predicates), residualKernel, estimateBytes(documents))
+        this.buffer.getOrPut(seq) { mutableListOf() }.add(bufferedProbe)
+        if (tracksArrivals) {
+            arrivals.addLast(bufferedProbe)
+        }
+        register(bufferedProbe)
+        size++
+        numberOfDocuments += documents.size
+        heapBytes += bufferedProbe.heapBytes
+
+        if (creationTime > latestCreationTime) {
+            latestCreationTime = creationTime
+        }
+        if (probeLogHorizon > 0)
+            trim()
         if (probeLogMaxKeys > 0)
             restrict()
-        // this.clearUpto(seq - 1000) // TODO this is a hack before: 1000
+        if (probeLogMaxDocuments > 0)
+            trimToCount()
     }
 
     override fun size(): Int {
-        return this.buffer.size
+        return size
     }
 
     /**
@@ -82,56 +186,105 @@ class ProbeLog<T>(config: ClashConfig) : ProbeLogI<T>, Serializable {
      */
     override fun examine(documents: List<Document>, seq: Long): DelayedStoreJoinResult<T> {
         val result = DelayedStoreJoinResult<T>(seq)
-
-        for (laterProbe in this.subBuffer(seq, java.lang.Long.MAX_VALUE).values) {
-            val joinResult = join(documents,
-                    laterProbe.documents,
-                    laterProbe.predicates)
-            if (joinResult.isEmpty()) {
-                continue
-            }
-            result.add(laterProbe.creationTime, joinResult, laterProbe.resultTargets)
+        if (size == 0) {
+            return result
         }
-        return result
-    }
+        val joinResults = LinkedHashMap<BufferedProbe<T>, MutableList<Document>>()
 
-    fun join(
-        probed: Collection<Document>,
-        stored: Collection<Document>,
-        predicates: Collection<BinaryPredicateEvaluation>
-    ): List<Document> {
-        val result = ArrayList<Document>()
-
-        for (probedDocument in probed) {
-            for (storedDocument in stored) {
-                var isJoinable = true
-                for (predicateEvaluation in predicates) {
-                    val (left, right) = when (predicateEvaluation) {
-                        is BinaryPredicateEvaluationLeftStored -> Pair(storedDocument, probedDocument)
-                        is BinaryPredicateEvaluationRightStored -> Pair(probedDocument, storedDocument)
-                        else -> throw RuntimeException("Predicate Evaluation was not of type BinaryPredicateEvaluation!")
+        for (storedDocument in documents) {
+            for ((attributeAccess, index) in indexes) {
+                val key = storedDocument[attributeAccess] ?: continue
+                val candidates = index[key] ?: continue
+                for (candidate in candidates) {
+                    val bufferedProbe = candidate.bufferedProbe
+                    if (bufferedProbe.seq < seq) {
+                        continue
                     }
-                    val predicate = predicateEvaluation.predicate
-                    if (!predicate.joinable(left, right)) {
-                        isJoinable = false
-                        break
+                    if (bufferedProbe.residualKernel.joinable(storedDocument, candidate.document)) {
+                        joinResults.getOrPut(bufferedProbe) { ArrayList() }.add(storedDocument.createJoint(candidate.document))
                     }
                 }
-                if (isJoinable) {
-                    result.add(probedDocument.createJoint(storedDocument))
+            }
+            for (bufferedProbe in unindexed) {
+                if (bufferedProbe.seq < seq) {
+                    continue
+                }
+                for (probedDocument in bufferedProbe.laterProbe.documents) {
+                    if (bufferedProbe.kernel.joinable(storedDocument, probedDocument)) {
+                        joinResults.getOrPut(bufferedProbe) { ArrayList() }.add(storedDocument.createJoint(probedDocument))
+                    }
                 }
             }
         }
-        LOG.debug("joinPredicateEvaluation {} probed -- {} stored <<< {} >>> {}", probed, stored, predicates, result.size)
 
+        joinResults.forEach { (bufferedProbe, joinResult) ->
+            result.add(bufferedProbe.laterProbe.creationTime, joinResult, bufferedProbe.laterProbe.resultTargets)
+        }
+        LOG.debug("examined {} stored documents at {} <<< {} >>>", documents.size, seq, joinResults.size)
         return result
     }
 
+    private fun register(bufferedProbe: BufferedProbe<T>) {
+        val equiJoinKey = bufferedProbe.equiJoinKey
+        if (equiJoinKey == null) {
+            unindexed.add(bufferedProbe)
+            return
+        }
+        val index = indexes.getOrPut(equiJoinKey.storedAttributeAccess) { mutableMapOf() }
+        bufferedProbe.laterProbe.documents.forEach { document ->
+            val key = document[equiJoinKey.probedAttributeAccess] ?: return@forEach
+            index.getOrPut(key) { mutableListOf() }.add(IndexedProbeDocument(bufferedProbe, document))
+        }
+    }
+
+    private fun unregister(bufferedProbe: BufferedProbe<T>) {
+        bufferedProbe.removed = true
+        size--
+        numberOfDocuments -= bufferedProbe.laterProbe.documents.size
+        heapBytes -= bufferedProbe.heapBytes
+        val equiJoinKey = bufferedProbe.equiJoinKey
+        if (equiJoinKey == null) {
+            unindexed.remove(bufferedProbe)
+            return
+        }
+        val index = indexes[equiJoinKey.storedAttributeAccess] ?: return
+        bufferedProbe.laterProbe.documents.forEach { document ->
+            val key = document[equiJoinKey.probedAttributeAccess] ?: return@forEach
+            val candidates = index[key] ?: return@forEach
+            candidates.removeIf { it.bufferedProbe === bufferedProbe }
+            if (candidates.isEmpty()) {
+                index.remove(key)
+            }
+        }
+    }
+
+    private fun remove(bufferedProbe: BufferedProbe<T>) {
+        val probes = buffer[bufferedProbe.seq] ?: return
+        probes.remove(bufferedProbe)
+        if (probes.isEmpty()) {
+            buffer.remove(bufferedProbe.seq)
+        }
+        unregister(bufferedProbe)
+    }
+
     companion object {
         private val LOG = LoggerFactory.getLogger(ProbeLog::class.java)
     }
 }
 
+private class BufferedProbe<T>(
+    val seq: Long,
+    val laterProbe: LaterProbe<T>,
+    val equiJoinKey: EquiJoinKey?,
+    val kernel: JoinKernel,
+    val residualKernel: JoinKernel,
+    val heapBytes: Long
+) : Serializable {
+    var removed = false
+}
+
+private class IndexedProbeDocument<T>(val bufferedProbe: BufferedProbe<T>, val document: Document) : Serializable
+
 class DelayedStoreJoinResult<T>(val seq: Long) {
     private val _inner = mutableListOf<InnerDelayedStoreJoinResult>()
 
@@ -170,5 +323,7 @@ class DisabledProbeLog<T> : ProbeLogI<T> {
 
     override fun size() = 0
 
+    override val heapBytes = 0L
+
     override fun examine(documents: List<Document>, seq: Long): DelayedStoreJoinResult<T> = emptyDelayedStoreJoinResult<T>()
 }
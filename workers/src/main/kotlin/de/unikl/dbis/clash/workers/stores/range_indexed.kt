@@ -0,0 +1,116 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.BinaryLessThan
+import de.unikl.dbis.clash.query.BinaryLessThanOrEqual
+import de.unikl.dbis.clash.query.WindowDefinition
+import java.io.Serializable
+
+/**
+ * How a stored value has to compare to the probed value.
+ */
+enum class Comparison {
+    LESS,
+    LESS_OR_EQUAL,
+    EQUAL,
+    GREATER_OR_EQUAL,
+    GREATER
+}
+
+/**
+ * A comparison predicate as seen from a store.
+ *
+ * For the predicate "x.a < y.b" evaluated at the x-store, stored documents qualify if their
+ * value of x.a is LESS than the value of y.b of the probing document.
+ * At the y-store, the same predicate requires the stored y.b to be GREATER than the probing x.a.
+ */
+data class RangeJoinKey(
+    val storedAttributeAccess: AttributeAccess,
+    val probedAttributeAccess: AttributeAccess,
+    val comparison: Comparison,
+    val evaluation: BinaryPredicateEvaluation
+) : Serializable
+
+/**
+ * Extracts all comparison and equality predicates of which it is known which side is stored.
+ */
+fun rangeJoinKeys(predicates: Collection<BinaryPredicateEvaluation>): List<RangeJoinKey> {
+    val equalities = equiJoinKeys(predicates).map {
+        RangeJoinKey(it.storedAttributeAccess, it.probedAttributeAccess, Comparison.EQUAL, it.evaluation)
+    }
+    val comparisons = predicates.mapNotNull { evaluation ->
+        val predicate = evaluation.predicate
+        val (left, right, inclusive) = when (predicate) {
+            is BinaryLessThan -> Triple(predicate.leftAttributeAccess, predicate.rightAttributeAccess, false)
+            is BinaryLessThanOrEqual -> Triple(predicate.leftAttributeAccess, predicate.rightAttributeAccess, true)
+            else -> return@mapNotNull null
+        }
+        when (evaluation) {
+            is BinaryPredicateEvaluationLeftStored ->
+                RangeJoinKey(left, right, if (inclusive) Comparison.LESS_OR_EQUAL else Comparison.LESS, evaluation)
+            is BinaryPredicateEvaluationRightStored ->
+                RangeJoinKey(right, left, if (inclusive) Comparison.GREATER_OR_EQUAL else Comparison.GREATER, evaluation)
+            else -> null
+        }
+    }
+    return equalities + comparisons
+}
+
+/**
+ * Chooses the predicate used for an index lookup. Equalities are preferred, as they select the fewest documents.
+ * If an attributeAccess is given, a key on that stored attribute is preferred.
+ */
+fun chooseRangeJoinKey(predicates: Collection<BinaryPredicateEvaluation>, attributeAccess: AttributeAccess? = null): RangeJoinKey? {
+    val keys = rangeJoinKeys(predicates)
+    return keys.firstOrNull { it.storedAttributeAccess == attributeAccess } ?: keys.firstOrNull()
+}
+
+/**
+ * Stores documents of a relation in sorted indexes, such that theta joins with <, <=, > and >=
+ * are answered by a range scan instead of comparing every stored document.
+ *
+ * Documents are evicted as soon as they left the window or the count window of the stored relation.
+ */
+class RangeIndexedStore<T>(
+    config: ClashConfig,
+    window: WindowDefinition = WindowDefinition.infinite(),
+    countWindow: WindowDefinition = WindowDefinition.infinite()
+) : SegmentedStore<T>(config, window, countWindow) {
+
+    /**
+     * If the predicates contain a comparison or equality, the sorted index of the stored attribute
+     * is scanned for the qualifying key range and only these documents are joined with the remaining predicates.
+     * Otherwise, every stored document inside the range is compared with every probing document.
+     */
+    override fun probe(
+        segments: List<Segment>,
+        documents: List<Document>,
+        start: Long,
+        ats: Long,
+        predicates: Collection<BinaryPredicateEvaluation>,
+        attributeAccess: AttributeAccess?
+    ): List<Document> {
+        val rangeJoinKey = chooseRangeJoinKey(predicates, attributeAccess)
+            ?: return scan(segments, documents, start, ats, kernels.kernelFor(predicates))
+
+        if (!prefix.hasSortedIndex(rangeJoinKey.storedAttributeAccess)) {
+            prefix.addSortedIndex(rangeJoinKey.storedAttributeAccess)
+        }
+        val residualKernel = kernels.kernelFor(predicates, rangeJoinKey.evaluation)
+        return parallelProbing.probe(segments, documents.size, prefix.numberOfDocuments) { segment, output ->
+            for (probedDocument in documents) {
+                val key = probedDocument[rangeJoinKey.probedAttributeAccess] ?: continue
+                val candidates = segment.get(rangeJoinKey.storedAttributeAccess, rangeJoinKey.comparison, key, start, ats)
+                if (candidates.isEmpty()) {
+                    continue
+                }
+                residualKernel.join(probedDocument, candidates, output)
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.WindowDefinition
+import de.unikl.dbis.clash.support.secondsToMillis
+import java.io.Serializable
+import java.util.concurrent.atomic.AtomicLong
+import org.slf4j.LoggerFactory
+
+/**
+ * A store that keeps the documents of a relation in a SegmentedPrefix.
+ *
+ * It stores documents, buffers probes in the probe log, evicts documents as soon as they left the window
+ * or the count window of the stored relation, and checkpoints and restores all of this.
+ * Subclasses only decide how the overlapping segments are searched for the partners of probing documents.
+ */
+abstract class SegmentedStore<T>(
+    val config: ClashConfig,
+    val window: WindowDefinition,
+    val countWindow: WindowDefinition = WindowDefinition.infinite()
+) : ActualStore<T>, Serializable {
+    val prefix = segmentedPrefixFor(config, window)
+    private val countLimit = countLimitOf(window, countWindow)
+    var probeLog: ProbeLogI<T> = newProbeLog()
+        private set
+    protected val kernels = JoinKernelCache()
+    protected val parallelProbing = ParallelProbing(config)
+    private var timeWindowTracker = newTimeWindowTracker()
+
+    override fun store(ats: Long, documents: List<Document>): DelayedStoreJoinResult<T> =
+            store(ats, System.currentTimeMillis(), documents)
+
+    override fun store(ats: Long, lts: Long, documents: List<Document>): DelayedStoreJoinResult<T> {
+        prefix.put(ats, lts, documents)
+        timeWindowTracker?.stored(ats, lts)
+        evict()
+        return probeLog.examine(documents, ats)
+    }
+
+    override fun probe(ats: Long, lts: Long, documents: List<Document>, predicates: Collection<BinaryPredicateEvaluation>, targets: Collection<T>): List<Document> =
+            probeFrom(ats, lts, documents, java.lang.Long.MIN_VALUE, predicates, targets)
+
+    override fun probe(ats: Long, lts: Long, documents: List<Document>, windowSize: Long, predicates: Collection<BinaryPredicateEvaluation>, targets: Collection<T>): List<Document> =
+            probeFrom(ats, lts, documents, ats - windowSize, predicates, targets)
+
+    override fun probe(ats: Long, lts: Long, documents: List<Document>, attributeAccess: AttributeAccess, predicates: Collection<BinaryPredicateEvaluation>, targets: Collection<T>): List<Document> =
+            probeFrom(ats, lts, documents, java.lang.Long.MIN_VALUE, predicates, targets, attributeAccess)
+
+    override fun probe(ats: Long, lts: Long, documents: List<Document>, windowSize: Long, attributeAccess: AttributeAccess, predicates: Collection<BinaryPredicateEvaluation>, targets: Collection<T>): List<Document> =
+            probeFrom(ats, lts, documents, ats - windowSize, predicates, targets, attributeAccess)
+
+    private fun probeFrom(
+        ats: Long,
+        lts: Long,
+        documents: List<Document>,
+        start: Long,
+        predicates: Collection<BinaryPredicateEvaluation>,
+        targets: Collection<T>,
+        attributeAccess: AttributeAccess? = null
+    ): List<Document> {
+        timeWindowTracker?.observe(lts)
+        evict()
+        probeLog.put(ats, lts, documents, predicates, targets)
+        val result = probe(prefix.overlapping(start, ats), documents, start, ats, predicates, attributeAccess)
+        LOG.debug("probed {} documents <<< {} >>> {}", documents.size, predicates, result.size)
+        return result
+    }
+
+    /**
+     * Joins documents with the documents of segments that arrived in [start, ats].
+     *
+     * @param attributeAccess the stored attribute an index lookup should prefer, if any
+     */
+    protected abstract fun probe(
+        segments: List<Segment>,
+        documents: List<Document>,
+        start: Long,
+        ats: Long,
+        predicates: Collection<BinaryPredicateEvaluation>,
+        attributeAccess: AttributeAccess?
+    ): List<Document>
+
+    /**
+     * Compares every stored document of segments inside [start, ats] with every probing document.
+     */
+    protected fun scan(segments: List<Segment>, documents: List<Document>, start: Long, ats: Long, kernel: JoinKernel): List<Document> =
+            parallelProbing.probe(segments, documents.size, prefix.numberOfDocuments) { segment, output ->
+                kernel.join(documents, segment.documents(start, ats), output)
+            }
+
+    /**
+     * Joins documents with the buckets of their key in the hash index over the stored attributes of joinKey
+     * and checks the remaining predicates.
+     * Segments whose Bloom filter rules out the key are skipped, probes that no segment may answer end right away.
+     * Buckets of hot keys are taken from the probe cache of the prefix without a filter or index lookup.
+     * All of this is counted in statistics, and the number of documents the lookups selected in selected.
+     */
+    protected fun hashProbe(
+        segments: List<Segment>,
+        documents: List<Document>,
+        start: Long,
+        ats: Long,
+        joinKey: CompositeJoinKey,
+        predicates: Collection<BinaryPredicateEvaluation>,
+        statistics: ProbeStatistics,
+        selected: AtomicLong? = null
+    ): List<Document> {
+        val storedAttributeAccesses = joinKey.storedAttributeAccesses
+        if (!prefix.hasIndex(storedAttributeAccesses)) {
+            prefix.addIndex(storedAttributeAccesses)
+        }
+        val keys = documents.map { joinKey.probedKey(it) }
+        if (segments.none { segment -> keys.any { it != null && segment.mightContain(storedAttributeAccesses, it) } }) {
+            statistics.skippedProbes.incrementAndGet()
+            return listOf()
+        }
+        val residualKernel = kernels.kernelFor(predicates, joinKey.evaluations)
+        return parallelProbing.probe(segments, documents.size, prefix.numberOfDocuments) { segment, output ->
+            for ((i, probedDocument) in documents.withIndex()) {
+                val key = keys[i] ?: continue
+                val cached = segment.getCached(storedAttributeAccesses, key, start, ats)
+                if (cached != null) {
+                    statistics.cacheHits.incrementAndGet()
+                    selected?.addAndGet(cached.size.toLong())
+                    residualKernel.join(probedDocument, cached, output)
+                    continue
+                }
+                if (prefix.probeCacheEnabled) {
+                    statistics.cacheMisses.incrementAndGet()
+                }
+                if (!segment.mightContain(storedAttributeAccesses, key)) {
+                    statistics.skippedSegmentLookups.incrementAndGet()
+                    continue
+                }
+                statistics.filterPasses.incrementAndGet()
+                val bucket = segment.get(storedAttributeAccesses, key, start, ats)
+                if (bucket.isEmpty()) {
+                    statistics.filterFalsePositives.incrementAndGet()
+                    continue
+                }
+                selected?.addAndGet(bucket.size.toLong())
+                residualKernel.join(probedDocument, bucket, output)
+            }
+        }
+    }
+
+    override fun free(ats: Long): Int = prefix.evictBefore(ats)
+
+    override val heapBytes: Long
+        get() = prefix.heapBytes + probeLog.heapBytes
+
+    override fun snapshot(): CheckpointSnapshot = prefix.snapshot(StoreState(probeLog, timeWindowTracker))
+
+    override fun restore(checkpoints: Checkpoints): Boolean {
+        @Suppress("UNCHECKED_CAST")
+        val state = prefix.restore(checkpoints) as StoreState<T>? ?: return false
+        probeLog = state.probeLog
+        timeWindowTracker = state.timeWindowTracker
+        return true
+    }
+
+    override fun reset() {
+        prefix.clear()
+        probeLog = newProbeLog()
+        timeWindowTracker = newTimeWindowTracker()
+    }
+
+    private fun newProbeLog(): ProbeLogI<T> = if (config.probeLogEnabled) ProbeLog(config, window, countWindow) else DisabledProbeLog()
+
+    private fun newTimeWindowTracker() = if (window.variant == WindowDefinition.Variant.TimeInS)
+        TimeWindowTracker(secondsToMillis(window.amount)) else null
+
+    /**
+     * Removes all documents that left the window of this store.
+     */
+    private fun evict() {
+        timeWindowTracker?.expiredBefore()?.let { free(it) }
+        if (countLimit > 0) {
+            prefix.evictToCount(countLimit)
+        }
+    }
+
+    companion object {
+        private val LOG = LoggerFactory.getLogger(SegmentedStore::class.java)
+    }
+}
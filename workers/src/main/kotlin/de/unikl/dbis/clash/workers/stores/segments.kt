@@ -0,0 +1,799 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.IndexOrder
+import de.unikl.dbis.clash.query.ValueOrder
+import de.unikl.dbis.clash.query.WindowDefinition
+import de.unikl.dbis.clash.support.secondsToMillis
+import java.io.ObjectOutputStream
+import java.io.Serializable
+import java.util.ArrayDeque
+import java.util.NavigableMap
+import java.util.TreeMap
+
+/**
+ * Creates a prefix whose segments divide the window into config.storeSegmentsPerWindow parts.
+ * Relations without a window are cut into segments of config.storeSegmentSize documents.
+ * The segments keep their rows in the backend configured by config.storeBackend
+ * and are spilled to disk as configured by config.storeMemoryBudget.
+ * Lookups of hot keys are cached as configured by config.storeProbeCacheSize.
+ */
+fun segmentedPrefixFor(config: ClashConfig, window: WindowDefinition): SegmentedPrefix {
+    val segments = Math.max(1L, config.storeSegmentsPerWindow)
+    val rowStorage = RowStorage.fromConfig(config)
+    val bloomFilterFpp = config.storeBloomFilterFpp
+    val spillPolicy = SpillPolicy.fromConfig(config)
+    val probeCacheSize = config.storeProbeCacheSize
+    return when (window.variant) {
+        WindowDefinition.Variant.TimeInS -> SegmentedPrefix(
+                config.storeSegmentSize,
+                Math.max(1L, secondsToMillis(window.amount) / segments),
+                rowStorage,
+                bloomFilterFpp,
+                spillPolicy,
+                probeCacheSize)
+        WindowDefinition.Variant.Count -> SegmentedPrefix(
+                Math.max(1L, Math.min(config.storeSegmentSize.toLong(), window.amount / segments)).toInt(),
+                Long.MAX_VALUE,
+                rowStorage,
+                bloomFilterFpp,
+                spillPolicy,
+                probeCacheSize)
+        WindowDefinition.Variant.None -> SegmentedPrefix(
+                config.storeSegmentSize,
+                Long.MAX_VALUE,
+                rowStorage,
+                bloomFilterFpp,
+                spillPolicy,
+                probeCacheSize)
+    }
+}
+
+/**
+ * The SegmentedPrefix is responsible for storing the prefix of a relation.
+ *
+ * Documents are appended to the newest segment of a ring of segments. A new segment is started once
+ * the newest one holds segmentCapacity documents or spans more than segmentMillis of creation time.
+ * Eviction drops whole segments; expired documents of a segment that still holds live documents
+ * are hidden behind the watermark of that segment until it is dropped.
+ * Count windows evict the oldest documents by their arrival instead, see evictToCount.
+ *
+ * If the segments outgrow the memory budget of the spill policy, the oldest ones except the newest
+ * are written to disk. Lookups read spilled segments like all others, only slower.
+ *
+ * Checkpoints are incremental: all segments but the newest no longer receive documents,
+ * so each of them is written only once.
+ *
+ * If probeCacheSize is positive, the segments share a ProbeCache of that many buckets for their hash indexes.
+ */
+class SegmentedPrefix(
+    val segmentCapacity: Int,
+    val segmentMillis: Long = Long.MAX_VALUE,
+    val rowStorage: RowStorage = RowStorage(),
+    val bloomFilterFpp: Double = 0.0,
+    val spillPolicy: SpillPolicy = SpillPolicy(),
+    val probeCacheSize: Int = 0
+) : Serializable {
+    private val segments = ArrayDeque<Segment>()
+    private val pageCache = PageCache(spillPolicy.pageCacheSize)
+    private val probeCache = if (probeCacheSize > 0) ProbeCache(probeCacheSize) else null
+    private var nextSegmentId = 0L
+
+    init {
+        if (spillPolicy.enabled) {
+            // deletes the files that ended workers left in the spill directory
+            StoreFiles.claim(spillPolicy.directory)
+        }
+    }
+
+    // the indexed attribute combinations and whether their index is sorted
+    private val indexedAttributes: MutableMap<List<AttributeAccess>, Boolean> = mutableMapOf()
+    private val bandIndexes: MutableSet<BandIndexDefinition> = mutableSetOf()
+
+    /**
+     * The number of documents currently stored
+     */
+    var numberOfDocuments = 0L
+        private set
+
+    val numberOfSegments: Int
+        get() = segments.size
+
+    val numberOfSpilledSegments: Int
+        get() = segments.count { it.spilled }
+
+    val probeCacheEnabled: Boolean
+        get() = probeCache != null
+
+    /**
+     * The estimated number of bytes the segments and the probe cache occupy on the heap
+     */
+    val heapBytes: Long
+        get() = segmentBytes + (probeCache?.heapBytes ?: 0)
+
+    private val segmentBytes: Long
+        get() {
+            var result = 0L
+            segments.forEach { result += it.heapBytes }
+            return result
+        }
+
+    fun put(seq: Long, lts: Long, documents: List<Document>) {
+        var segment = segments.peekLast()
+        if (segment == null ||
+                segment.size >= segmentCapacity ||
+                lts - segment.firstLts >= segmentMillis ||
+                seq < segment.evictedBefore) {
+            segment = Segment(lts, rowStorage.create(), segmentCapacity, bloomFilterFpp, nextSegmentId++)
+            segment.attach(pageCache, probeCache)
+            indexedAttributes.forEach { (attributeAccesses, sorted) -> segment.addIndex(attributeAccesses, sorted) }
+            bandIndexes.forEach { segment.addBandIndex(it) }
+            segments.addLast(segment)
+        }
+        segment.add(seq, documents)
+        numberOfDocuments += documents.size
+        if (spillPolicy.enabled) {
+            spill()
+        }
+    }
+
+    /**
+     * Writes a checkpoint of all segments and indexes together with state, the remaining state of the store.
+     */
+    fun checkpoint(checkpoints: Checkpoints, state: Serializable?) = snapshot(state).writeTo(checkpoints)
+
+    /**
+     * Takes a snapshot for a checkpoint of all segments and indexes along with the state of the store,
+     * which can be written by another thread, see CheckpointSnapshot.
+     */
+    fun snapshot(state: Serializable?): CheckpointSnapshot {
+        val newest = segments.peekLast()
+        val sealed = segments.filter { it !== newest }
+        return CheckpointSnapshot(sealed, CheckpointManifest(
+                sealed.map { it.id },
+                sealed.map { it.evictedBefore },
+                sealed.map { it.firstLiveRow },
+                newest,
+                HashMap(indexedAttributes),
+                HashSet(bandIndexes),
+                nextSegmentId,
+                state))
+    }
+
+    /**
+     * Replaces all segments and indexes by those of the latest checkpoint.
+     *
+     * @return the state of the store written with the checkpoint, or null if there is no checkpoint
+     */
+    fun restore(checkpoints: Checkpoints): Serializable? {
+        val manifest = checkpoints.readManifest() ?: return null
+        clear()
+        manifest.segmentIds.forEachIndexed { i, id ->
+            val segment = checkpoints.readSegment(id)
+            segment.evictBefore(manifest.watermarks[i])
+            segment.evictRowsBefore(manifest.firstLiveRows[i])
+            segments.addLast(segment)
+        }
+        manifest.newest?.let { segments.addLast(it) }
+        indexedAttributes.putAll(manifest.indexedAttributes)
+        bandIndexes.addAll(manifest.bandIndexes)
+        segments.forEach { segment ->
+            segment.attach(pageCache, probeCache)
+            // indexes added after a segment was written are built again
+            indexedAttributes.forEach { (attributeAccesses, sorted) ->
+                if (!segment.hasIndex(attributeAccesses)) {
+                    segment.addIndex(attributeAccesses, sorted)
+                }
+            }
+            bandIndexes.forEach { if (!segment.hasBandIndex(it)) segment.addBandIndex(it) }
+            numberOfDocuments += segment.liveSize
+        }
+        nextSegmentId = manifest.nextSegmentId
+        return manifest.state
+    }
+
+    /**
+     * Removes all segments and indexes.
+     */
+    fun clear() {
+        segments.forEach { it.release() }
+        segments.clear()
+        indexedAttributes.clear()
+        bandIndexes.clear()
+        probeCache?.clear()
+        numberOfDocuments = 0
+    }
+
+    /**
+     * Spills the oldest segments until the heap usage fits the memory budget.
+     * The newest segment is never spilled, as documents are still appended to it.
+     */
+    private fun spill() {
+        var heapBytes = segmentBytes
+        val iterator = segments.iterator()
+        while (heapBytes > spillPolicy.memoryBudget && iterator.hasNext()) {
+            val segment = iterator.next()
+            if (segment === segments.peekLast()) {
+                return
+            }
+            if (!segment.spilled) {
+                val before = segment.heapBytes
+                segment.spill(spillPolicy.directory, pageCache)
+                heapBytes -= before - segment.heapBytes
+            }
+        }
+    }
+
+    /**
+     * @return all documents with a timestamp in [fromSeq, toSeq)
+     */
+    fun get(fromSeq: Long, toSeq: Long): List<Document> {
+        val result = ArrayList<Document>()
+        overlapping(fromSeq, toSeq).forEach { result.addAll(it.documents(fromSeq, toSeq)) }
+        return result
+    }
+
+    /**
+     * @return all documents with the value key for attributeAccess and a timestamp in [fromSeq, toSeq)
+     */
+    fun get(attributeAccess: AttributeAccess, key: String, fromSeq: Long, toSeq: Long): List<Document> =
+            get(listOf(attributeAccess), key, fromSeq, toSeq)
+
+    /**
+     * @return all documents with the composite key for attributeAccesses and a timestamp in [fromSeq, toSeq)
+     */
+    fun get(attributeAccesses: List<AttributeAccess>, key: String, fromSeq: Long, toSeq: Long): List<Document> {
+        val result = ArrayList<Document>()
+        overlapping(fromSeq, toSeq).forEach { result.addAll(it.get(attributeAccesses, key, fromSeq, toSeq)) }
+        return result
+    }
+
+    /**
+     * @return all documents whose value for attributeAccess compares to key as given by comparison
+     * and that have a timestamp in [fromSeq, toSeq)
+     */
+    fun get(attributeAccess: AttributeAccess, comparison: Comparison, key: String, fromSeq: Long, toSeq: Long): List<Document> {
+        val result = ArrayList<Document>()
+        overlapping(fromSeq, toSeq).forEach { result.addAll(it.get(attributeAccess, comparison, key, fromSeq, toSeq)) }
+        return result
+    }
+
+    /**
+     * @return all documents with the key for the equality attributes of definition, a value for its numeric attribute
+     * in [lower, upper] and a timestamp in [fromSeq, toSeq)
+     */
+    fun get(definition: BandIndexDefinition, key: String, lower: Double, upper: Double, fromSeq: Long, toSeq: Long): List<Document> {
+        val result = ArrayList<Document>()
+        overlapping(fromSeq, toSeq).forEach { result.addAll(it.get(definition, key, lower, upper, fromSeq, toSeq)) }
+        return result
+    }
+
+    /**
+     * @return the segments that may hold live documents with a timestamp in [fromSeq, toSeq)
+     */
+    fun overlapping(fromSeq: Long, toSeq: Long): List<Segment> = segments.filter { it.overlaps(fromSeq, toSeq) }
+
+    fun hasIndex(attributeAccess: AttributeAccess): Boolean = hasIndex(listOf(attributeAccess))
+
+    fun hasIndex(attributeAccesses: List<AttributeAccess>): Boolean = indexedAttributes.containsKey(attributeAccesses)
+
+    fun hasSortedIndex(attributeAccess: AttributeAccess): Boolean = indexedAttributes[listOf(attributeAccess)] == true
+
+    /**
+     * Adds a secondary index for attributeAccess. Documents that are already stored are indexed as well.
+     */
+    fun addIndex(attributeAccess: AttributeAccess) = addIndex(listOf(attributeAccess))
+
+    /**
+     * Adds a composite index over the combined values of attributeAccesses, see compositeKey.
+     * Documents that are already stored are indexed as well.
+     */
+    fun addIndex(attributeAccesses: List<AttributeAccess>) = addIndex(attributeAccesses, false)
+
+    /**
+     * Adds a secondary index for attributeAccess that keeps its keys sorted,
+     * such that it can additionally answer range lookups.
+     */
+    fun addSortedIndex(attributeAccess: AttributeAccess) = addIndex(listOf(attributeAccess), true)
+
+    private fun addIndex(attributeAccesses: List<AttributeAccess>, sorted: Boolean) {
+        indexedAttributes[attributeAccesses] = sorted
+        segments.forEach { it.addIndex(attributeAccesses, sorted) }
+    }
+
+    fun hasBandIndex(definition: BandIndexDefinition): Boolean = bandIndexes.contains(definition)
+
+    /**
+     * Adds a band index as given by definition. Documents that are already stored are indexed as well.
+     */
+    fun addBandIndex(definition: BandIndexDefinition) {
+        bandIndexes.add(definition)
+        segments.forEach { it.addBandIndex(definition) }
+    }
+
+    /**
+     * Removes all secondary indexes, they are no longer maintained for new documents.
+     */
+    fun dropIndexes() {
+        indexedAttributes.clear()
+        bandIndexes.clear()
+        segments.forEach { it.dropIndexes() }
+        probeCache?.clear()
+    }
+
+    /**
+     * Removes all documents with a timestamp smaller than seq. Segments that only hold such documents
+     * are dropped as a whole, so the work does not depend on the number of evicted documents.
+     *
+     * @return the number of removed documents
+     */
+    fun evictBefore(seq: Long): Int {
+        var evicted = 0
+        val iterator = segments.iterator()
+        while (iterator.hasNext()) {
+            val segment = iterator.next()
+            if (segment.maxSeq < seq) {
+                evicted += segment.liveSize
+                segment.release()
+                iterator.remove()
+            } else {
+                evicted += segment.evictBefore(seq)
+            }
+        }
+        numberOfDocuments -= evicted
+        return evicted
+    }
+
+    /**
+     * Removes the documents that arrived first until at most count documents remain.
+     * Each removed document costs constant time: the oldest segment is dropped once all of its documents are removed.
+     *
+     * @return the number of removed documents
+     */
+    fun evictToCount(count: Long): Int {
+        var surplus = numberOfDocuments - count
+        var evicted = 0
+        while (surplus > 0 && segments.isNotEmpty()) {
+            val oldest = segments.peekFirst()
+            val live = oldest.liveSize
+            if (live <= surplus) {
+                oldest.release()
+                segments.pollFirst()
+                evicted += live
+                surplus -= live
+            } else {
+                evicted += oldest.evictOldest(surplus.toInt())
+                surplus = 0
+            }
+        }
+        numberOfDocuments -= evicted
+        return evicted
+    }
+}
+
+/**
+ * A segment holds the documents stored during a part of the window together with their indexes.
+ * Segments are never cleaned up partially, they are dropped once all of their documents expired.
+ *
+ * Each stored document is kept as one row of the segment's Rows; Documents are only rebuilt for rows that are returned.
+ * The indexes map keys to row numbers and always stay on the heap, also if the rows are spilled. An index covers one attribute
+ * or, as a composite index, the combination of several attributes.
+ * If bloomFilterFpp is positive, each index is accompanied by a Bloom filter of its keys,
+ * sized for expectedSize documents.
+ * Lookups in hash indexes go through the probe cache of the prefix, if it has one.
+ *
+ * Documents expire either by their timestamp, see evictBefore, or by their arrival, see evictOldest.
+ * Both ways may be combined, a document is live as long as it expired in neither way.
+ */
+class Segment(
+    val firstLts: Long,
+    private var rows: Rows = ColumnarRows(),
+    private val expectedSize: Int = 0,
+    private val bloomFilterFpp: Double = 0.0,
+    val id: Long = 0
+) : Serializable {
+    // the timestamp of each row
+    private val seqs = LongList()
+    // the same timestamps in ascending order
+    private val sortedSeqs = LongList()
+    private val indeces: MutableMap<List<AttributeAccess>, InvertedIndex> = mutableMapOf()
+    private val filters: MutableMap<List<AttributeAccess>, BloomFilter> = mutableMapOf()
+    private val bandIndeces: MutableMap<BandIndexDefinition, BandIndex> = mutableMapOf()
+    @Transient private var probeCache: ProbeCache? = null
+    @Transient private var released = false
+
+    // the estimated heap usage of the indexes
+    private var indexBytes = 0L
+
+    var minSeq = java.lang.Long.MAX_VALUE
+        private set
+    var maxSeq = java.lang.Long.MIN_VALUE
+        private set
+
+    /**
+     * Documents with a smaller timestamp are expired and only kept until the segment is dropped
+     */
+    var evictedBefore = java.lang.Long.MIN_VALUE
+        private set
+
+    /**
+     * Rows before this one expired by their arrival
+     */
+    var firstLiveRow = 0
+        private set
+
+    // the number of rows before firstLiveRow that did not expire by their timestamp
+    private var hiddenAboveWatermark = 0
+
+    val size: Int
+        get() = seqs.size
+
+    val spilled: Boolean
+        get() = rows is SpilledRows
+
+    /**
+     * The estimated number of bytes the segment occupies on the heap
+     */
+    val heapBytes: Long
+        get() {
+            var result = indexBytes + size * SEQ_BYTES + rows.heapBytes
+            filters.values.forEach { result += it.heapBytes }
+            return result
+        }
+
+    /**
+     * The number of documents that did not expire yet
+     */
+    val liveSize: Int
+        get() = sortedSeqs.size - sortedSeqs.firstIndexFrom(evictedBefore) - hiddenAboveWatermark
+
+    fun add(seq: Long, documents: List<Document>) {
+        documents.forEach { document ->
+            val row = seqs.size
+            seqs.add(seq)
+            sortedSeqs.insertSorted(seq)
+            rows.add(document)
+            indeces.forEach { (attributeAccesses, invertedIndex) -> index(invertedIndex, attributeAccesses, row) }
+            bandIndeces.forEach { (definition, bandIndex) -> index(bandIndex, definition, row) }
+        }
+        minSeq = Math.min(minSeq, seq)
+        maxSeq = Math.max(maxSeq, seq)
+    }
+
+    /**
+     * @return whether the segment may hold live documents with a timestamp in [fromSeq, toSeq)
+     */
+    fun overlaps(fromSeq: Long, toSeq: Long): Boolean =
+            size > firstLiveRow && maxSeq >= Math.max(fromSeq, evictedBefore) && minSeq < toSeq
+
+    fun documents(fromSeq: Long, toSeq: Long): List<Document> {
+        if (!overlaps(fromSeq, toSeq)) {
+            return listOf()
+        }
+        val from = Math.max(fromSeq, evictedBefore)
+        val result = ArrayList<Document>()
+        for (row in firstLiveRow until size) {
+            if (seqs[row] in from until toSeq) {
+                result.add(rows.document(row))
+            }
+        }
+        return result
+    }
+
+    fun get(attributeAccess: AttributeAccess, key: String, fromSeq: Long, toSeq: Long): List<Document> =
+            get(listOf(attributeAccess), key, fromSeq, toSeq)
+
+    fun get(attributeAccesses: List<AttributeAccess>, key: String, fromSeq: Long, toSeq: Long): List<Document> {
+        if (!overlaps(fromSeq, toSeq)) {
+            return listOf()
+        }
+        val index = indeces[attributeAccesses]!!
+        val from = Math.max(fromSeq, evictedBefore)
+        val probeCache = this.probeCache
+        if (probeCache != null) {
+            val cached = cache(probeCache, attributeAccesses, key, index[key])
+            return cached.documents(from, toSeq, firstLiveRow)
+        }
+        val result = ArrayList<Document>()
+        index[key]?.let { addDocuments(it, from, toSeq, result) }
+        return result
+    }
+
+    /**
+     * @return the documents with the composite key for attributeAccesses and a timestamp in [fromSeq, toSeq)
+     * if the probe cache holds them, otherwise null
+     */
+    fun getCached(attributeAccesses: List<AttributeAccess>, key: String, fromSeq: Long, toSeq: Long): List<Document>? {
+        val cached = probeCache?.get(id, attributeAccesses, key) ?: return null
+        if (!overlaps(fromSeq, toSeq)) {
+            return listOf()
+        }
+        return cached.documents(Math.max(fromSeq, evictedBefore), toSeq, firstLiveRow)
+    }
+
+    fun get(attributeAccess: AttributeAccess, comparison: Comparison, key: String, fromSeq: Long, toSeq: Long): List<Document> {
+        if (!overlaps(fromSeq, toSeq)) {
+            return listOf()
+        }
+        val from = Math.max(fromSeq, evictedBefore)
+        val index = indeces[listOf(attributeAccess)] as NavigableMap<String, IndexBucket>
+        val range = when (comparison) {
+            Comparison.LESS -> index.headMap(firstEqualKey(index, key), false)
+            Comparison.LESS_OR_EQUAL -> index.headMap(lastEqualKey(index, key), true)
+            Comparison.EQUAL -> index.subMap(key, true, key, true)
+            Comparison.GREATER_OR_EQUAL -> index.tailMap(firstEqualKey(index, key), true)
+            Comparison.GREATER -> index.tailMap(lastEqualKey(index, key), false)
+        }
+        val result = ArrayList<Document>()
+        range.values.forEach { addDocuments(it, from, toSeq, result) }
+        return result
+    }
+
+    /**
+     * @return the smallest key of index in IndexOrder that is equal to key in ValueOrder, or key if there is none
+     */
+    private fun firstEqualKey(index: NavigableMap<String, IndexBucket>, key: String): String {
+        var first = key
+        for (candidate in index.headMap(key, false).descendingKeySet()) {
+            if (ValueOrder.compare(candidate, key) != 0) {
+                break
+            }
+            first = candidate
+        }
+        return first
+    }
+
+    /**
+     * @return the largest key of index in IndexOrder that is equal to key in ValueOrder, or key if there is none
+     */
+    private fun lastEqualKey(index: NavigableMap<String, IndexBucket>, key: String): String {
+        var last = key
+        for (candidate in index.tailMap(key, false).keys) {
+            if (ValueOrder.compare(candidate, key) != 0) {
+                break
+            }
+            last = candidate
+        }
+        return last
+    }
+
+    fun get(definition: BandIndexDefinition, key: String, lower: Double, upper: Double, fromSeq: Long, toSeq: Long): List<Document> {
+        if (!overlaps(fromSeq, toSeq)) {
+            return listOf()
+        }
+        val from = Math.max(fromSeq, evictedBefore)
+        val result = ArrayList<Document>()
+        bandIndeces[definition]!!.range(key, lower, upper).forEach { addDocuments(it, from, toSeq, result) }
+        return result
+    }
+
+    /**
+     * @return false if no document of this segment has the value key for the indexed attributeAccess
+     */
+    fun mightContain(attributeAccess: AttributeAccess, key: String): Boolean = mightContain(listOf(attributeAccess), key)
+
+    /**
+     * @return false if no document of this segment has the composite key for the indexed attributeAccesses
+     */
+    fun mightContain(attributeAccesses: List<AttributeAccess>, key: String): Boolean =
+            filters[attributeAccesses]?.mightContain(key) ?: true
+
+    fun addIndex(attributeAccess: AttributeAccess, sorted: Boolean) = addIndex(listOf(attributeAccess), sorted)
+
+    fun hasIndex(attributeAccesses: List<AttributeAccess>): Boolean = indeces.containsKey(attributeAccesses)
+
+    /**
+     * Adds an index for attributeAccesses. Sorted indexes order their keys in IndexOrder, such that each text
+     * has its own bucket for equality lookups. Range lookups include all keys equal in ValueOrder to the bound,
+     * like the comparisons of the join kernels.
+     */
+    @Synchronized
+    fun addIndex(attributeAccesses: List<AttributeAccess>, sorted: Boolean) {
+        val invertedIndex: InvertedIndex = if (sorted) TreeMap(IndexOrder) else mutableMapOf()
+        if (bloomFilterFpp > 0) {
+            filters[attributeAccesses] = BloomFilter(Math.max(expectedSize, size), bloomFilterFpp)
+        }
+        for (row in 0 until size) {
+            index(invertedIndex, attributeAccesses, row)
+        }
+        indeces[attributeAccesses] = invertedIndex
+    }
+
+    fun hasBandIndex(definition: BandIndexDefinition): Boolean = bandIndeces.containsKey(definition)
+
+    @Synchronized
+    fun addBandIndex(definition: BandIndexDefinition) {
+        val bandIndex = BandIndex()
+        for (row in 0 until size) {
+            index(bandIndex, definition, row)
+        }
+        bandIndeces[definition] = bandIndex
+    }
+
+    @Synchronized
+    fun dropIndexes() {
+        indeces.clear()
+        filters.clear()
+        bandIndeces.clear()
+        indexBytes = 0
+    }
+
+    /**
+     * Moves the rows to a file in directory, the indexes stay on the heap.
+     */
+    @Synchronized
+    fun spill(directory: String, pageCache: PageCache) {
+        if (spilled) {
+            return
+        }
+        val spilledRows = SpilledRows.write(rows, directory, pageCache)
+        rows.release()
+        rows = spilledRows
+    }
+
+    /**
+     * Lets spilled rows read through pageCache, e.g. after the segment was restored from a checkpoint,
+     * and lookups go through probeCache.
+     */
+    fun attach(pageCache: PageCache, probeCache: ProbeCache? = null) {
+        (rows as? SpilledRows)?.pageCache = pageCache
+        this.probeCache = probeCache
+    }
+
+    /**
+     * Hides all documents with a timestamp smaller than seq.
+     *
+     * @return the number of documents that expired by this
+     */
+    fun evictBefore(seq: Long): Int {
+        if (seq <= evictedBefore) {
+            return 0
+        }
+        val before = liveSize
+        evictedBefore = seq
+        hiddenAboveWatermark = 0
+        for (row in 0 until firstLiveRow) {
+            if (seqs[row] >= seq) {
+                hiddenAboveWatermark++
+            }
+        }
+        return before - liveSize
+    }
+
+    /**
+     * Hides the count documents that arrived first among the live ones.
+     *
+     * @return the number of documents that expired by this
+     */
+    fun evictOldest(count: Int): Int {
+        var evicted = 0
+        while (evicted < count && firstLiveRow < size) {
+            if (hideFirstLiveRow()) {
+                evicted++
+            }
+        }
+        return evicted
+    }
+
+    /**
+     * Hides all rows before row, as evictOldest does. Restores the first live row of a checkpoint.
+     *
+     * @return the number of documents that expired by this
+     */
+    fun evictRowsBefore(row: Int): Int {
+        var evicted = 0
+        while (firstLiveRow < Math.min(row, size)) {
+            if (hideFirstLiveRow()) {
+                evicted++
+            }
+        }
+        return evicted
+    }
+
+    /**
+     * @return whether the hidden row was live before
+     */
+    private fun hideFirstLiveRow(): Boolean {
+        val live = seqs[firstLiveRow] >= evictedBefore
+        if (live) {
+            hiddenAboveWatermark++
+        }
+        firstLiveRow++
+        return live
+    }
+
+    @Synchronized
+    fun release() {
+        probeCache?.invalidate(id)
+        rows.release()
+        released = true
+    }
+
+    /**
+     * Segments may be written to a checkpoint by another thread, see CheckpointSnapshot.
+     * The methods that change a sealed segment wait until it is written.
+     */
+    @Synchronized
+    private fun writeObject(output: ObjectOutputStream) {
+        check(!released) { "Segment $id was dropped before it was written" }
+        output.defaultWriteObject()
+    }
+
+    private fun addDocuments(bucket: IndexBucket, fromSeq: Long, toSeq: Long, result: MutableList<Document>) {
+        for (i in 0 until bucket.size) {
+            val row = bucket[i]
+            if (row >= firstLiveRow && seqs[row] in fromSeq until toSeq) {
+                result.add(rows.document(row))
+            }
+        }
+    }
+
+    /**
+     * Puts the live documents of bucket into probeCache, all of them such that the cached bucket serves any range.
+     */
+    private fun cache(probeCache: ProbeCache, attributeAccesses: List<AttributeAccess>, key: String, bucket: IndexBucket?): CachedBucket {
+        val cachedSeqs = ArrayList<Long>()
+        val cachedRows = ArrayList<Int>()
+        val documents = ArrayList<Document>()
+        if (bucket != null) {
+            for (i in 0 until bucket.size) {
+                val row = bucket[i]
+                if (row >= firstLiveRow && seqs[row] >= evictedBefore) {
+                    cachedSeqs.add(seqs[row])
+                    cachedRows.add(row)
+                    documents.add(rows.document(row))
+                }
+            }
+        }
+        val cached = CachedBucket(cachedSeqs.toLongArray(), cachedRows.toIntArray(), documents)
+        probeCache.put(id, attributeAccesses, key, cached)
+        return cached
+    }
+
+    private fun index(invertedIndex: InvertedIndex, attributeAccesses: List<AttributeAccess>, row: Int) {
+        // documents without one of the attributes cannot be found by a lookup anyway
+        val key = if (attributeAccesses.size == 1) {
+            rows.value(row, attributeAccesses[0]) ?: return
+        } else {
+            compositeKey(attributeAccesses.map { rows.value(row, it) ?: return })
+        }
+        invertedIndex.getOrPut(key) { IndexBucket() }.add(row)
+        filters[attributeAccesses]?.put(key)
+        probeCache?.invalidate(id, attributeAccesses, key)
+        indexBytes += INDEX_ENTRY_BYTES
+    }
+
+    private fun index(bandIndex: BandIndex, definition: BandIndexDefinition, row: Int) {
+        // documents without one of the attributes or with a non-numeric value cannot be found by a lookup anyway
+        val key = compositeKey(definition.equalityAttributeAccesses.map { rows.value(row, it) ?: return })
+        val value = rows.value(row, definition.numericAttributeAccess)?.toDoubleOrNull() ?: return
+        bandIndex.add(key, value, row)
+        indexBytes += INDEX_ENTRY_BYTES
+    }
+
+    companion object {
+        // rough sizes of the objects on a 64 bit JVM
+        private const val SEQ_BYTES = 16L
+        private const val INDEX_ENTRY_BYTES = 24L
+    }
+}
+
+/**
+ * The rows of a segment sharing a key, in ascending order.
+ */
+class IndexBucket : Serializable {
+    private val rows = IntList()
+
+    val size: Int
+        get() = rows.size
+
+    fun isEmpty(): Boolean = size == 0
+
+    operator fun get(index: Int): Int = rows[index]
+
+    fun add(row: Int) = rows.add(row)
+}
+
+typealias InvertedIndex = MutableMap<String, IndexBucket>
@@ -0,0 +1,240 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.query.AttributeAccess
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.io.RandomAccessFile
+import java.io.Serializable
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Decides when the segments of a store are moved to local disk.
+ *
+ * Once the estimated heap usage of a store exceeds memoryBudget bytes, its oldest segments are written
+ * to directory until it fits the budget again. A memoryBudget of 0 disables spilling.
+ * Spilled segments are read through a cache of pageCacheSize pages.
+ */
+data class SpillPolicy(
+    val memoryBudget: Long = 0,
+    val directory: String = ClashConfig.DEFAULT_STORE_SPILL_DIRECTORY,
+    val pageCacheSize: Int = ClashConfig.DEFAULT_STORE_SPILL_PAGE_CACHE_SIZE
+) : Serializable {
+    val enabled: Boolean
+        get() = memoryBudget > 0
+
+    companion object {
+        fun fromConfig(config: ClashConfig): SpillPolicy = SpillPolicy(
+                config.storeMemoryBudget,
+                config.storeSpillDirectory,
+                config.storeSpillPageCacheSize)
+    }
+}
+
+/**
+ * Keeps the rows of a spilled segment in a file.
+ *
+ * The file holds the encoded rows one after another, each as the number of fields followed by
+ * the attribute id, length and UTF-8 bytes of every field. The offsets of the rows and the attribute names
+ * stay on the heap, so a row is found without searching the file. Rows are read through pageCache.
+ * Spilled rows are read-only.
+ */
+class SpilledRows private constructor(
+    file: File,
+    private val directory: String,
+    private val attributes: List<AttributeAccess>,
+    private val offsets: LongList,
+    @Transient internal var pageCache: PageCache
+) : Rows {
+    var file = file
+        private set
+    @Transient private var channel: FileChannel? = null
+
+    override val size: Int
+        get() = offsets.size - 1
+
+    override val heapBytes: Long
+        get() = estimateRowReferenceBytes(size)
+
+    override fun add(document: Document) {
+        throw UnsupportedOperationException("Spilled rows cannot be appended to")
+    }
+
+    override fun value(row: Int, attributeAccess: AttributeAccess): String? {
+        var result: String? = null
+        read(row) { id, value ->
+            if (attributes[id] == attributeAccess) {
+                result = value()
+            }
+        }
+        return result
+    }
+
+    override fun document(row: Int): Document {
+        val document = Document()
+        read(row) { id, value -> document[attributes[id]] = value() }
+        return document
+    }
+
+    override fun release() {
+        synchronized(this) {
+            channel?.close()
+            channel = null
+        }
+        pageCache.invalidate(file.path)
+        file.delete()
+    }
+
+    /**
+     * Calls visitor with the attribute id of each field of row. Values are only decoded if the visitor asks for them.
+     */
+    private inline fun read(row: Int, visitor: (Int, () -> String) -> Unit) {
+        val start = offsets[row]
+        val bytes = ByteBuffer.wrap(pageCache.read(file.path, openChannel(), start, (offsets[row + 1] - start).toInt()))
+        val fields = bytes.getShort(0).toInt()
+        var position = 2
+        repeat(fields) {
+            val id = bytes.getShort(position).toInt()
+            val length = bytes.getInt(position + 2)
+            val valueStart = position + 6
+            visitor(id) { String(bytes.array(), valueStart, length, Charsets.UTF_8) }
+            position = valueStart + length
+        }
+    }
+
+    private fun openChannel(): FileChannel = synchronized(this) {
+        channel ?: RandomAccessFile(file, "r").channel.also { channel = it }
+    }
+
+    /**
+     * The file is written along with the rows, such that they can be restored after the file is gone.
+     */
+    private fun writeObject(output: ObjectOutputStream) {
+        output.defaultWriteObject()
+        val bytes = file.readBytes()
+        output.writeInt(bytes.size)
+        output.write(bytes)
+    }
+
+    private fun readObject(input: ObjectInputStream) {
+        input.defaultReadObject()
+        val bytes = ByteArray(input.readInt())
+        input.readFully(bytes)
+        file = StoreFiles.createFile(directory, FILE_PREFIX, FILE_SUFFIX)
+        file.writeBytes(bytes)
+        pageCache = PageCache(0)
+    }
+
+    companion object {
+        /**
+         * Writes all rows to a new file in directory.
+         */
+        fun write(rows: Rows, directory: String, pageCache: PageCache): SpilledRows {
+            val file = StoreFiles.createFile(directory, FILE_PREFIX, FILE_SUFFIX)
+            val attributes = ArrayList<AttributeAccess>()
+            val attributeIds = HashMap<AttributeAccess, Int>()
+            val offsets = LongList()
+            DataOutputStream(BufferedOutputStream(FileOutputStream(file))).use { output ->
+                for (row in 0 until rows.size) {
+                    offsets.add(output.size().toLong())
+                    val document = rows.document(row)
+                    output.writeShort(document.size)
+                    for ((attributeAccess, value) in document) {
+                        val id = attributeIds.getOrPut(attributeAccess) {
+                            attributes.add(attributeAccess)
+                            attributes.size - 1
+                        }
+                        val encoded = value.toByteArray(Charsets.UTF_8)
+                        output.writeShort(id)
+                        output.writeInt(encoded.size)
+                        output.write(encoded)
+                    }
+                }
+                // the end of the last row
+                offsets.add(output.size().toLong())
+            }
+            return SpilledRows(file, directory, attributes, offsets, pageCache)
+        }
+
+        private const val FILE_PREFIX = "clash-spill-"
+        private const val FILE_SUFFIX = ".rows"
+    }
+}
+
+/**
+ * Caches the most recently read pages of spilled files. The cache is shared by all spilled segments of a store
+ * and may be read by parallel probes.
+ */
+class PageCache(private val capacity: Int, private val pageSize: Int = DEFAULT_PAGE_SIZE) : Serializable {
+    private val pages = LeastRecentlyUsed<PageKey, ByteArray>(capacity)
+
+    /**
+     * @return length bytes of the file at path starting at position
+     */
+    fun read(path: String, channel: FileChannel, position: Long, length: Int): ByteArray {
+        val result = ByteArray(length)
+        var copied = 0
+        while (copied < length) {
+            val current = position + copied
+            val page = page(path, channel, current / pageSize)
+            val offset = (current % pageSize).toInt()
+            val count = Math.min(length - copied, page.size - offset)
+            System.arraycopy(page, offset, result, copied, count)
+            copied += count
+        }
+        return result
+    }
+
+    /**
+     * Drops all pages of the file at path.
+     */
+    fun invalidate(path: String) = synchronized(pages) {
+        pages.keys.removeIf { it.path == path }
+    }
+
+    private fun page(path: String, channel: FileChannel, index: Long): ByteArray {
+        val key = PageKey(path, index)
+        synchronized(pages) {
+            pages[key]?.let { return it }
+        }
+        val buffer = ByteBuffer.allocate(pageSize)
+        while (buffer.hasRemaining() && channel.read(buffer, index * pageSize + buffer.position()) > 0) {
+            // read until the page is full or the file ends
+        }
+        val page = buffer.array().copyOf(buffer.position())
+        if (capacity > 0) {
+            synchronized(pages) {
+                pages[key] = page
+            }
+        }
+        return page
+    }
+
+    companion object {
+        const val DEFAULT_PAGE_SIZE = 1 shl 16
+    }
+}
+
+private data class PageKey(val path: String, val index: Long) : Serializable
+
+/**
+ * A map that drops its least recently used entry once it holds more than capacity entries. onRemove is called with the dropped value.
+ */
+internal class LeastRecentlyUsed<K, V>(
+    private val capacity: Int,
+    private val onRemove: (V) -> Unit = {}
+) : LinkedHashMap<K, V>(16, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<K, V>?): Boolean {
+        if (size <= capacity) {
+            return false
+        }
+        eldest?.let { onRemove(it.value) }
+        return true
+    }
+}
@@ -0,0 +1,53 @@
+package de.unikl.dbis.clash.workers.stores
+
+import java.io.Serializable
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Counts how often a store could avoid work while probing.
+ * The counters may be updated concurrently by parallel probes.
+ */
+class ProbeStatistics : Serializable {
+    /**
+     * Probe messages that were answered without looking at any segment
+     */
+    val skippedProbes = AtomicLong()
+
+    /**
+     * Lookups of a probing document in a segment that the Bloom filter ruled out
+     */
+    val skippedSegmentLookups = AtomicLong()
+
+    /**
+     * Lookups that passed the Bloom filter
+     */
+    val filterPasses = AtomicLong()
+
+    /**
+     * Lookups that passed the Bloom filter but found no document with the key
+     */
+    val filterFalsePositives = AtomicLong()
+
+    /**
+     * Lookups the probe cache answered
+     */
+    val cacheHits = AtomicLong()
+
+    /**
+     * Lookups the probe cache could not answer
+     */
+    val cacheMisses = AtomicLong()
+
+    val falsePositiveRate: Double
+        get() {
+            val passes = filterPasses.get()
+            return if (passes == 0L) 0.0 else filterFalsePositives.get().toDouble() / passes
+        }
+
+    val cacheHitRatio: Double
+        get() {
+            val hits = cacheHits.get()
+            val lookups = hits + cacheMisses.get()
+            return if (lookups == 0L) 0.0 else hits.toDouble() / lookups
+        }
+}
@@ -0,0 +1,52 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.query.WindowDefinition
+import java.io.Serializable
+import java.util.ArrayDeque
+
+/**
+ * The number of documents a store keeps under windows, that is the amount of the narrowest count window,
+ * or 0 if none of them is a count window.
+ */
+fun countLimitOf(vararg windows: WindowDefinition): Long = windows
+        .filter { it.variant == WindowDefinition.Variant.Count }
+        .fold(0L) { limit, window -> if (limit == 0L) window.amount else Math.min(limit, window.amount) }
+
+/**
+ * Tracks the creation times of stored messages for stores with a time-based window.
+ *
+ * The documents stored with some ats expire as soon as a message was seen whose creation time
+ * lies more than the window size after the creation time of their own message.
+ * As creation times grow with ats, everything stored before an expired ats is expired, too.
+ */
+class TimeWindowTracker(private val windowMillis: Long) : Serializable {
+    private val arrivals = ArrayDeque<Arrival>()
+    private var latestLts = Long.MIN_VALUE
+
+    fun stored(ats: Long, lts: Long) {
+        arrivals.addLast(Arrival(ats, lts))
+        observe(lts)
+    }
+
+    fun observe(lts: Long) {
+        if (lts > latestLts) {
+            latestLts = lts
+        }
+    }
+
+    /**
+     * @return the ats before which all stored documents are expired, or null if nothing expired
+     */
+    fun expiredBefore(): Long? {
+        var bound: Long? = null
+        while (arrivals.isNotEmpty() && arrivals.peekFirst().lts <= latestLts - windowMillis) {
+            val arrival = arrivals.pollFirst()
+            if (bound == null || arrival.ats >= bound) {
+                bound = arrival.ats + 1
+            }
+        }
+        return bound
+    }
+
+    private data class Arrival(val ats: Long, val lts: Long) : Serializable
+}
@@ -0,0 +1,60 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.BinaryEquality
+import de.unikl.dbis.clash.query.WindowDefinition
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class AdaptiveStoreTest {
+    private val equality = setOf(BinaryPredicateEvaluationLeftStored(BinaryEquality(AttributeAccess("x.a"), AttributeAccess("y.a"))))
+
+    @Test
+    fun `rare probes of few distinct keys switch to the nested loop`() {
+        val store = AdaptiveStore<String>(config(), WindowDefinition.count(100), WindowDefinition.infinite(), equality)
+        assertThat(store.layout).isEqualTo(StoreLayout.HASH_INDEX)
+        var seq = 0L
+        repeat(10) {
+            (1..1000).forEach { store.store(++seq, 0, listOf(fromKVList("x.a", "${it % 10}"))) }
+            assertThat(store.probe(++seq, 0, listOf(fromKVList("y.a", "1")), equality, listOf())).hasSize(10)
+        }
+
+        assertThat(store.layout).isEqualTo(StoreLayout.NESTED_LOOP)
+        assertThat(store.probe(++seq, 0, listOf(fromKVList("y.a", "1")), equality, listOf())).hasSize(10)
+    }
+
+    @Test
+    fun `probes of many distinct keys switch to the hash index`() {
+        val store = AdaptiveStore<String>(config(), WindowDefinition.infinite(), StoreLayout.NESTED_LOOP)
+        (1L..1000L).forEach { store.store(it, 0, listOf(fromKVList("x.a", "$it"))) }
+        (1..10).forEach { assertThat(store.probe(2000, 0, listOf(fromKVList("y.a", "$it")), equality, listOf())).hasSize(1) }
+
+        assertThat(store.layout).isEqualTo(StoreLayout.HASH_INDEX)
+        assertThat(store.probe(2000, 0, listOf(fromKVList("y.a", "77")), equality, listOf())).hasSize(1)
+    }
+
+    @Test
+    fun `hash index lookups count what the Bloom filters skipped`() {
+        val store = AdaptiveStore<String>(config(), WindowDefinition.infinite(), StoreLayout.HASH_INDEX)
+        (1L..160L).forEach { store.store(it, 0, listOf(fromKVList("x.a", "$it"))) }
+
+        assertThat(store.probe(200, 0, listOf(fromKVList("y.a", "55")), equality, listOf())).hasSize(1)
+        assertThat(store.probeStatistics.skippedSegmentLookups.get()).isGreaterThanOrEqualTo(9)
+        assertThat(store.probeStatistics.filterPasses.get()).isBetween(1L, 2L)
+        assertThat(store.probeStatistics.filterFalsePositives.get()).isEqualTo(store.probeStatistics.filterPasses.get() - 1)
+        assertThat(store.probeStatistics.skippedProbes.get()).isEqualTo(0)
+
+        assertThat(store.probe(200, 0, listOf(fromKVList("y.a", "none")), equality, listOf())).isEmpty()
+        assertThat(store.probeStatistics.skippedProbes.get()).isEqualTo(1)
+    }
+
+    private fun config(): ClashConfig {
+        val config = ClashConfig()
+        config[ClashConfig.CLASH_STORE_SEGMENT_SIZE] = 16
+        config[ClashConfig.CLASH_STORE_ADAPTIVE_WARMUP] = 10
+        return config
+    }
+}
@@ -0,0 +1,122 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.BinaryBand
+import de.unikl.dbis.clash.query.BinaryEquality
+import java.nio.file.Files
+import java.util.Random
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+
+internal class BandJoinStoreTest {
+    private val directory = Files.createTempDirectory("clash-band").toFile()
+    // x.t BETWEEN y.t - 5 AND y.t + 2
+    private val band = BinaryBand(AttributeAccess("x.t"), AttributeAccess("y.t"), -5.0, 2.0)
+    private val equality = BinaryEquality(AttributeAccess("x.k"), AttributeAccess("y.k"))
+
+    @AfterEach
+    fun deleteDirectory() {
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun `band lookups find what comparing every pair finds`() {
+        assertProbesCompareEveryPair(setOf(BinaryPredicateEvaluationLeftStored(band)), "x", "y")
+        assertProbesCompareEveryPair(setOf(BinaryPredicateEvaluationRightStored(band)), "y", "x")
+    }
+
+    @Test
+    fun `band lookups with an equality find what comparing every pair finds`() {
+        assertProbesCompareEveryPair(setOf(BinaryPredicateEvaluationLeftStored(band), BinaryPredicateEvaluationLeftStored(equality)), "x", "y")
+        assertProbesCompareEveryPair(setOf(BinaryPredicateEvaluationRightStored(band), BinaryPredicateEvaluationRightStored(equality)), "y", "x")
+    }
+
+    @Test
+    fun `the bounds of the band are inclusive`() {
+        val store = BandJoinStore<String>(ClashConfig())
+        store.store(1, 0, listOf(fromKVList("x.t", "102"), fromKVList("x.t", "95"), fromKVList("x.t", "94"), fromKVList("x.t", "103")))
+
+        assertThat(store.probe(10, 0, listOf(fromKVList("y.t", "100")), setOf(BinaryPredicateEvaluationLeftStored(band)), listOf())
+                .map { it["x.t"] }).containsExactlyInAnyOrder("102", "95")
+    }
+
+    @Test
+    fun `band indexes are restored from a checkpoint`() {
+        val predicates = setOf(BinaryPredicateEvaluationLeftStored(band))
+        val stored = storedDocuments("x")
+        val store = filledStore(stored)
+        store.probe(100, 0, listOf(fromKVList("y.t", "50", "y.k", "1")), predicates, listOf())
+        store.checkpoint(Checkpoints(directory))
+
+        val restored = BandJoinStore<String>(config())
+        assertThat(restored.restore(Checkpoints(directory))).isTrue()
+        val probe = listOf(fromKVList("y.t", "50", "y.k", "1"))
+        assertThat(joinedPairs(restored.probe(100, 0, probe, predicates, listOf())))
+                .isEqualTo(expectedPairs(stored, probe, predicates))
+    }
+
+    private fun config(): ClashConfig {
+        val config = ClashConfig()
+        config[ClashConfig.CLASH_STORE_SEGMENT_SIZE] = 7
+        return config
+    }
+
+    /**
+     * Probes a store of storedRelation with random documents of probingRelation and expects the same pairs
+     * as evaluating the predicates for every stored and probing document.
+     */
+    private fun assertProbesCompareEveryPair(predicates: Set<BinaryPredicateEvaluation>, storedRelation: String, probingRelation: String) {
+        val random = Random(3)
+        val stored = storedDocuments(storedRelation)
+        val store = filledStore(stored)
+        repeat(30) {
+            val probe = listOf(fromKVList("$probingRelation.t", "${random.nextInt(100)}", "$probingRelation.k", "${random.nextInt(3)}"))
+            assertThat(joinedPairs(store.probe(100, 0, probe, predicates, listOf())))
+                    .`as`("%s of %s", predicates, probe)
+                    .isEqualTo(expectedPairs(stored, probe, predicates))
+        }
+    }
+
+    /**
+     * 50 documents with random values and one whose value is not a number
+     */
+    private fun storedDocuments(relation: String): List<Document> {
+        val random = Random(7)
+        return (1..50).map { fromKVList("$relation.t", "${random.nextInt(100)}", "$relation.k", "${random.nextInt(3)}", "$relation.seq", "$it") } +
+                fromKVList("$relation.t", "abc", "$relation.k", "1", "$relation.seq", "51")
+    }
+
+    private fun filledStore(stored: List<Document>): BandJoinStore<String> {
+        val store = BandJoinStore<String>(config())
+        stored.forEachIndexed { i, document -> store.store(i + 1L, 0, listOf(document)) }
+        return store
+    }
+
+    private fun expectedPairs(stored: List<Document>, probing: List<Document>, predicates: Collection<BinaryPredicateEvaluation>): List<String> {
+        val result = ArrayList<String>()
+        for (document in stored) {
+            for (probe in probing) {
+                if (predicates.all { joinable(it, document, probe) }) {
+                    result.add(pairOf(document + probe))
+                }
+            }
+        }
+        return result.sorted()
+    }
+
+    private fun joinable(evaluation: BinaryPredicateEvaluation, storedDocument: Document, probingDocument: Document) =
+            if (evaluation is BinaryPredicateEvaluationLeftStored) evaluation.predicate.joinable(storedDocument, probingDocument)
+            else evaluation.predicate.joinable(probingDocument, storedDocument)
+
+    private fun joinedPairs(result: List<Document>): List<String> = result.map { pairOf(it) }.sorted()
+
+    private fun pairOf(document: Map<AttributeAccess, String>): String =
+            "${document[AttributeAccess("x.seq")] ?: document[AttributeAccess("y.seq")]}/${document[AttributeAccess("x.t")]}/${document[AttributeAccess("y.t")]}"
+}
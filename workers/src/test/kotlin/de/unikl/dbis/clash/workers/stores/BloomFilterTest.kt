@@ -0,0 +1,49 @@
+package de.unikl.dbis.clash.workers.stores
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class BloomFilterTest {
+    @Test
+    fun `values that were put are always contained`() {
+        val filter = BloomFilter(1000, 0.01)
+        (0 until 1000).forEach { filter.put("k$it") }
+
+        assertThat((0 until 1000).all { filter.mightContain("k$it") }).isTrue()
+    }
+
+    @Test
+    fun `false positives stay close to the configured rate`() {
+        val filter = BloomFilter(1000, 0.01)
+        (0 until 1000).forEach { filter.put("k$it") }
+
+        val falsePositives = (0 until 10000).count { filter.mightContain("other$it") }
+        assertThat(falsePositives).isLessThan(300)
+    }
+
+    @Test
+    fun `an empty filter contains nothing`() {
+        val filter = BloomFilter(0, 0.01)
+
+        assertThat(filter.mightContain("")).isFalse()
+        assertThat(filter.mightContain("k")).isFalse()
+        assertThat(filter.heapBytes).isGreaterThan(0)
+    }
+
+    @Test
+    fun `filters survive serialization`() {
+        val filter = BloomFilter(100, 0.01)
+        (0 until 100).forEach { filter.put("k$it") }
+        val out = ByteArrayOutputStream()
+        ObjectOutputStream(out).writeObject(filter)
+        val copy = ObjectInputStream(ByteArrayInputStream(out.toByteArray())).readObject() as BloomFilter
+
+        assertThat((0 until 100).all { copy.mightContain("k$it") }).isTrue()
+        assertThat((0 until 1000).count { copy.mightContain("other$it") })
+                .isEqualTo((0 until 1000).count { filter.mightContain("other$it") })
+    }
+}
@@ -0,0 +1,123 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.query.AttributeAccess
+import java.io.File
+import java.nio.file.Files
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+
+internal class CheckpointsTest {
+    private val directory = Files.createTempDirectory("clash-checkpoints").toFile()
+    private val key = AttributeAccess("x.a")
+
+    @AfterEach
+    fun deleteDirectory() {
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun `restoring keeps watermarks and evicted rows`() {
+        val prefix = prefix()
+        put(prefix, 1L..35L)
+        prefix.evictBefore(8)
+        prefix.evictToCount(20)
+        val checkpoints = checkpoints()
+        prefix.checkpoint(checkpoints, "state")
+
+        val restored = prefix()
+        assertThat(restored.restore(checkpoints)).isEqualTo("state")
+        assertThat(restored.numberOfDocuments).isEqualTo(20)
+        assertThat(seqsOf(restored.get(Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo((16L..35L).toList())
+    }
+
+    @Test
+    fun `restoring keeps documents evicted by timestamp and by count in the same segment`() {
+        val prefix = prefix()
+        listOf(3L, 1L, 4L, 2L, 5L, 6L, 7L).forEach { put(prefix, it..it) }
+        put(prefix, 11L..15L)
+        prefix.evictBefore(3)
+        prefix.evictToCount(7)
+        val checkpoints = checkpoints()
+        prefix.checkpoint(checkpoints, null)
+
+        val restored = prefix()
+        restored.restore(checkpoints)
+        assertThat(restored.numberOfDocuments).isEqualTo(7)
+        assertThat(seqsOf(restored.get(Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(listOf(6L, 7L, 11L, 12L, 13L, 14L, 15L))
+    }
+
+    @Test
+    fun `restoring brings back spilled segments`() {
+        val prefix = prefix(SpillPolicy(1, File(directory, "spill").path))
+        put(prefix, 1L..35L)
+        assertThat(prefix.numberOfSpilledSegments).isEqualTo(3)
+        val checkpoints = checkpoints()
+        prefix.checkpoint(checkpoints, null)
+        val expected = seqsOf(prefix.get(Long.MIN_VALUE, Long.MAX_VALUE))
+        prefix.clear()
+
+        val restored = prefix(SpillPolicy(1, File(directory, "spill").path))
+        restored.restore(checkpoints)
+        assertThat(restored.numberOfSpilledSegments).isEqualTo(3)
+        assertThat(seqsOf(restored.get(Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(expected)
+    }
+
+    @Test
+    fun `indexes added after a segment was written are rebuilt`() {
+        val prefix = prefix()
+        val checkpoints = checkpoints()
+        put(prefix, 1L..25L)
+        prefix.checkpoint(checkpoints, null)
+        prefix.addIndex(key)
+        put(prefix, 26L..35L)
+        prefix.checkpoint(checkpoints, null)
+
+        val restored = prefix()
+        restored.restore(checkpoints)
+        assertThat(restored.hasIndex(key)).isTrue()
+        assertThat(seqsOf(restored.get(key, "3", Long.MIN_VALUE, Long.MAX_VALUE)))
+                .isEqualTo(listOf(3L, 8L, 13L, 18L, 23L, 28L, 33L))
+    }
+
+    @Test
+    fun `a snapshot is the state at the time it was taken`() {
+        val prefix = prefix()
+        val checkpoints = checkpoints()
+        put(prefix, 1L..25L)
+        val snapshot = prefix.snapshot("before")
+        put(prefix, 26L..35L)
+        snapshot.writeTo(checkpoints)
+
+        val restored = prefix()
+        assertThat(restored.restore(checkpoints)).isEqualTo("before")
+        assertThat(seqsOf(restored.get(Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo((1L..25L).toList())
+    }
+
+    @Test
+    fun `a snapshot whose segments were dropped keeps the previous checkpoint`() {
+        val prefix = prefix()
+        val checkpoints = checkpoints()
+        put(prefix, 1L..5L)
+        prefix.checkpoint(checkpoints, "previous")
+        put(prefix, 6L..25L)
+        val snapshot = prefix.snapshot("dropped")
+        prefix.evictBefore(21)
+
+        assertThatThrownBy { snapshot.writeTo(checkpoints) }.isInstanceOf(IllegalStateException::class.java)
+        assertThat(prefix().restore(checkpoints)).isEqualTo("previous")
+    }
+
+    private fun prefix(spillPolicy: SpillPolicy = SpillPolicy()) = SegmentedPrefix(10, spillPolicy = spillPolicy)
+
+    private fun checkpoints() = CheckpointPolicy(directory.path, 1).checkpointsFor("task")
+
+    private fun put(prefix: SegmentedPrefix, seqs: LongRange) {
+        seqs.forEach { prefix.put(it, 0, listOf(fromKVList("x.a", "${it % 5}", "x.seq", "$it"))) }
+    }
+
+    private fun seqsOf(documents: List<Document>): List<Long> = documents.map { it[AttributeAccess("x.seq")]!!.toLong() }.sorted()
+}
@@ -0,0 +1,75 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.query.AttributeAccess
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class ColumnarRowsTest {
+    private val documents = listOf(
+            fromKVList("x.a", "1", "x.b", "007"),
+            fromKVList("x.a", "2"),
+            fromKVList("x.a", "abc", "x.c", "-5"),
+            fromKVList("x.a", "1", "x.b", "text", "x.c", "12345678901234567890"))
+
+    @Test
+    fun `rows give back the documents they were built from`() {
+        val rows = rowsOf(documents)
+
+        assertThat(rows.size).isEqualTo(4)
+        assertThat((0 until rows.size).map { rows.document(it) }).isEqualTo(documents)
+    }
+
+    @Test
+    fun `values keep their exact text`() {
+        val rows = rowsOf(documents)
+
+        assertThat(rows.value(0, AttributeAccess("x.b"))).isEqualTo("007")
+        assertThat(rows.value(2, AttributeAccess("x.c"))).isEqualTo("-5")
+        assertThat(rows.value(3, AttributeAccess("x.c"))).isEqualTo("12345678901234567890")
+        assertThat(rows.value(0, AttributeAccess("x.a"))).isEqualTo("1")
+        assertThat(rows.value(2, AttributeAccess("x.a"))).isEqualTo("abc")
+    }
+
+    @Test
+    fun `missing attributes are null`() {
+        val rows = rowsOf(documents)
+
+        assertThat(rows.value(1, AttributeAccess("x.b"))).isNull()
+        assertThat(rows.value(0, AttributeAccess("x.c"))).isNull()
+        assertThat(rows.value(0, AttributeAccess("x.d"))).isNull()
+        assertThat(rows.document(1)).doesNotContainKey(AttributeAccess("x.b"))
+    }
+
+    @Test
+    fun `rows survive serialization`() {
+        val rows = rowsOf(documents)
+        val out = ByteArrayOutputStream()
+        ObjectOutputStream(out).writeObject(rows)
+        val copy = ObjectInputStream(ByteArrayInputStream(out.toByteArray())).readObject() as Rows
+
+        assertThat((0 until copy.size).map { copy.document(it) }).isEqualTo(documents)
+    }
+
+    @Test
+    fun `repeated values are encoded once`() {
+        val dictionary = Dictionary()
+
+        assertThat(dictionary.encode("a")).isEqualTo(0)
+        assertThat(dictionary.encode("b")).isEqualTo(1)
+        assertThat(dictionary.encode("a")).isEqualTo(0)
+        assertThat(dictionary.size).isEqualTo(2)
+        assertThat(dictionary.decode(1)).isEqualTo("b")
+    }
+
+    private fun rowsOf(documents: List<Document>): Rows {
+        val rows = ColumnarRows()
+        documents.forEach { rows.add(it) }
+        return rows
+    }
+}
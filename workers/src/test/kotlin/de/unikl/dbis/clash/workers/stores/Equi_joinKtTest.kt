@@ -0,0 +1,56 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.BinaryEquality
+import de.unikl.dbis.clash.query.BinaryLessThan
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class Equi_joinKtTest {
+    private val xa = AttributeAccess("x.a")
+    private val xb = AttributeAccess("x.b")
+    private val ya = AttributeAccess("y.a")
+    private val yb = AttributeAccess("y.b")
+
+    @Test
+    fun `a composite key combines all equalities in a fixed order`() {
+        val first = BinaryPredicateEvaluationRightStored(BinaryEquality(yb, xb))
+        val second = BinaryPredicateEvaluationLeftStored(BinaryEquality(xa, ya))
+        val comparison = BinaryPredicateEvaluationLeftStored(BinaryLessThan(xa, yb))
+
+        val key = chooseCompositeJoinKey(listOf(first, comparison, second))!!
+        assertThat(key.storedAttributeAccesses).containsExactly(xa, xb)
+        assertThat(key.evaluations).containsExactlyInAnyOrder(first, second)
+        assertThat(chooseCompositeJoinKey(listOf(second, first))).isEqualTo(key)
+    }
+
+    @Test
+    fun `a single equality prefers the given attribute`() {
+        val onA = BinaryPredicateEvaluationLeftStored(BinaryEquality(xa, ya))
+        val onB = BinaryPredicateEvaluationLeftStored(BinaryEquality(xa, yb))
+
+        assertThat(chooseCompositeJoinKey(listOf(onA))!!.storedAttributeAccesses).containsExactly(xa)
+        assertThat(chooseCompositeJoinKey(listOf(onA, onB), xa)!!.parts).hasSize(1)
+        assertThat(chooseCompositeJoinKey(listOf(BinaryPredicateEvaluationLeftStored(BinaryLessThan(xa, ya))))).isNull()
+    }
+
+    @Test
+    fun `probing documents provide the key in the order of the stored attributes`() {
+        val key = chooseCompositeJoinKey(listOf(
+                BinaryPredicateEvaluationLeftStored(BinaryEquality(xb, yb)),
+                BinaryPredicateEvaluationLeftStored(BinaryEquality(xa, ya))))!!
+
+        assertThat(key.probedKey(fromKVList("y.a", "1", "y.b", "2"))).isEqualTo(compositeKey(listOf("1", "2")))
+        assertThat(key.probedKey(fromKVList("y.a", "1"))).isNull()
+    }
+
+    @Test
+    fun `composite keys of different values differ`() {
+        assertThat(compositeKey(listOf("a"))).isEqualTo("a")
+        assertThat(compositeKey(listOf("a b", "c"))).isNotEqualTo(compositeKey(listOf("a", "b c")))
+        assertThat(compositeKey(listOf("1", "23"))).isNotEqualTo(compositeKey(listOf("12", "3")))
+    }
+}
@@ -0,0 +1,87 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
+import de.unikl.dbis.clash.physical.GenericBinaryPredicateEvaluation
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.BinaryBand
+import de.unikl.dbis.clash.query.BinaryEquality
+import de.unikl.dbis.clash.query.BinaryLessThan
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class JoinKernelTest {
+    private val x = fromKVList("x.a", "1", "x.b", "5")
+    private val y = fromKVList("y.a", "1", "y.b", "9")
+    private val equality = BinaryPredicateEvaluationLeftStored(BinaryEquality(AttributeAccess("x.a"), AttributeAccess("y.a")))
+    // x.b < y.b
+    private val lessThan = BinaryLessThan(AttributeAccess("x.b"), AttributeAccess("y.b"))
+    // x.b BETWEEN y.b - 5 AND y.b - 3
+    private val band = BinaryBand(AttributeAccess("x.b"), AttributeAccess("y.b"), -5.0, -3.0)
+
+    @Test
+    fun `comparisons are evaluated with the stored document on the side of its evaluation`() {
+        assertThat(JoinKernel(listOf(BinaryPredicateEvaluationLeftStored(lessThan))).joinable(x, y)).isTrue()
+        assertThat(JoinKernel(listOf(BinaryPredicateEvaluationLeftStored(lessThan))).joinable(y, x)).isFalse()
+        assertThat(JoinKernel(listOf(BinaryPredicateEvaluationRightStored(lessThan))).joinable(y, x)).isTrue()
+        assertThat(JoinKernel(listOf(BinaryPredicateEvaluationRightStored(lessThan))).joinable(x, y)).isFalse()
+    }
+
+    @Test
+    fun `other predicates are handed the documents in the order of their evaluation`() {
+        assertThat(JoinKernel(listOf(BinaryPredicateEvaluationLeftStored(band))).joinable(x, y)).isTrue()
+        assertThat(JoinKernel(listOf(BinaryPredicateEvaluationLeftStored(band))).joinable(y, x)).isFalse()
+        assertThat(JoinKernel(listOf(BinaryPredicateEvaluationRightStored(band))).joinable(y, x)).isTrue()
+        assertThat(JoinKernel(listOf(BinaryPredicateEvaluationRightStored(band))).joinable(x, y)).isFalse()
+        assertThat(JoinKernel(listOf(GenericBinaryPredicateEvaluation(band))).joinable(x, y)).isTrue()
+    }
+
+    @Test
+    fun `documents lacking an attribute never match`() {
+        val kernel = JoinKernel(listOf(equality, BinaryPredicateEvaluationLeftStored(lessThan)))
+        assertThat(kernel.joinable(fromKVList("x.a", "1"), y)).isFalse()
+        assertThat(kernel.joinable(x, fromKVList("y.b", "9"))).isFalse()
+        assertThat(JoinKernel(listOf()).joinable(x, y)).isTrue()
+    }
+
+    @Test
+    fun `joins add the joint documents of all matching pairs to the output`() {
+        val kernel = JoinKernel(listOf(equality, BinaryPredicateEvaluationLeftStored(lessThan)))
+        val stored = listOf(x, fromKVList("x.a", "2", "x.b", "5"), fromKVList("x.a", "1", "x.b", "10"), fromKVList("x.a", "1", "x.b", "8"))
+        val output: MutableList<Document> = mutableListOf(fromKVList("z.a", "0"))
+
+        kernel.join(listOf(y, fromKVList("y.a", "2", "y.b", "6")), stored, output)
+        assertThat(output).containsExactly(
+                fromKVList("z.a", "0"),
+                y.createJoint(x),
+                y.createJoint(fromKVList("x.a", "1", "x.b", "8")),
+                fromKVList("y.a", "2", "y.b", "6").createJoint(fromKVList("x.a", "2", "x.b", "5")))
+    }
+
+    @Test
+    fun `kernels without some predicates only check the others`() {
+        val predicates = listOf(equality, BinaryPredicateEvaluationLeftStored(lessThan))
+        val residual = JoinKernel(predicates).without(setOf(equality))
+
+        assertThat(residual.predicates).containsExactly(BinaryPredicateEvaluationLeftStored(lessThan))
+        assertThat(residual.joinable(fromKVList("x.a", "2", "x.b", "5"), y)).isTrue()
+        assertThat(residual.joinable(fromKVList("x.a", "1", "x.b", "10"), y)).isFalse()
+        assertThat(JoinKernel(predicates).only(setOf(equality)).predicates).containsExactly(equality)
+    }
+
+    @Test
+    fun `the cache compiles each kernel and residual kernel once`() {
+        val cache = JoinKernelCache()
+        val predicates = listOf(equality, BinaryPredicateEvaluationLeftStored(lessThan))
+
+        assertThat(cache.kernelFor(predicates)).isSameAs(cache.kernelFor(predicates))
+        val residual = cache.kernelFor(predicates, equality)
+        assertThat(residual.predicates).containsExactly(BinaryPredicateEvaluationLeftStored(lessThan))
+        assertThat(cache.kernelFor(predicates, setOf(equality))).isSameAs(residual)
+        assertThat(cache.kernelFor(predicates, setOf())).isSameAs(cache.kernelFor(predicates))
+        assertThat(cache.kernelFor(predicates, setOf(equality, BinaryPredicateEvaluationLeftStored(lessThan))).predicates).isEmpty()
+        assertThat(cache.kernelFor(listOf(equality, BinaryPredicateEvaluationLeftStored(lessThan)), equality)).isNotSameAs(residual)
+    }
+}
@@ -0,0 +1,249 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.BinaryEquality
+import de.unikl.dbis.clash.query.BinaryLessThan
+import de.unikl.dbis.clash.query.WindowDefinition
+import java.nio.file.Files
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+
+internal class NaiveHashStoreTest {
+    private val stored = (1L..300L).map { seq ->
+        Pair(seq, fromKVList("x.a", "${seq % 7}", "x.b", "${seq % 5}", "x.c", "${seq % 50}", "x.seq", "$seq"))
+    }
+    private val probes = listOf(
+            fromKVList("y.a", "3", "y.b", "1", "y.c", "20", "y.id", "0"),
+            fromKVList("y.a", "0", "y.b", "4", "y.c", "45", "y.id", "1"),
+            fromKVList("y.a", "3", "y.c", "10", "y.id", "2"),
+            fromKVList("y.a", "9", "y.b", "0", "y.c", "0", "y.id", "3"))
+    private val equality = BinaryPredicateEvaluationLeftStored(BinaryEquality(AttributeAccess("x.a"), AttributeAccess("y.a")))
+    private val predicateSets = listOf(
+            setOf(equality),
+            setOf(equality, BinaryPredicateEvaluationLeftStored(BinaryEquality(AttributeAccess("x.b"), AttributeAccess("y.b")))),
+            setOf(equality, BinaryPredicateEvaluationRightStored(BinaryLessThan(AttributeAccess("y.c"), AttributeAccess("x.c")))),
+            setOf(BinaryPredicateEvaluationRightStored(BinaryLessThan(AttributeAccess("y.c"), AttributeAccess("x.c")))))
+    // pairs of the probing timestamp and the window size
+    private val ranges = listOf(Pair(1000L, 2000L), Pair(200L, 60L), Pair(301L, 1L), Pair(0L, 10L))
+    private val spillDirectory = Files.createTempDirectory("clash-spill").toFile()
+
+    @AfterEach
+    fun deleteSpillDirectory() {
+        spillDirectory.deleteRecursively()
+    }
+
+    @Test
+    fun `index lookups find what comparing every pair finds`() {
+        assertProbesCompareEveryPair(config())
+    }
+
+    @Test
+    fun `parallel probes find what sequential probes find`() {
+        val config = config()
+        config[ClashConfig.CLASH_STORE_PARALLEL_PROBE_ENABLED] = true
+        config[ClashConfig.CLASH_STORE_PARALLEL_PROBE_THRESHOLD] = 0
+        assertProbesCompareEveryPair(config)
+    }
+
+    @Test
+    fun `probes find the same pairs without Bloom filters`() {
+        val config = config()
+        config[ClashConfig.CLASH_STORE_BLOOM_FILTER_FPP] = 0
+        assertProbesCompareEveryPair(config)
+    }
+
+    @Test
+    fun `probes find the same pairs with Bloom filters that pass most keys`() {
+        val config = config()
+        config[ClashConfig.CLASH_STORE_BLOOM_FILTER_FPP] = 0.9
+        assertProbesCompareEveryPair(config)
+    }
+
+    @Test
+    fun `probes find the same pairs in spilled segments`() {
+        val config = config()
+        config[ClashConfig.CLASH_STORE_MEMORY_BUDGET] = 2000L
+        config[ClashConfig.CLASH_STORE_SPILL_DIRECTORY] = spillDirectory.path
+        config[ClashConfig.CLASH_STORE_SPILL_PAGE_CACHE_SIZE] = 2
+        assertThat(filledStore(config).prefix.numberOfSpilledSegments).isGreaterThan(0)
+        assertProbesCompareEveryPair(config)
+    }
+
+    @Test
+    fun `probes find the same pairs through the probe cache`() {
+        val config = config()
+        config[ClashConfig.CLASH_STORE_PROBE_CACHE_SIZE] = 100
+        val store = filledStore(config)
+        assertProbesCompareEveryPair(store)
+        val hits = store.probeStatistics.cacheHits.get()
+        assertThat(hits).isGreaterThan(0)
+
+        assertProbesCompareEveryPair(store)
+        assertThat(store.probeStatistics.cacheHits.get()).isGreaterThan(hits)
+    }
+
+    @Test
+    fun `storing a document drops the cached bucket of its key`() {
+        val config = config()
+        config[ClashConfig.CLASH_STORE_PROBE_CACHE_SIZE] = 100
+        val store = NaiveHashStore<String>(config)
+        (1L..25L).forEach { store.store(it, 0, listOf(fromKVList("x.a", "${it % 3}", "x.seq", "$it"))) }
+        val probe = listOf(fromKVList("y.a", "1", "y.id", "0"))
+
+        assertThat(store.probe(100, 0, probe, setOf(equality), listOf())).hasSize(9)
+        assertThat(store.probeStatistics.cacheHits.get()).isEqualTo(0)
+        assertThat(store.probe(100, 0, probe, setOf(equality), listOf())).hasSize(9)
+        assertThat(store.probeStatistics.cacheHits.get()).isEqualTo(2)
+        assertThat(joinedPairs(store.probe(10, 0, probe, setOf(equality), listOf()))).containsExactly("1/0", "4/0", "7/0")
+
+        store.store(26, 0, listOf(fromKVList("x.a", "1", "x.seq", "26")))
+        assertThat(joinedPairs(store.probe(100, 0, probe, setOf(equality), listOf()))).contains("25/0", "26/0").hasSize(10)
+    }
+
+    @Test
+    fun `cached buckets do not return evicted documents`() {
+        val config = config()
+        config[ClashConfig.CLASH_STORE_SEGMENT_SIZE] = 5
+        config[ClashConfig.CLASH_STORE_SEGMENTS_PER_WINDOW] = 2
+        config[ClashConfig.CLASH_STORE_PROBE_CACHE_SIZE] = 100
+        val store = NaiveHashStore<String>(config, WindowDefinition.count(10))
+        val probe = listOf(fromKVList("y.a", "k", "y.id", "0"))
+        (1L..10L).forEach { store.store(it, 0, listOf(fromKVList("x.a", "k", "x.seq", "$it"))) }
+        assertThat(store.probe(100, 0, probe, setOf(equality), listOf())).hasSize(10)
+
+        (11L..14L).forEach { store.store(it, 0, listOf(fromKVList("x.a", "k", "x.seq", "$it"))) }
+        assertThat(joinedPairs(store.probe(100, 0, probe, setOf(equality), listOf())))
+                .isEqualTo((5L..14L).map { "$it/0" }.sorted())
+    }
+
+    @Test
+    fun `documents leave by whichever of a time and a count window is stricter`() {
+        val store = NaiveHashStore<String>(config(), WindowDefinition.seconds(10), WindowDefinition.count(5))
+        val probe = listOf(fromKVList("y.a", "k", "y.id", "0"))
+        (1L..8L).forEach { store.store(it, it * 1000, listOf(fromKVList("x.a", "k", "x.seq", "$it"))) }
+        assertThat(joinedPairs(store.probe(100, 8000, probe, setOf(equality), listOf())))
+                .isEqualTo((4L..8L).map { "$it/0" }.sorted())
+
+        store.store(9, 30000, listOf(fromKVList("x.a", "k", "x.seq", "9")))
+        assertThat(store.prefix.numberOfDocuments).isEqualTo(1)
+        assertThat(joinedPairs(store.probe(100, 30000, probe, setOf(equality), listOf()))).containsExactly("9/0")
+    }
+
+    @Test
+    fun `count windows keep exactly the last documents`() {
+        val config = config()
+        config[ClashConfig.CLASH_STORE_SEGMENT_SIZE] = 4
+        val store = NaiveHashStore<String>(config, WindowDefinition.count(10))
+        // each timestamp holds three documents
+        (1L..10L).forEach { store.store(it, 0, listOf(
+                fromKVList("x.a", "k", "x.seq", "$it"), fromKVList("x.a", "k", "x.seq", "$it"), fromKVList("x.a", "j", "x.seq", "$it"))) }
+        assertThat(store.prefix.numberOfDocuments).isEqualTo(10)
+        assertThat(joinedPairs(store.probe(100, 0, listOf(fromKVList("y.a", "k", "y.id", "0")), setOf(equality), listOf())))
+                .containsExactly("10/0", "10/0", "8/0", "8/0", "9/0", "9/0")
+        assertThat(joinedPairs(store.probe(100, 0, listOf(fromKVList("y.a", "j", "y.id", "0")), setOf(equality), listOf())))
+                .containsExactly("10/0", "7/0", "8/0", "9/0")
+
+        store.store(11, 0, listOf(fromKVList("x.a", "k", "x.seq", "11")))
+        assertThat(store.prefix.numberOfDocuments).isEqualTo(10)
+        assertThat(store.probe(100, 0, listOf(fromKVList("y.a", "k")), setOf(equality), listOf())).hasSize(7)
+        assertThat(joinedPairs(store.probe(100, 0, listOf(fromKVList("y.a", "j", "y.id", "0")), setOf(equality), listOf())))
+                .containsExactly("10/0", "8/0", "9/0")
+    }
+
+    @Test
+    fun `Bloom filters skip the segments without the key`() {
+        val store = NaiveHashStore<String>(config())
+        (1L..160L).forEach { store.store(it, 0, listOf(fromKVList("x.a", "$it", "x.seq", "$it"))) }
+
+        assertThat(joinedPairs(store.probe(200, 0, listOf(fromKVList("y.a", "55", "y.id", "0")), setOf(equality), listOf())))
+                .containsExactly("55/0")
+        assertThat(store.probeStatistics.skippedSegmentLookups.get()).isGreaterThanOrEqualTo(9)
+        assertThat(store.probeStatistics.filterPasses.get()).isLessThanOrEqualTo(2)
+        assertThat(store.probeStatistics.skippedProbes.get()).isEqualTo(0)
+
+        assertThat(store.probe(200, 0, listOf(fromKVList("y.a", "none")), setOf(equality), listOf())).isEmpty()
+        assertThat(store.probeStatistics.skippedProbes.get()).isEqualTo(1)
+    }
+
+    @Test
+    fun `several equalities are answered by one composite index`() {
+        val store = filledStore(config())
+        store.store(301, 0, listOf(fromKVList("x.a", "3", "x.seq", "301")))
+        val predicates = predicateSets[1]
+
+        assertThat(joinedPairs(store.probe(400, 0, listOf(probes[0]), predicates, listOf())))
+                .isEqualTo(expectedPairs(listOf(probes[0]), 0, 400, predicates))
+        assertThat(store.prefix.hasIndex(listOf(AttributeAccess("x.a"), AttributeAccess("x.b")))).isTrue()
+        assertThat(store.prefix.hasIndex(AttributeAccess("x.a"))).isFalse()
+        assertThat(store.probe(400, 0, listOf(probes[2]), predicates, listOf())).isEmpty()
+    }
+
+    @Test
+    fun `documents stored later are found by later probes`() {
+        val store = NaiveHashStore<String>(config())
+        store.store(1, listOf(fromKVList("x.a", "1", "x.seq", "1"), fromKVList("x.a", "2", "x.seq", "2")))
+        assertThat(joinedPairs(store.probe(3, 0, listOf(probes[0]), setOf(equality), listOf()))).isEmpty()
+
+        store.store(2, listOf(fromKVList("x.a", "3", "x.seq", "3")))
+        assertThat(joinedPairs(store.probe(3, 0, listOf(probes[0]), setOf(equality), listOf()))).containsExactly("3/0")
+        assertThat(joinedPairs(store.probe(2, 0, listOf(probes[0]), setOf(equality), listOf()))).isEmpty()
+    }
+
+    private fun config(): ClashConfig {
+        val config = ClashConfig()
+        config[ClashConfig.CLASH_STORE_SEGMENT_SIZE] = 16
+        return config
+    }
+
+    /**
+     * Probes a store filled with the stored documents with all combinations of predicates, probing documents and ranges
+     * and expects the same pairs as evaluating the predicates for every stored and probing document.
+     */
+    private fun assertProbesCompareEveryPair(config: ClashConfig) = assertProbesCompareEveryPair(filledStore(config))
+
+    private fun assertProbesCompareEveryPair(store: NaiveHashStore<String>) {
+        for (predicates in predicateSets) {
+            for ((ats, windowSize) in ranges) {
+                for (probe in probes) {
+                    assertThat(joinedPairs(store.probe(ats, 0, listOf(probe), windowSize, predicates, listOf())))
+                            .`as`("%s of %s in [%s, %s)", predicates, probe, ats - windowSize, ats)
+                            .isEqualTo(expectedPairs(listOf(probe), ats - windowSize, ats, predicates))
+                }
+                assertThat(joinedPairs(store.probe(ats, 0, probes, windowSize, predicates, listOf())))
+                        .`as`("%s of all probes in [%s, %s)", predicates, ats - windowSize, ats)
+                        .isEqualTo(expectedPairs(probes, ats - windowSize, ats, predicates))
+            }
+        }
+    }
+
+    private fun filledStore(config: ClashConfig): NaiveHashStore<String> {
+        val store = NaiveHashStore<String>(config)
+        stored.forEach { (seq, document) -> store.store(seq, 0, listOf(document)) }
+        return store
+    }
+
+    private fun expectedPairs(probing: List<Document>, start: Long, ats: Long, predicates: Collection<BinaryPredicateEvaluation>): List<String> {
+        val result = ArrayList<String>()
+        for ((seq, document) in stored) {
+            for (probe in probing) {
+                if (seq in start until ats && predicates.all { joinable(it, document, probe) }) {
+                    result.add("${document["x.seq"]}/${probe["y.id"]}")
+                }
+            }
+        }
+        return result.sorted()
+    }
+
+    private fun joinable(evaluation: BinaryPredicateEvaluation, storedDocument: Document, probingDocument: Document) =
+            if (evaluation is BinaryPredicateEvaluationLeftStored) evaluation.predicate.joinable(storedDocument, probingDocument)
+            else evaluation.predicate.joinable(probingDocument, storedDocument)
+
+    private fun joinedPairs(result: List<Document>): List<String> = result.map { "${it["x.seq"]}/${it["y.id"]}" }.sorted()
+}
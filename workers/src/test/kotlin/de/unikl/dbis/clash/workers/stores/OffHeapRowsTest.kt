@@ -0,0 +1,113 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.query.AttributeAccess
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.nio.file.Files
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+
+internal class OffHeapRowsTest {
+    private val directory = Files.createTempDirectory("clash-arenas").toFile()
+    private val documents = listOf(
+            fromKVList("x.a", "1", "x.b", "hällo wörld"),
+            fromKVList("x.a", "2"),
+            fromKVList("x.a", "3", "x.b", "a value that is longer than an arena", "x.c", ""))
+
+    @AfterEach
+    fun deleteDirectory() {
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun `direct buffers give back the documents they were built from`() {
+        val rows = rowsOf(OffHeapRows(16, null))
+
+        assertThat(rows.documents()).isEqualTo(documents)
+        assertThat(rows.value(0, AttributeAccess("x.b"))).isEqualTo("hällo wörld")
+        assertThat(rows.value(1, AttributeAccess("x.b"))).isNull()
+        assertThat(rows.value(2, AttributeAccess("x.c"))).isEmpty()
+        assertThat(rows.value(2, AttributeAccess("x.d"))).isNull()
+        rows.release()
+    }
+
+    @Test
+    fun `mapped files give back the documents they were built from`() {
+        val rows = rowsOf(OffHeapRows(16, directory.path))
+
+        assertThat(rows.documents()).isEqualTo(documents)
+        assertThat(arenaFiles()).isNotEmpty()
+        rows.release()
+        assertThat(arenaFiles()).isEmpty()
+    }
+
+    @Test
+    fun `arenas of ended workers are deleted before the first arena of a directory`() {
+        val stale = directory.resolve("clash-run-1")
+        stale.mkdirs()
+        stale.resolve(".lock").createNewFile()
+        stale.resolve("clash-segment-1.arena").createNewFile()
+        val claimed = directory.resolve("clash-run-2")
+        claimed.mkdirs()
+
+        val rows = rowsOf(OffHeapRows(16, directory.path))
+        assertThat(stale).doesNotExist()
+        assertThat(claimed).exists()
+        assertThat(arenaFiles()).isNotEmpty()
+        rows.release()
+    }
+
+    @Test
+    fun `rows survive serialization and keep growing`() {
+        val rows = rowsOf(OffHeapRows(64, null))
+        val out = ByteArrayOutputStream()
+        ObjectOutputStream(out).writeObject(rows)
+        val copy = ObjectInputStream(ByteArrayInputStream(out.toByteArray())).readObject() as Rows
+        copy.add(fromKVList("x.a", "4"))
+
+        assertThat(copy.documents()).isEqualTo(documents + fromKVList("x.a", "4"))
+        rows.release()
+        copy.release()
+    }
+
+    @Test
+    fun `lookups find the same documents as on the heap`() {
+        val heap = prefix(RowStorage(StoreBackend.HEAP))
+        val offHeap = prefix(RowStorage(StoreBackend.OFF_HEAP, arenaSize = 64))
+        val mapped = prefix(RowStorage(StoreBackend.MAPPED, directory.path, 64))
+        val key = AttributeAccess("x.a")
+
+        for (value in listOf("0", "3", "6", "7")) {
+            val expected = heap.get(key, value, 10, 90)
+            assertThat(offHeap.get(key, value, 10, 90)).containsExactlyInAnyOrderElementsOf(expected)
+            assertThat(mapped.get(key, value, 10, 90)).containsExactlyInAnyOrderElementsOf(expected)
+        }
+        assertThat(offHeap.get(Long.MIN_VALUE, Long.MAX_VALUE)).containsExactlyInAnyOrderElementsOf(heap.get(Long.MIN_VALUE, Long.MAX_VALUE))
+        offHeap.clear()
+        mapped.clear()
+    }
+
+    private fun rowsOf(rows: Rows): Rows {
+        documents.forEach { rows.add(it) }
+        return rows
+    }
+
+    private fun prefix(rowStorage: RowStorage): SegmentedPrefix {
+        val prefix = SegmentedPrefix(16, rowStorage = rowStorage)
+        prefix.addIndex(AttributeAccess("x.a"))
+        for (seq in 1L..100L) {
+            prefix.put(seq, 0, listOf(fromKVList("x.a", "${seq % 7}", "x.seq", "$seq")))
+        }
+        return prefix
+    }
+
+    private fun Rows.documents(): List<Document> = (0 until size).map { document(it) }
+
+    private fun arenaFiles(): List<File> = directory.walk().filter { it.name.endsWith(".arena") }.toList()
+}
@@ -0,0 +1,141 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.BinaryEquality
+import de.unikl.dbis.clash.query.BinaryLessThan
+import de.unikl.dbis.clash.query.WindowDefinition
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class ProbeLogTest {
+    private val equality = BinaryPredicateEvaluationLeftStored(BinaryEquality(AttributeAccess("x.a"), AttributeAccess("y.a")))
+    private val lessThan = BinaryPredicateEvaluationRightStored(BinaryLessThan(AttributeAccess("y.b"), AttributeAccess("x.b")))
+
+    @Test
+    fun `stored documents are joined with the buffered probes of their key`() {
+        val log = ProbeLog<String>(ClashConfig())
+        log.put(10, 0, listOf(fromKVList("y.a", "1", "y.b", "3"), fromKVList("y.a", "2", "y.b", "3")), listOf(equality, lessThan), listOf("t"))
+
+        val result = log.examine(listOf(fromKVList("x.a", "1", "x.b", "6"), fromKVList("x.a", "1", "x.b", "2"), fromKVList("x.a", "3", "x.b", "9")), 5)
+        assertThat(result.size()).isEqualTo(1)
+        assertThat(result.inner[0].joinResult).containsExactly(fromKVList("x.a", "1", "x.b", "6", "y.a", "1", "y.b", "3"))
+        assertThat(result.inner[0].resultTargets).containsExactly("t")
+    }
+
+    @Test
+    fun `probes without an equality are compared with every stored document`() {
+        val log = ProbeLog<String>(ClashConfig())
+        log.put(10, 0, listOf(fromKVList("y.b", "5")), listOf(lessThan), listOf("u"))
+
+        val result = log.examine(listOf(fromKVList("x.b", "6"), fromKVList("x.b", "4"), fromKVList("x.b", "7")), 5)
+        assertThat(joinedValues(result, "x.b")).containsExactlyInAnyOrder("6", "7")
+    }
+
+    @Test
+    fun `probes are only joined with documents stored before them`() {
+        val log = ProbeLog<String>(ClashConfig())
+        log.put(10, 0, listOf(fromKVList("y.a", "1")), listOf(equality), listOf("t"))
+
+        assertThat(log.examine(listOf(fromKVList("x.a", "1")), 10).size()).isEqualTo(1)
+        assertThat(log.examine(listOf(fromKVList("x.a", "1")), 11).size()).isEqualTo(0)
+    }
+
+    @Test
+    fun `every buffered probe of a key yields its own result`() {
+        val log = ProbeLog<String>(ClashConfig())
+        log.put(10, 0, listOf(fromKVList("y.a", "1", "y.c", "first")), listOf(equality), listOf("t"))
+        log.put(11, 0, listOf(fromKVList("y.a", "1", "y.c", "second")), listOf(equality), listOf("t"))
+        log.put(12, 0, listOf(fromKVList("y.a", "2", "y.c", "third")), listOf(equality), listOf("t"))
+
+        val result = log.examine(listOf(fromKVList("x.a", "1")), 5)
+        assertThat(result.size()).isEqualTo(2)
+        assertThat(joinedValues(result, "y.c")).containsExactlyInAnyOrder("first", "second")
+    }
+
+    @Test
+    fun `probes are kept regardless of their age without a horizon`() {
+        val log = ProbeLog<String>(ClashConfig())
+        log.put(10, 0, listOf(fromKVList("y.a", "1")), listOf(equality), listOf("t"))
+        log.put(11, 10000000, listOf(fromKVList("y.a", "1")), listOf(equality), listOf("t"))
+
+        assertThat(log.size()).isEqualTo(2)
+        assertThat(log.examine(listOf(fromKVList("x.a", "1")), 5).size()).isEqualTo(2)
+    }
+
+    @Test
+    fun `probes older than the horizon are dropped`() {
+        val config = ClashConfig()
+        config[ClashConfig.CLASH_PROBE_LOG_HORIZON] = 1000L
+        val log = ProbeLog<String>(config)
+        log.put(10, 1000, listOf(fromKVList("y.a", "1", "y.c", "old")), listOf(equality), listOf("t"))
+        log.put(11, 1500, listOf(fromKVList("y.a", "1", "y.c", "recent")), listOf(equality), listOf("t"))
+        assertThat(log.size()).isEqualTo(2)
+
+        log.put(12, 2200, listOf(fromKVList("y.a", "2", "y.c", "new")), listOf(equality), listOf("t"))
+        assertThat(log.size()).isEqualTo(2)
+        assertThat(joinedValues(log.examine(listOf(fromKVList("x.a", "1", "x.b", "9")), 5), "y.c")).containsExactly("recent")
+
+        log.put(13, 5000, listOf(fromKVList("y.b", "1")), listOf(lessThan), listOf("t"))
+        assertThat(log.size()).isEqualTo(1)
+        assertThat(log.examine(listOf(fromKVList("x.a", "2", "x.b", "9")), 5).size()).isEqualTo(1)
+        assertThat(log.heapBytes).isGreaterThan(0)
+    }
+
+    @Test
+    fun `probes of a time window are kept as long as the window with the default configuration`() {
+        val log = ProbeLog<String>(ClashConfig(), WindowDefinition.seconds(1))
+        (1L..10000L).forEach { log.put(it, it, listOf(fromKVList("y.a", "${it % 3}")), listOf(equality), listOf("t")) }
+
+        assertThat(log.size()).isBetween(1000, 1001)
+        assertThat(log.numberOfArrivals).isEqualTo(log.size())
+        assertThat(log.examine(listOf(fromKVList("x.a", "1")), 0).size()).isBetween(333, 334)
+    }
+
+    @Test
+    fun `the maximum number of keys bounds the memory of the log`() {
+        val config = ClashConfig()
+        config[ClashConfig.CLASH_PROBE_LOG_MAX_KEYS] = 5
+        for (window in listOf(WindowDefinition.infinite(), WindowDefinition.count(100), WindowDefinition.hours(1))) {
+            val log = ProbeLog<String>(config, window)
+            (1L..10000L).forEach { log.put(it, it, listOf(fromKVList("y.a", "1", "y.c", "$it")), listOf(equality), listOf("t")) }
+            log.clearUpto(9997)
+
+            assertThat(log.size()).`as`("%s", window).isEqualTo(3)
+            assertThat(log.numberOfArrivals).`as`("%s", window).isLessThanOrEqualTo(3)
+            assertThat(joinedValues(log.examine(listOf(fromKVList("x.a", "1")), 0), "y.c")).containsExactlyInAnyOrder("9998", "9999", "10000")
+        }
+    }
+
+    @Test
+    fun `count windows keep the probes of the last probing documents`() {
+        val log = ProbeLog<String>(ClashConfig(), WindowDefinition.count(4))
+        (1L..10L).forEach { log.put(it, it, listOf(fromKVList("y.a", "1", "y.c", "$it")), listOf(equality), listOf("t")) }
+        assertThat(log.size()).isEqualTo(4)
+        assertThat(joinedValues(log.examine(listOf(fromKVList("x.a", "1")), 0), "y.c")).containsExactlyInAnyOrder("7", "8", "9", "10")
+
+        log.put(11, 11, listOf(fromKVList("y.a", "1", "y.c", "11"), fromKVList("y.a", "1", "y.c", "11")), listOf(equality), listOf("t"))
+        assertThat(joinedValues(log.examine(listOf(fromKVList("x.a", "1")), 0), "y.c")).containsExactlyInAnyOrder("9", "10", "11", "11")
+    }
+
+    @Test
+    fun `clearing up to a timestamp drops the probes up to it`() {
+        val log = ProbeLog<String>(ClashConfig())
+        log.put(10, 0, listOf(fromKVList("y.a", "1")), listOf(equality), listOf("t"))
+        log.put(11, 0, listOf(fromKVList("y.b", "1")), listOf(lessThan), listOf("t"))
+        log.put(12, 0, listOf(fromKVList("y.a", "1")), listOf(equality), listOf("t"))
+
+        assertThat(log.clearUpto(11)).isEqualTo(2)
+        assertThat(log.size()).isEqualTo(1)
+        assertThat(log.examine(listOf(fromKVList("x.a", "1", "x.b", "9")), 5).size()).isEqualTo(1)
+        assertThat(log.clearUpto(12)).isEqualTo(1)
+        assertThat(log.heapBytes).isEqualTo(0)
+    }
+
+    private fun joinedValues(result: DelayedStoreJoinResult<String>, attribute: String): List<String?> =
+            result.inner.flatMap { it.joinResult }.map { document: Document -> document[attribute] }
+}
@@ -0,0 +1,58 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.ClashConfig
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluation
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationLeftStored
+import de.unikl.dbis.clash.physical.BinaryPredicateEvaluationRightStored
+import de.unikl.dbis.clash.query.AttributeAccess
+import de.unikl.dbis.clash.query.BinaryLessThan
+import de.unikl.dbis.clash.query.BinaryLessThanOrEqual
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class RangeIndexedStoreTest {
+    private val x = AttributeAccess("x.a")
+    private val y = AttributeAccess("y.a")
+
+    @Test
+    fun `range lookups find the stored documents on either side`() {
+        val store = storeOf("1", "2", "3", "4", "5", "6", "7", "8", "9")
+
+        assertThat(probe(store, "5", BinaryPredicateEvaluationLeftStored(BinaryLessThan(x, y))))
+                .containsExactlyInAnyOrder("1", "2", "3", "4")
+        assertThat(probe(store, "5", BinaryPredicateEvaluationRightStored(BinaryLessThanOrEqual(y, x))))
+                .containsExactlyInAnyOrder("5", "6", "7", "8", "9")
+    }
+
+    @Test
+    fun `numbers are compared by their value`() {
+        val store = storeOf("1", "9", "10", "25", "100")
+
+        assertThat(probe(store, "20", BinaryPredicateEvaluationLeftStored(BinaryLessThan(x, y))))
+                .containsExactlyInAnyOrder("1", "9", "10")
+    }
+
+    @Test
+    fun `numbers of equal value but different text are equal`() {
+        val store = storeOf("0.5", "1", "1.0", "1.00", "2")
+
+        assertThat(probe(store, "1.0", BinaryPredicateEvaluationLeftStored(BinaryLessThan(x, y))))
+                .containsExactlyInAnyOrder("0.5")
+        assertThat(probe(store, "1.0", BinaryPredicateEvaluationLeftStored(BinaryLessThanOrEqual(x, y))))
+                .containsExactlyInAnyOrder("0.5", "1", "1.0", "1.00")
+        assertThat(probe(store, "1", BinaryPredicateEvaluationRightStored(BinaryLessThan(y, x))))
+                .containsExactlyInAnyOrder("2")
+        assertThat(probe(store, "1", BinaryPredicateEvaluationRightStored(BinaryLessThanOrEqual(y, x))))
+                .containsExactlyInAnyOrder("1", "1.0", "1.00", "2")
+    }
+
+    private fun storeOf(vararg values: String): RangeIndexedStore<String> {
+        val store = RangeIndexedStore<String>(ClashConfig())
+        values.forEachIndexed { i, value -> store.store(i.toLong(), 0, listOf(fromKVList("x.a", value))) }
+        return store
+    }
+
+    private fun probe(store: RangeIndexedStore<String>, value: String, evaluation: BinaryPredicateEvaluation): List<String?> =
+            store.probe(100, 0, listOf(fromKVList("y.a", value)), setOf(evaluation), listOf()).map { it["x.a"] }
+}
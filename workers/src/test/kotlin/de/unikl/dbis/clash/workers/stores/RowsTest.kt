@@ -0,0 +1,43 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.fromKVList
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class RowsTest {
+    private val documents = (0 until 1000).map { fromKVList("x.a", "$it", "x.b", "a rather long text value number ${it % 10}") }
+
+    @Test
+    fun `rows off the heap only count their offsets`() {
+        val heap = RowStorage(StoreBackend.HEAP).create()
+        val offHeap = RowStorage(StoreBackend.OFF_HEAP).create()
+        documents.forEach {
+            heap.add(it)
+            offHeap.add(it)
+        }
+
+        assertThat(offHeap.heapBytes).isEqualTo(estimateRowReferenceBytes(1000))
+        assertThat(heap.heapBytes).isGreaterThan(offHeap.heapBytes)
+        offHeap.release()
+    }
+
+    @Test
+    fun `columnar rows count repeated values once`() {
+        val rows = ColumnarRows()
+        documents.forEach { rows.add(it) }
+
+        assertThat(rows.heapBytes).isLessThan(estimateBytes(documents))
+    }
+
+    @Test
+    fun `segments count the heap bytes of their rows`() {
+        val heap = Segment(0, RowStorage(StoreBackend.HEAP).create())
+        val offHeap = Segment(0, RowStorage(StoreBackend.OFF_HEAP).create())
+        heap.add(1, documents)
+        offHeap.add(1, documents)
+
+        assertThat(offHeap.heapBytes).isLessThan(heap.heapBytes)
+        assertThat(offHeap.heapBytes).isLessThan(estimateBytes(documents))
+        offHeap.release()
+    }
+}
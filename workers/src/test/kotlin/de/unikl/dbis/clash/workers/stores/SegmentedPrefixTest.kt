@@ -0,0 +1,134 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.query.AttributeAccess
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+internal class SegmentedPrefixTest {
+    private val key = AttributeAccess("x.a")
+
+    @Test
+    fun `full segments are followed by new ones`() {
+        val prefix = SegmentedPrefix(4)
+        put(prefix, 1L..10L)
+
+        assertThat(prefix.numberOfSegments).isEqualTo(3)
+        assertThat(prefix.numberOfDocuments).isEqualTo(10)
+        assertThat(seqsOf(prefix.get(Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo((1L..10L).toList())
+    }
+
+    @Test
+    fun `lookups only return documents inside the range`() {
+        val prefix = SegmentedPrefix(4)
+        prefix.addIndex(key)
+        put(prefix, 1L..20L)
+
+        assertThat(seqsOf(prefix.get(3, 9))).isEqualTo((3L..8L).toList())
+        assertThat(seqsOf(prefix.get(key, "1", 3, 9))).isEqualTo(listOf(3L, 5L, 7L))
+        assertThat(prefix.overlapping(5, 8).map { it.minSeq }).containsExactly(5L)
+    }
+
+    @Test
+    fun `indexes cover documents stored before and after they were added`() {
+        val prefix = SegmentedPrefix(4)
+        put(prefix, 1L..6L)
+        prefix.addIndex(key)
+        put(prefix, 7L..10L)
+
+        assertThat(prefix.hasIndex(key)).isTrue()
+        assertThat(seqsOf(prefix.get(key, "0", Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(listOf(2L, 4L, 6L, 8L, 10L))
+    }
+
+    @Test
+    fun `evicting by timestamp drops whole segments and hides the rest`() {
+        val prefix = SegmentedPrefix(4)
+        prefix.addIndex(key)
+        put(prefix, 1L..20L)
+
+        assertThat(prefix.evictBefore(15)).isEqualTo(14)
+        assertThat(prefix.numberOfSegments).isEqualTo(2)
+        assertThat(prefix.numberOfDocuments).isEqualTo(6)
+        assertThat(seqsOf(prefix.get(Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo((15L..20L).toList())
+        assertThat(seqsOf(prefix.get(key, "1", Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(listOf(15L, 17L, 19L))
+        assertThat(prefix.evictBefore(15)).isEqualTo(0)
+    }
+
+    @Test
+    fun `late documents behind the watermark of a segment start a new one`() {
+        val prefix = SegmentedPrefix(4)
+        prefix.addIndex(key)
+        put(prefix, 1L..6L)
+        prefix.evictBefore(6)
+        put(prefix, 3L..3L)
+
+        assertThat(prefix.numberOfSegments).isEqualTo(2)
+        assertThat(prefix.numberOfDocuments).isEqualTo(2)
+        assertThat(seqsOf(prefix.get(Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(listOf(3L, 6L))
+        assertThat(seqsOf(prefix.get(key, "1", Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(listOf(3L))
+    }
+
+    @Test
+    fun `evicting to a count removes the documents that arrived first`() {
+        val prefix = SegmentedPrefix(4)
+        prefix.addIndex(key)
+        put(prefix, 1L..10L)
+
+        assertThat(prefix.evictToCount(7)).isEqualTo(3)
+        assertThat(prefix.numberOfSegments).isEqualTo(3)
+        assertThat(seqsOf(prefix.get(Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo((4L..10L).toList())
+        assertThat(prefix.evictToCount(5)).isEqualTo(2)
+        assertThat(prefix.numberOfSegments).isEqualTo(2)
+        assertThat(seqsOf(prefix.get(key, "0", Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(listOf(6L, 8L, 10L))
+        assertThat(prefix.evictToCount(5)).isEqualTo(0)
+    }
+
+    @Test
+    fun `evicting to a count goes by arrival, not by timestamp`() {
+        val prefix = SegmentedPrefix(4)
+        listOf(5L, 1L, 4L, 2L, 3L).forEach { put(prefix, it..it) }
+
+        prefix.evictToCount(2)
+        assertThat(seqsOf(prefix.get(Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(listOf(2L, 3L))
+    }
+
+    @Test
+    fun `documents evicted by timestamp are skipped when evicting to a count`() {
+        val prefix = SegmentedPrefix(8)
+        prefix.addIndex(key)
+        listOf(3L, 1L, 4L, 2L, 5L, 6L).forEach { put(prefix, it..it) }
+        prefix.evictBefore(3)
+        assertThat(prefix.numberOfDocuments).isEqualTo(4)
+
+        assertThat(prefix.evictToCount(2)).isEqualTo(2)
+        assertThat(prefix.numberOfDocuments).isEqualTo(2)
+        assertThat(seqsOf(prefix.get(Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(listOf(5L, 6L))
+        assertThat(seqsOf(prefix.get(key, "0", Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(listOf(6L))
+
+        assertThat(prefix.evictBefore(6)).isEqualTo(1)
+        assertThat(prefix.numberOfDocuments).isEqualTo(1)
+        assertThat(prefix.evictToCount(1)).isEqualTo(0)
+        assertThat(seqsOf(prefix.get(Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(listOf(6L))
+    }
+
+    @Test
+    fun `clearing removes all documents and indexes`() {
+        val prefix = SegmentedPrefix(4)
+        prefix.addIndex(key)
+        put(prefix, 1L..10L)
+        prefix.clear()
+
+        assertThat(prefix.numberOfDocuments).isEqualTo(0)
+        assertThat(prefix.numberOfSegments).isEqualTo(0)
+        assertThat(prefix.hasIndex(key)).isFalse()
+        put(prefix, 11L..12L)
+        assertThat(seqsOf(prefix.get(Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(listOf(11L, 12L))
+    }
+
+    private fun put(prefix: SegmentedPrefix, seqs: LongRange) {
+        seqs.forEach { prefix.put(it, 0, listOf(fromKVList("x.a", "${it % 2}", "x.seq", "$it"))) }
+    }
+
+    private fun seqsOf(documents: List<Document>): List<Long> = documents.map { it[AttributeAccess("x.seq")]!!.toLong() }.sorted()
+}
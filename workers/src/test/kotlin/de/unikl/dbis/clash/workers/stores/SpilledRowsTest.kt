@@ -0,0 +1,113 @@
+package de.unikl.dbis.clash.workers.stores
+
+import de.unikl.dbis.clash.documents.Document
+import de.unikl.dbis.clash.documents.fromKVList
+import de.unikl.dbis.clash.query.AttributeAccess
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+
+internal class SpilledRowsTest {
+    private val directory = Files.createTempDirectory("clash-spill").toFile()
+    private val documents = listOf(
+            fromKVList("x.a", "1", "x.b", "hällo wörld"),
+            fromKVList("x.a", "2"),
+            fromKVList("x.a", "3", "x.c", ""))
+
+    @AfterEach
+    fun deleteDirectory() {
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun `spilled rows give back the documents they were built from`() {
+        val rows = SpilledRows.write(rowsOf(documents), directory.path, PageCache(4))
+
+        assertThat(rows.size).isEqualTo(3)
+        assertThat((0 until rows.size).map { rows.document(it) }).isEqualTo(documents)
+        assertThat(rows.value(0, AttributeAccess("x.b"))).isEqualTo("hällo wörld")
+        assertThat(rows.value(1, AttributeAccess("x.b"))).isNull()
+        assertThat(rows.value(2, AttributeAccess("x.c"))).isEmpty()
+        assertThatThrownBy { rows.add(fromKVList("x.a", "4")) }.isInstanceOf(UnsupportedOperationException::class.java)
+    }
+
+    @Test
+    fun `releasing the rows deletes their file`() {
+        val rows = SpilledRows.write(rowsOf(documents), directory.path, PageCache(4))
+        assertThat(spilledFiles()).containsExactly(rows.file)
+
+        rows.release()
+        assertThat(spilledFiles()).isEmpty()
+    }
+
+    @Test
+    fun `stores that spill delete the files of ended workers when they start`() {
+        val stale = directory.resolve("clash-run-1")
+        stale.mkdirs()
+        stale.resolve(".lock").createNewFile()
+        stale.resolve("clash-spill-1.rows").createNewFile()
+
+        SegmentedPrefix(16, spillPolicy = SpillPolicy(1, directory.path))
+        assertThat(stale).doesNotExist()
+        assertThat(spilledFiles()).isEmpty()
+    }
+
+    @Test
+    fun `spilled rows survive serialization without their file`() {
+        val rows = SpilledRows.write(rowsOf(documents), directory.path, PageCache(4))
+        val out = ByteArrayOutputStream()
+        ObjectOutputStream(out).writeObject(rows)
+        rows.release()
+        val copy = ObjectInputStream(ByteArrayInputStream(out.toByteArray())).readObject() as Rows
+
+        assertThat((0 until copy.size).map { copy.document(it) }).isEqualTo(documents)
+        copy.release()
+    }
+
+    @Test
+    fun `reads across page boundaries return the same bytes as the file`() {
+        val file = directory.resolve("pages")
+        val bytes = ByteArray(100) { it.toByte() }
+        file.writeBytes(bytes)
+        val cache = PageCache(2, 8)
+
+        RandomAccessFile(file, "r").channel.use { channel ->
+            assertThat(cache.read(file.path, channel, 5, 30)).isEqualTo(bytes.copyOfRange(5, 35))
+            assertThat(cache.read(file.path, channel, 90, 10)).isEqualTo(bytes.copyOfRange(90, 100))
+            assertThat(cache.read(file.path, channel, 0, 100)).isEqualTo(bytes)
+        }
+    }
+
+    @Test
+    fun `invalidated pages are read again`() {
+        val file = directory.resolve("pages")
+        file.writeBytes(ByteArray(16) { 1 })
+        val cache = PageCache(2, 8)
+
+        RandomAccessFile(file, "r").channel.use { channel ->
+            assertThat(cache.read(file.path, channel, 0, 4)).isEqualTo(ByteArray(4) { 1 })
+        }
+        file.writeBytes(ByteArray(16) { 2 })
+        RandomAccessFile(file, "r").channel.use { channel ->
+            assertThat(cache.read(file.path, channel, 0, 4)).isEqualTo(ByteArray(4) { 1 })
+            cache.invalidate(file.path)
+            assertThat(cache.read(file.path, channel, 0, 4)).isEqualTo(ByteArray(4) { 2 })
+        }
+    }
+
+    private fun rowsOf(documents: List<Document>): Rows {
+        val rows = ColumnarRows()
+        documents.forEach { rows.add(it) }
+        return rows
+    }
+
+    private fun spilledFiles(): List<File> = directory.walk().filter { it.name.endsWith(".rows") }.toList()
+}